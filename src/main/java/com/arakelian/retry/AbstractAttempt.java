@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The attributes shared by the attempts made by a {@link Retryer}.
+ *
+ * @param <V>
+ *            the type returned by the wrapped callable
+ */
+@Immutable
+abstract class AbstractAttempt<V> implements Attempt<V> {
+    private final long attemptNumber;
+    private final long delaySinceFirstAttempt;
+    private final long startTime;
+    private final long duration;
+    private final long cpuTime;
+    private final long cumulativeSleepTime;
+    private final AttemptHistory history;
+
+    /**
+     * Constructor
+     *
+     * @param attemptNumber
+     *            the number, starting from 1, of the attempt
+     * @param delaySinceFirstAttempt
+     *            the delay since the start of the first attempt, in milliseconds
+     * @param startTime
+     *            the value of the ticker of the retryer at the start of the attempt
+     * @param duration
+     *            the time the attempt took, in nanoseconds
+     * @param cpuTime
+     *            the CPU time used by the attempt, in nanoseconds, or -1 if not measured
+     * @param cumulativeSleepTime
+     *            the time slept before the attempt, since the start of the call, in milliseconds
+     * @param history
+     *            the history of the call, or <code>null</code>
+     */
+    AbstractAttempt(
+            final long attemptNumber,
+            final long delaySinceFirstAttempt,
+            final long startTime,
+            final long duration,
+            final long cpuTime,
+            final long cumulativeSleepTime,
+            final AttemptHistory history) {
+        this.attemptNumber = attemptNumber;
+        this.delaySinceFirstAttempt = delaySinceFirstAttempt;
+        this.startTime = startTime;
+        this.duration = duration;
+        this.cpuTime = cpuTime;
+        this.cumulativeSleepTime = cumulativeSleepTime;
+        this.history = history;
+    }
+
+    @Override
+    public AttemptHistory getAttemptHistory() {
+        return history;
+    }
+
+    @Override
+    public long getAttemptNumber() {
+        return attemptNumber;
+    }
+
+    @Override
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    @Override
+    public long getCumulativeSleepTime() {
+        return cumulativeSleepTime;
+    }
+
+    @Override
+    public long getDelaySinceFirstAttempt() {
+        return delaySinceFirstAttempt;
+    }
+
+    @Override
+    public long getDuration() {
+        return duration;
+    }
+
+    @Override
+    public long getStartTime() {
+        return startTime;
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link RetryListener} which notifies other listeners asynchronously, so that slow listeners do
+ * not add to the latency of each attempt.
+ * <p>
+ * Every callback of {@link RetryListener} that a delegate listener overrides is published as an
+ * event to a bounded, lock-free ring buffer, and a single dispatch thread notifies the delegate
+ * listeners in the order in which events were published. Listeners are therefore never called
+ * concurrently. When the ring buffer is full, the {@link Overflow} policy decides whether events
+ * are dropped or the publishing thread waits; dropped events are counted by
+ * {@link #getDroppedCount()}.
+ * </p>
+ */
+@ThreadSafe
+public final class AsyncRetryListener implements RetryListener, Closeable {
+    /**
+     * A callback of {@link RetryListener}, published to the ring buffer.
+     */
+    @Immutable
+    private static final class Event {
+        private static final byte BEFORE_ATTEMPT = 0;
+        private static final byte BEFORE_SLEEP = 1;
+        private static final byte FAILURE = 2;
+        private static final byte GIVE_UP = 3;
+        private static final byte RETRY = 4;
+        private static final byte SUCCESS = 5;
+
+        private final byte type;
+        private final Attempt<?> attempt;
+
+        /** Attempt number of {@link #BEFORE_ATTEMPT}, or sleep time of {@link #BEFORE_SLEEP} **/
+        private final long value;
+
+        /** Delay since the first attempt of {@link #BEFORE_ATTEMPT} **/
+        private final long delay;
+
+        public Event(final byte type, final Attempt<?> attempt, final long value, final long delay) {
+            this.type = type;
+            this.attempt = attempt;
+            this.value = value;
+            this.delay = delay;
+        }
+    }
+
+    /**
+     * What to do with an event that is published while the ring buffer is full.
+     */
+    public enum Overflow {
+        /** Wait until there is room in the ring buffer. **/
+        BLOCK,
+
+        /** Drop the event. **/
+        DROP,
+
+        /**
+         * Once the ring buffer is more than half full, publish only one out of every
+         * {@value AsyncRetryListener#SAMPLE_INTERVAL} events and drop the others, so that
+         * listeners see a sample of events during a burst rather than only the first ones.
+         */
+        SAMPLE;
+    }
+
+    /** Interval at which events are published by {@link Overflow#SAMPLE} **/
+    public static final int SAMPLE_INTERVAL = 8;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncRetryListener.class);
+
+    /** Time that a publisher blocked on a full ring buffer parks before checking again **/
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /** Delegate listeners overriding each type of event, indexed by event type **/
+    private final RetryListener[][] listeners;
+
+    private final Overflow overflow;
+    private final int capacity;
+    private final AtomicReferenceArray<Event> ring;
+
+    /** Sequence of the next event to be published **/
+    private final AtomicLong tail = new AtomicLong();
+
+    /** Sequence of the next event to be dispatched; only written by the dispatch thread **/
+    private volatile long head;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sampled = new AtomicLong();
+    private final Thread dispatcher;
+    private volatile boolean waiting;
+    private volatile boolean closed;
+
+    /**
+     * Creates a listener which notifies the given listeners asynchronously.
+     *
+     * @param capacity
+     *            the maximum number of events waiting to be dispatched
+     * @param overflow
+     *            what to do with events published while the ring buffer is full
+     * @param listeners
+     *            the listeners to notify
+     */
+    public AsyncRetryListener(
+            final int capacity,
+            @Nonnull final Overflow overflow,
+            @Nonnull final RetryListener... listeners) {
+        Preconditions.checkArgument(capacity >= 1, "capacity must be >= 1 but is %s", capacity);
+        Preconditions.checkNotNull(overflow, "overflow may not be null");
+        Preconditions.checkNotNull(listeners, "listeners may not be null");
+        this.capacity = capacity;
+        this.overflow = overflow;
+        final RetryListener[] all = ImmutableList.copyOf(listeners).toArray(new RetryListener[0]);
+        this.listeners = new RetryListener[][] {
+                Retryer.listenersOverriding(all, "beforeAttempt", long.class, long.class),
+                Retryer.listenersOverriding(all, "beforeSleep", Attempt.class, long.class),
+                Retryer.listenersOverriding(all, "onFailure", Attempt.class),
+                Retryer.listenersOverriding(all, "onGiveUp", Attempt.class),
+                Retryer.listenersOverriding(all, "onRetry", Attempt.class),
+                Retryer.listenersOverriding(all, "onSuccess", Attempt.class) };
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.dispatcher = new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("async-retry-listener-%d").build().newThread(this::runDispatcher);
+        this.dispatcher.start();
+    }
+
+    @Override
+    public void beforeAttempt(final long attemptNumber, final long delaySinceFirstAttempt) {
+        if (isListened(Event.BEFORE_ATTEMPT)) {
+            publish(new Event(Event.BEFORE_ATTEMPT, null, attemptNumber, delaySinceFirstAttempt));
+        }
+    }
+
+    @Override
+    public <V> void beforeSleep(final Attempt<V> failedAttempt, final long sleepTime) {
+        if (isListened(Event.BEFORE_SLEEP)) {
+            publish(new Event(Event.BEFORE_SLEEP, failedAttempt, sleepTime, 0L));
+        }
+    }
+
+    /**
+     * Stops accepting events, and waits until the events that have already been published have
+     * been dispatched.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(dispatcher);
+        boolean interrupted = false;
+        while (dispatcher.isAlive()) {
+            try {
+                dispatcher.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch(final Event event) {
+        for (final RetryListener listener : listeners[event.type]) {
+            try {
+                switch (event.type) {
+                case Event.BEFORE_ATTEMPT:
+                    listener.beforeAttempt(event.value, event.delay);
+                    break;
+                case Event.BEFORE_SLEEP:
+                    listener.beforeSleep(event.attempt, event.value);
+                    break;
+                case Event.FAILURE:
+                    listener.onFailure(event.attempt);
+                    break;
+                case Event.GIVE_UP:
+                    listener.onGiveUp(event.attempt);
+                    break;
+                case Event.RETRY:
+                    listener.onRetry(event.attempt);
+                    break;
+                default:
+                    listener.onSuccess(event.attempt);
+                    break;
+                }
+            } catch (final RuntimeException e) {
+                LOGGER.warn("Retry listener {} failed", listener, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of events which were not dispatched because the ring buffer was full, or
+     * because the listener was closed.
+     *
+     * @return the number of dropped events
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of events waiting to be dispatched.
+     *
+     * @return the number of events waiting to be dispatched
+     */
+    public int getPendingCount() {
+        return (int) (tail.get() - head);
+    }
+
+    /**
+     * Returns <code>true</code> if a delegate listener overrides the callback of the given event
+     * type, so that events of that type must be published.
+     */
+    private boolean isListened(final byte type) {
+        return listeners[type].length != 0;
+    }
+
+    @Override
+    public <V> void onFailure(final Attempt<V> failedAttempt) {
+        if (isListened(Event.FAILURE)) {
+            publish(new Event(Event.FAILURE, failedAttempt, 0L, 0L));
+        }
+    }
+
+    @Override
+    public <V> void onGiveUp(final Attempt<V> lastFailedAttempt) {
+        if (isListened(Event.GIVE_UP)) {
+            publish(new Event(Event.GIVE_UP, lastFailedAttempt, 0L, 0L));
+        }
+    }
+
+    @Override
+    public <V> void onRetry(final Attempt<V> attempt) {
+        if (isListened(Event.RETRY)) {
+            publish(new Event(Event.RETRY, attempt, 0L, 0L));
+        }
+    }
+
+    @Override
+    public <V> void onSuccess(final Attempt<V> attempt) {
+        if (isListened(Event.SUCCESS)) {
+            publish(new Event(Event.SUCCESS, attempt, 0L, 0L));
+        }
+    }
+
+    private void publish(final Event event) {
+        if (closed) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (overflow == Overflow.SAMPLE && getPendingCount() > capacity / 2
+                && sampled.getAndIncrement() % SAMPLE_INTERVAL != 0) {
+            dropped.incrementAndGet();
+            return;
+        }
+        while (!tryPublish(event)) {
+            if (overflow != Overflow.BLOCK || closed) {
+                dropped.incrementAndGet();
+                return;
+            }
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        if (waiting) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    private void runDispatcher() {
+        for (;;) {
+            final long sequence = head;
+            final int index = (int) (sequence % capacity);
+            Event event = ring.get(index);
+            if (event == null) {
+                // sequence has not been published yet, or has been claimed but not yet written
+                if (closed && tail.get() == sequence) {
+                    return;
+                }
+                waiting = true;
+                event = ring.get(index);
+                if (event == null) {
+                    // publishers and close() unpark the dispatcher once they see it waiting
+                    LockSupport.park(this);
+                    waiting = false;
+                    continue;
+                }
+                waiting = false;
+            }
+            ring.lazySet(index, null);
+            head = sequence + 1;
+            dispatch(event);
+        }
+    }
+
+    private boolean tryPublish(final Event event) {
+        for (;;) {
+            final long sequence = tail.get();
+            if (sequence - head >= capacity) {
+                return false;
+            }
+            if (tail.compareAndSet(sequence, sequence + 1)) {
+                ring.set((int) (sequence % capacity), event);
+                return true;
+            }
+        }
+    }
+}
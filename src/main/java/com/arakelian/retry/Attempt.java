@@ -38,6 +38,18 @@ public interface Attempt<V> {
      */
     public V get() throws ExecutionException;
 
+    /**
+     * Returns the history of the attempts of the call. The history is shared by all the attempts of
+     * the call and is not a snapshot: it keeps being updated as the retryer makes further attempts,
+     * so it must be read, or copied, before the next attempt if it is to reflect this one.
+     *
+     * @return the history of the call, or <code>null</code> if not enabled with
+     *         {@link RetryerBuilder#withAttemptHistory(int)}
+     */
+    public default AttemptHistory getAttemptHistory() {
+        return null;
+    }
+
     /**
      * The number, starting from 1, of this attempt.
      *
@@ -45,6 +57,26 @@ public interface Attempt<V> {
      */
     public long getAttemptNumber();
 
+    /**
+     * The CPU time used by this attempt on the thread which made it, in nanoseconds.
+     *
+     * @return the CPU time of the attempt, in nanoseconds, or -1 if not measured; see
+     *         {@link RetryerBuilder#withAttemptCpuTime()}
+     */
+    public default long getCpuTime() {
+        return -1L;
+    }
+
+    /**
+     * The total time slept between the attempts of the call which preceded this attempt, in
+     * milliseconds.
+     *
+     * @return the time slept before this attempt, in milliseconds
+     */
+    public default long getCumulativeSleepTime() {
+        return 0L;
+    }
+
     /**
      * The delay since the start of the first attempt, in milliseconds.
      *
@@ -52,6 +84,15 @@ public interface Attempt<V> {
      */
     public long getDelaySinceFirstAttempt();
 
+    /**
+     * The time this attempt took, in nanoseconds, or 0 if the callable was not invoked.
+     *
+     * @return the duration of the attempt, in nanoseconds
+     */
+    public default long getDuration() {
+        return 0L;
+    }
+
     /**
      * Gets the exception thrown by the call
      *
@@ -71,6 +112,16 @@ public interface Attempt<V> {
      */
     public V getResult() throws IllegalStateException;
 
+    /**
+     * The value of the ticker of the retryer, by default {@link System#nanoTime()}, at the start of
+     * this attempt.
+     *
+     * @return the start time of the attempt, in nanoseconds
+     */
+    public default long getStartTime() {
+        return 0L;
+    }
+
     /**
      * Tells if the call threw an exception or not
      *
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The history of the attempts of a single call, enabled with
+ * {@link RetryerBuilder#withAttemptHistory(int)}.
+ * <p>
+ * Consecutive attempts which failed in the same way, i.e. which threw exceptions of the same class
+ * with the same message, or whose results were rejected, are folded into a single entry which
+ * retains the exception of the first of them. At most a fixed number of entries are retained; once
+ * reached, the oldest entry is discarded for each new one. The history is stored in primitive
+ * arrays allocated once per call.
+ * </p>
+ * <p>
+ * The history is available from every {@link Attempt} of the call, including the ones given to the
+ * {@link StopStrategy} and the {@link WaitStrategy}, and from the {@link RetryException} thrown
+ * when the retryer gives up. It is a single live object, updated by the thread which makes each
+ * attempt, and reflects the attempts made so far rather than those up to a given attempt.
+ * </p>
+ */
+@NotThreadSafe
+public final class AttemptHistory {
+    private static boolean isSameFailure(final Throwable cause, final Throwable other) {
+        if (cause == null || other == null) {
+            return cause == other;
+        }
+        return cause.getClass() == other.getClass() && Objects.equals(cause.getMessage(), other.getMessage());
+    }
+
+    private final Throwable[] causes;
+    private final long[] firstAttemptNumbers;
+    private final int[] counts;
+    private final long[] durations;
+    private final long[] waits;
+
+    /** Index of the oldest retained entry **/
+    private int first;
+
+    private int size;
+    private long attemptCount;
+    private long droppedCount;
+
+    /**
+     * Creates a history which retains the given number of entries.
+     *
+     * @param capacity
+     *            the maximum number of entries retained
+     */
+    AttemptHistory(final int capacity) {
+        Preconditions.checkArgument(capacity >= 1, "capacity must be >= 1 but is %s", capacity);
+        this.causes = new Throwable[capacity];
+        this.firstAttemptNumbers = new long[capacity];
+        this.counts = new int[capacity];
+        this.durations = new long[capacity];
+        this.waits = new long[capacity];
+    }
+
+    /**
+     * Returns the number of attempts recorded, including those whose entries have been discarded.
+     *
+     * @return the number of attempts recorded
+     */
+    public long getAttemptCount() {
+        return attemptCount;
+    }
+
+    /**
+     * Returns the exception thrown by the first attempt of the given entry, or <code>null</code> if
+     * the attempts of the entry returned a result.
+     *
+     * @param index
+     *            the index of the entry, from 0 for the oldest retained entry
+     * @return the exception thrown by the first attempt of the entry, or <code>null</code>
+     */
+    public Throwable getCause(final int index) {
+        return causes[slot(index)];
+    }
+
+    /**
+     * Returns the number of consecutive attempts folded into the given entry.
+     *
+     * @param index
+     *            the index of the entry, from 0 for the oldest retained entry
+     * @return the number of attempts of the entry
+     */
+    public int getCount(final int index) {
+        return counts[slot(index)];
+    }
+
+    /**
+     * Returns the number of attempts whose entries have been discarded to make room for newer ones.
+     *
+     * @return the number of attempts no longer retained
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Returns the total time, in nanoseconds, taken by the attempts of the given entry.
+     *
+     * @param index
+     *            the index of the entry, from 0 for the oldest retained entry
+     * @return the total duration of the attempts of the entry, in nanoseconds
+     */
+    public long getDuration(final int index) {
+        return durations[slot(index)];
+    }
+
+    /**
+     * Returns the number of the first attempt of the given entry.
+     *
+     * @param index
+     *            the index of the entry, from 0 for the oldest retained entry
+     * @return the number, starting from 1, of the first attempt of the entry
+     */
+    public long getFirstAttemptNumber(final int index) {
+        return firstAttemptNumbers[slot(index)];
+    }
+
+    /**
+     * Returns the total sleep time, in milliseconds, computed by the wait strategy after the
+     * attempts of the given entry.
+     *
+     * @param index
+     *            the index of the entry, from 0 for the oldest retained entry
+     * @return the total sleep time after the attempts of the entry, in milliseconds
+     */
+    public long getWait(final int index) {
+        return waits[slot(index)];
+    }
+
+    /**
+     * Returns the number of entries retained.
+     *
+     * @return the number of entries retained
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("AttemptHistory [");
+        if (droppedCount != 0L) {
+            sb.append(droppedCount).append(" earlier attempts dropped");
+        }
+        for (int i = 0; i < size; i++) {
+            if (i != 0 || droppedCount != 0L) {
+                sb.append(", ");
+            }
+            final long firstAttemptNumber = getFirstAttemptNumber(i);
+            final int count = getCount(i);
+            sb.append("attempt ").append(firstAttemptNumber);
+            if (count != 1) {
+                sb.append('-').append(firstAttemptNumber + count - 1);
+            }
+            final Throwable cause = getCause(i);
+            sb.append(": ").append(cause != null ? cause.toString() : "result");
+            sb.append(" in ").append(TimeUnit.NANOSECONDS.toMillis(getDuration(i))).append(" ms");
+            if (getWait(i) != 0L) {
+                sb.append(", waited ").append(getWait(i)).append(" ms");
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Records an attempt of the call.
+     *
+     * @param attempt
+     *            the attempt
+     */
+    void record(final Attempt<?> attempt) {
+        final Throwable cause = attempt.hasException() ? attempt.getExceptionCause() : null;
+        attemptCount++;
+        if (size != 0) {
+            final int last = slot(size - 1);
+            if (isSameFailure(causes[last], cause)) {
+                counts[last]++;
+                durations[last] += attempt.getDuration();
+                return;
+            }
+        }
+        if (size == causes.length) {
+            droppedCount += counts[first];
+            causes[first] = null;
+            first = (first + 1) % causes.length;
+            size--;
+        }
+        final int slot = slot(size++);
+        causes[slot] = cause;
+        firstAttemptNumbers[slot] = attempt.getAttemptNumber();
+        counts[slot] = 1;
+        durations[slot] = attempt.getDuration();
+        waits[slot] = 0L;
+    }
+
+    /**
+     * Records the sleep time computed by the wait strategy after the last attempt.
+     *
+     * @param sleepTime
+     *            the sleep time, in milliseconds
+     */
+    void recordWait(final long sleepTime) {
+        if (size != 0) {
+            waits[slot(size - 1)] += sleepTime;
+        }
+    }
+
+    private int slot(final int index) {
+        Preconditions.checkElementIndex(index, size);
+        return (first + index) % causes.length;
+    }
+}
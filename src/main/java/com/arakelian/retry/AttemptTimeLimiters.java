@@ -19,6 +19,7 @@ package com.arakelian.retry;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
@@ -70,6 +71,58 @@ public class AttemptTimeLimiters {
         }
     }
 
+    /**
+     * Makes a single call through another {@link AttemptTimeLimiter} on behalf of a
+     * {@link ForkJoinPool}, capturing the outcome so that it can be rethrown by the caller.
+     */
+    private static final class CallBlocker<V> implements ForkJoinPool.ManagedBlocker {
+        private final AttemptTimeLimiter<V> delegate;
+        private final Callable<V> callable;
+        private V result;
+        private Exception exception;
+        private boolean done;
+
+        public CallBlocker(final AttemptTimeLimiter<V> delegate, final Callable<V> callable) {
+            this.delegate = delegate;
+            this.callable = callable;
+        }
+
+        @Override
+        public boolean block() {
+            try {
+                result = delegate.call(callable);
+            } catch (final Exception e) {
+                exception = e;
+            }
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done;
+        }
+    }
+
+    @Immutable
+    private static final class ManagedBlockingAttemptTimeLimit<V> implements AttemptTimeLimiter<V> {
+        private final AttemptTimeLimiter<V> delegate;
+
+        public ManagedBlockingAttemptTimeLimit(@Nonnull final AttemptTimeLimiter<V> delegate) {
+            this.delegate = Preconditions.checkNotNull(delegate, "delegate may not be null");
+        }
+
+        @Override
+        public V call(final Callable<V> callable) throws Exception {
+            final CallBlocker<V> blocker = new CallBlocker<>(delegate, callable);
+            ForkJoinPool.managedBlock(blocker);
+            if (blocker.exception != null) {
+                throw blocker.exception;
+            }
+            return blocker.result;
+        }
+    }
+
     @Immutable
     private static final class NoAttemptTimeLimit<V> implements AttemptTimeLimiter<V> {
         @Override
@@ -116,6 +169,49 @@ public class AttemptTimeLimiters {
         return new FixedAttemptTimeLimit<>(duration, timeUnit, executorService);
     }
 
+    /**
+     * Returns <code>true</code> if the given limiter calls each callable directly, without any time
+     * limit.
+     *
+     * @param attemptTimeLimiter
+     *            the limiter
+     * @return <code>true</code> if the limiter has no time limit
+     */
+    static boolean isNoTimeLimit(final AttemptTimeLimiter<?> attemptTimeLimiter) {
+        return attemptTimeLimiter instanceof NoAttemptTimeLimit;
+    }
+
+    /**
+     * Returns an {@link AttemptTimeLimiter} which makes each attempt through
+     * {@link ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)} and has no time limit. When
+     * attempts block, for example on I/O, and run on a worker of a {@link ForkJoinPool}, the pool may
+     * activate a spare worker while the attempt is in progress.
+     *
+     * @param <V>
+     *            the type of the computation result
+     * @return an {@link AttemptTimeLimiter} which tells a {@link ForkJoinPool} that attempts may block
+     * @see #managedBlocking(AttemptTimeLimiter)
+     */
+    public static <V> AttemptTimeLimiter<V> managedBlocking() {
+        return new ManagedBlockingAttemptTimeLimit<>(new NoAttemptTimeLimit<>());
+    }
+
+    /**
+     * Returns an {@link AttemptTimeLimiter} which makes each attempt through the given limiter,
+     * inside {@link ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)}. This is useful with
+     * {@link #fixedTimeLimit(long, TimeUnit, ExecutorService)}, whose calling thread blocks until the
+     * attempt completes or times out.
+     *
+     * @param delegate
+     *            the limiter used to make each attempt
+     * @param <V>
+     *            the type of the computation result
+     * @return an {@link AttemptTimeLimiter} which tells a {@link ForkJoinPool} that attempts may block
+     */
+    public static <V> AttemptTimeLimiter<V> managedBlocking(@Nonnull final AttemptTimeLimiter<V> delegate) {
+        return new ManagedBlockingAttemptTimeLimit<>(delegate);
+    }
+
     /**
      * @param <V>
      *            The type of the computation result.
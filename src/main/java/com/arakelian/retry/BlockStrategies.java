@@ -16,6 +16,9 @@
 
 package com.arakelian.retry;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
 import javax.annotation.concurrent.Immutable;
 
 /**
@@ -23,6 +26,54 @@ import javax.annotation.concurrent.Immutable;
  */
 public final class BlockStrategies {
 
+    @Immutable
+    private static class ManagedSleepStrategy implements BlockStrategy {
+
+        @Override
+        public void block(final long sleepTime) throws InterruptedException {
+            ForkJoinPool.managedBlock(new SleepBlocker(sleepTime, null));
+        }
+
+        @Override
+        public void block(final long sleepTime, final CancellationToken token) throws InterruptedException {
+            ForkJoinPool.managedBlock(new SleepBlocker(sleepTime, token));
+        }
+    }
+
+    /**
+     * Sleeps until a deadline, or until a token is cancelled, on behalf of a {@link ForkJoinPool}
+     * which may activate a spare worker in the meantime.
+     */
+    private static final class SleepBlocker implements ForkJoinPool.ManagedBlocker {
+        private final long deadline;
+
+        /** Token which wakes the blocker, or <code>null</code> **/
+        private final CancellationToken token;
+
+        public SleepBlocker(final long sleepTime, final CancellationToken token) {
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sleepTime);
+            this.token = token;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining > 0L) {
+                if (token != null) {
+                    token.awaitCancellation(remaining, TimeUnit.NANOSECONDS);
+                } else {
+                    TimeUnit.NANOSECONDS.sleep(remaining);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return deadline - System.nanoTime() <= 0L || token != null && token.isCancelled();
+        }
+    }
+
     @Immutable
     private static class ThreadSleepStrategy implements BlockStrategy {
 
@@ -30,10 +81,31 @@ public final class BlockStrategies {
         public void block(final long sleepTime) throws InterruptedException {
             Thread.sleep(sleepTime);
         }
+
+        @Override
+        public void block(final long sleepTime, final CancellationToken token) throws InterruptedException {
+            token.awaitCancellation(sleepTime, TimeUnit.MILLISECONDS);
+        }
     }
 
     private static final BlockStrategy THREAD_SLEEP_STRATEGY = new ThreadSleepStrategy();
 
+    private static final BlockStrategy MANAGED_SLEEP_STRATEGY = new ManagedSleepStrategy();
+
+    /**
+     * Returns a block strategy that puts the current thread to sleep between retries using
+     * {@link ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)}. When the current thread is a
+     * worker of a {@link ForkJoinPool}, such as the common pool used by parallel streams, the pool
+     * may activate a spare worker while this one sleeps, so that the parallelism of the pool is
+     * maintained. On other threads, this behaves like {@link #threadSleepStrategy()}.
+     *
+     * @return a block strategy that sleeps between retries without reducing the parallelism of a
+     *         {@link ForkJoinPool}
+     */
+    public static BlockStrategy managedSleepStrategy() {
+        return MANAGED_SLEEP_STRATEGY;
+    }
+
     /**
      * Returns a block strategy that puts the current thread to sleep between retries.
      *
@@ -34,4 +34,23 @@ public interface BlockStrategy {
      *             if blocking is interrupted
      */
     void block(long sleepTime) throws InterruptedException;
+
+    /**
+     * Blocks like {@link #block(long)}, but returns as soon as the given token is cancelled. The
+     * default implementation calls {@link #block(long)}, and only skips blocking if the token is
+     * already cancelled; strategies which actually wait should override it, so that cancelled
+     * calls wake up immediately.
+     *
+     * @param sleepTime
+     *            the computed sleep duration in milliseconds
+     * @param token
+     *            the cancellation token of the call
+     * @throws InterruptedException
+     *             if blocking is interrupted
+     */
+    default void block(final long sleepTime, final CancellationToken token) throws InterruptedException {
+        if (!token.isCancelled()) {
+            block(sleepTime);
+        }
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A handle with which the calls made with
+ * {@link Retryer#call(java.util.concurrent.Callable, CancellationToken)} are cancelled from another
+ * thread, without interrupting the threads which make them.
+ * <p>
+ * Once the token is cancelled, the calls make no further attempts: a call which is blocked between
+ * attempts wakes up immediately, provided its {@link BlockStrategy} supports cancellation, and a
+ * call whose attempt is in progress stops once the attempt completes, unless the attempt is
+ * accepted. Such calls end with a {@link CancellationException}, after the listeners are notified
+ * that the retryer gave up. Optionally, cancelling interrupts the threads making attempts, which
+ * also cancels attempts running under an {@link AttemptTimeLimiter}.
+ * </p>
+ * <p>
+ * A token is cancelled once and for all. A single token may be shared by many calls, for example
+ * to cancel every call in progress when a service shuts down.
+ * </p>
+ */
+@ThreadSafe
+public final class CancellationToken {
+    private final CountDownLatch cancelled = new CountDownLatch(1);
+
+    /** Threads making an attempt of a call of this token, guarded by this token **/
+    private final Set<Thread> attemptThreads = new HashSet<>();
+
+    /** Threads interrupted by {@link #cancel(boolean)} during their current attempt **/
+    private final Set<Thread> interruptedThreads = new HashSet<>();
+
+    /**
+     * Waits until this token is cancelled, or the given time elapses.
+     *
+     * @param timeout
+     *            the maximum time to wait
+     * @param unit
+     *            the time unit of the timeout
+     * @return <code>true</code> if this token is cancelled, <code>false</code> if the time elapsed
+     *         first
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting
+     */
+    public boolean awaitCancellation(final long timeout, @Nonnull final TimeUnit unit)
+            throws InterruptedException {
+        Preconditions.checkNotNull(unit, "unit may not be null");
+        return cancelled.await(timeout, unit);
+    }
+
+    /**
+     * Cancels the calls of this token, without interrupting the attempts in progress.
+     */
+    public void cancel() {
+        cancel(false);
+    }
+
+    /**
+     * Cancels the calls of this token.
+     *
+     * @param mayInterruptIfRunning
+     *            <code>true</code> to interrupt the threads making an attempt, so that the attempts
+     *            in progress are abandoned. The interruption is cleared once the attempt completes;
+     *            threads which are already interrupted are left as they are.
+     */
+    public synchronized void cancel(final boolean mayInterruptIfRunning) {
+        cancelled.countDown();
+        if (mayInterruptIfRunning) {
+            for (final Thread thread : attemptThreads) {
+                // an interruption which the token did not cause must survive the attempt
+                if (!thread.isInterrupted() && interruptedThreads.add(thread)) {
+                    thread.interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Records that the current thread starts an attempt, during which it may be interrupted by
+     * {@link #cancel(boolean)}.
+     */
+    synchronized void enterAttempt() {
+        attemptThreads.add(Thread.currentThread());
+    }
+
+    /**
+     * Records that the current thread completed its attempt, and clears its interruption if it
+     * was interrupted by {@link #cancel(boolean)}.
+     */
+    synchronized void exitAttempt() {
+        final Thread thread = Thread.currentThread();
+        attemptThreads.remove(thread);
+        if (interruptedThreads.remove(thread)) {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if this token has been cancelled.
+     *
+     * @return <code>true</code> if this token has been cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled.getCount() == 0L;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The exception recorded as the cause of an {@link Attempt} that was never executed because the
+ * {@link ConcurrencyLimiter} of the {@link Retryer} did not grant it a permit. The rejection
+ * predicate of the retryer decides whether such an attempt is retried, e.g. using
+ * {@link RetryerBuilder#retryIfExceptionOfType(Class)}.
+ * <p>
+ * The stack trace is not filled in, since the exception is created on an overload path and always
+ * originates from the retryer itself.
+ * </p>
+ */
+@Immutable
+public final class ConcurrencyLimitException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor
+     */
+    public ConcurrencyLimitException() {
+        super("Maximum number of concurrent attempts exceeded", null, false, false);
+    }
+}
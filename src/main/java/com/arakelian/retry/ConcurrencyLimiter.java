@@ -0,0 +1,56 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+/**
+ * A strategy used to limit how many attempts a retryer may execute at the same time. A permit is
+ * acquired before each attempt and released as soon as the attempt completes, so that callers
+ * sleeping between attempts do not hold a permit. The latency and outcome of every attempt are
+ * reported on release, which allows implementations to adapt the limit to what the downstream
+ * service can actually handle.
+ */
+public interface ConcurrencyLimiter {
+
+    /**
+     * Acquires a permit to execute an attempt. Implementations may wait for a permit to become
+     * available, or return <code>false</code> immediately if the limit has been reached.
+     *
+     * @return <code>true</code> if a permit was acquired, <code>false</code> if the attempt must be
+     *         rejected
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting for a permit
+     */
+    boolean acquire() throws InterruptedException;
+
+    /**
+     * Returns the current limit on the number of concurrent attempts.
+     *
+     * @return the current limit, or {@link Integer#MAX_VALUE} if there is no limit
+     */
+    int getLimit();
+
+    /**
+     * Releases a permit previously obtained from {@link #acquire()}.
+     *
+     * @param latency
+     *            the time taken by the attempt, in nanoseconds
+     * @param failed
+     *            <code>true</code> if the attempt threw an exception, or returned a result rejected
+     *            by the rejection predicate of the retryer
+     */
+    void release(long latency, boolean failed);
+}
@@ -0,0 +1,449 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Factory class for {@link ConcurrencyLimiter} instances.
+ */
+public final class ConcurrencyLimiters {
+
+    /**
+     * Base class for limiters which adjust the number of permitted concurrent attempts based on the
+     * latency and outcome of completed attempts. Attempts in excess of the limit are rejected
+     * immediately, so that excess load is shed rather than queued.
+     */
+    @ThreadSafe
+    private abstract static class AdaptiveConcurrencyLimiter implements ConcurrencyLimiter {
+        protected final int minLimit;
+        protected final int maxLimit;
+        private final AtomicInteger limit;
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        public AdaptiveConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit) {
+            Preconditions.checkArgument(minLimit >= 1, "minLimit must be >= 1 but is %s", minLimit);
+            Preconditions.checkArgument(
+                    maxLimit >= minLimit,
+                    "maxLimit must be >= minLimit but maxLimit is %s and minLimit is %s",
+                    maxLimit,
+                    minLimit);
+            Preconditions.checkArgument(
+                    initialLimit >= minLimit && initialLimit <= maxLimit,
+                    "initialLimit must be between %s and %s but is %s",
+                    minLimit,
+                    maxLimit,
+                    initialLimit);
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.limit = new AtomicInteger(initialLimit);
+        }
+
+        @Override
+        public boolean acquire() {
+            for (;;) {
+                final int current = inFlight.get();
+                if (current >= limit.get()) {
+                    return false;
+                }
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public int getLimit() {
+            return limit.get();
+        }
+
+        @Override
+        public void release(final long latency, final boolean failed) {
+            final int current = inFlight.getAndDecrement();
+            for (;;) {
+                final int oldLimit = limit.get();
+                final int computed = computeLimit(oldLimit, current, latency, failed);
+                final int newLimit = Math.max(minLimit, Math.min(maxLimit, computed));
+                if (newLimit == oldLimit || limit.compareAndSet(oldLimit, newLimit)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Computes the new limit from a completed attempt.
+         *
+         * @param limit
+         *            the current limit
+         * @param inFlight
+         *            the number of attempts in flight when the attempt completed, including itself
+         * @param latency
+         *            the time taken by the attempt, in nanoseconds
+         * @param failed
+         *            <code>true</code> if the attempt failed
+         * @return the new limit, which is clamped to the minimum and maximum limits
+         */
+        protected abstract int computeLimit(int limit, int inFlight, long latency, boolean failed);
+    }
+
+    /**
+     * Additive-increase/multiplicative-decrease limiter. The limit grows by one after each
+     * successful attempt that was made while the limiter was at least half utilized, and is
+     * multiplied by a backoff ratio after each failed or slow attempt.
+     */
+    @ThreadSafe
+    private static final class AimdConcurrencyLimiter extends AdaptiveConcurrencyLimiter {
+        private final double backoffRatio;
+        private final long latencyThreshold;
+
+        public AimdConcurrencyLimiter(
+                final int initialLimit,
+                final int minLimit,
+                final int maxLimit,
+                final double backoffRatio,
+                final long latencyThreshold) {
+            super(initialLimit, minLimit, maxLimit);
+            Preconditions.checkArgument(
+                    backoffRatio >= 0.5d && backoffRatio < 1.0d,
+                    "backoffRatio must be >= 0.5 and < 1.0 but is %s",
+                    backoffRatio);
+            Preconditions.checkArgument(
+                    latencyThreshold > 0L,
+                    "latencyThreshold must be > 0 but is %s",
+                    latencyThreshold);
+            this.backoffRatio = backoffRatio;
+            this.latencyThreshold = latencyThreshold;
+        }
+
+        @Override
+        protected int computeLimit(
+                final int limit,
+                final int inFlight,
+                final long latency,
+                final boolean failed) {
+            if (failed || latency > latencyThreshold) {
+                return (int) (limit * backoffRatio);
+            }
+            if (inFlight * 2 >= limit) {
+                return limit + 1;
+            }
+            return limit;
+        }
+    }
+
+    @Immutable
+    private static final class NoConcurrencyLimiter implements ConcurrencyLimiter {
+        @Override
+        public boolean acquire() {
+            return true;
+        }
+
+        @Override
+        public int getLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void release(final long latency, final boolean failed) {
+        }
+    }
+
+    @ThreadSafe
+    private static final class SemaphoreConcurrencyLimiter implements ConcurrencyLimiter {
+        private final Semaphore semaphore;
+        private final int maxConcurrentAttempts;
+        private final int maxWaitingAttempts;
+        private final long timeoutNanos;
+        private final AtomicInteger waitingAttempts = new AtomicInteger();
+
+        public SemaphoreConcurrencyLimiter(
+                final int maxConcurrentAttempts,
+                final int maxWaitingAttempts,
+                final long timeoutNanos) {
+            Preconditions.checkArgument(
+                    maxConcurrentAttempts >= 1,
+                    "maxConcurrentAttempts must be >= 1 but is %s",
+                    maxConcurrentAttempts);
+            Preconditions.checkArgument(
+                    maxWaitingAttempts >= 0,
+                    "maxWaitingAttempts must be >= 0 but is %s",
+                    maxWaitingAttempts);
+            Preconditions.checkArgument(timeoutNanos >= 0L, "timeout must be >= 0 but is %s", timeoutNanos);
+            this.semaphore = new Semaphore(maxConcurrentAttempts, false);
+            this.maxConcurrentAttempts = maxConcurrentAttempts;
+            this.maxWaitingAttempts = maxWaitingAttempts;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        @Override
+        public boolean acquire() throws InterruptedException {
+            if (semaphore.tryAcquire()) {
+                return true;
+            }
+            if (maxWaitingAttempts == 0 || timeoutNanos == 0L) {
+                return false;
+            }
+
+            // bound the number of callers that may queue up behind the semaphore
+            for (;;) {
+                final int waiting = waitingAttempts.get();
+                if (waiting >= maxWaitingAttempts) {
+                    return false;
+                }
+                if (waitingAttempts.compareAndSet(waiting, waiting + 1)) {
+                    break;
+                }
+            }
+            try {
+                return semaphore.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS);
+            } finally {
+                waitingAttempts.decrementAndGet();
+            }
+        }
+
+        @Override
+        public int getLimit() {
+            return maxConcurrentAttempts;
+        }
+
+        @Override
+        public void release(final long latency, final boolean failed) {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Delay-based limiter modelled after TCP Vegas. The lowest latency observed is taken as the
+     * latency of an unloaded service, and the ratio between it and the latency of each attempt is
+     * used to estimate how many attempts are queued in the downstream service. The limit grows
+     * while the estimated queue is small, shrinks when it becomes large, and is multiplied by a
+     * backoff ratio after each failed attempt.
+     */
+    @ThreadSafe
+    private static final class VegasConcurrencyLimiter extends AdaptiveConcurrencyLimiter {
+        private static final double BACKOFF_RATIO = 0.9d;
+
+        private final int alpha;
+        private final int beta;
+        private final AtomicLong minLatency = new AtomicLong(Long.MAX_VALUE);
+
+        public VegasConcurrencyLimiter(
+                final int initialLimit,
+                final int minLimit,
+                final int maxLimit,
+                final int alpha,
+                final int beta) {
+            super(initialLimit, minLimit, maxLimit);
+            Preconditions.checkArgument(alpha >= 1, "alpha must be >= 1 but is %s", alpha);
+            Preconditions.checkArgument(beta > alpha, "beta must be > alpha but is %s", beta);
+            this.alpha = alpha;
+            this.beta = beta;
+        }
+
+        @Override
+        protected int computeLimit(
+                final int limit,
+                final int inFlight,
+                final long latency,
+                final boolean failed) {
+            if (failed) {
+                return (int) (limit * BACKOFF_RATIO);
+            }
+
+            final long latencyNoLoad = updateMinLatency(Math.max(1L, latency));
+            final double queueSize = limit * (1.0d - (double) latencyNoLoad / Math.max(1L, latency));
+            if (queueSize <= alpha && inFlight * 2 >= limit) {
+                return limit + 1;
+            }
+            if (queueSize >= beta) {
+                return limit - 1;
+            }
+            return limit;
+        }
+
+        private long updateMinLatency(final long latency) {
+            for (;;) {
+                final long current = minLatency.get();
+                if (latency >= current) {
+                    return current;
+                }
+                if (minLatency.compareAndSet(current, latency)) {
+                    return latency;
+                }
+            }
+        }
+    }
+
+    private static final ConcurrencyLimiter NO_LIMIT = new NoConcurrencyLimiter();
+
+    /**
+     * Returns an adaptive concurrency limiter which uses additive-increase/multiplicative-decrease
+     * to find the number of concurrent attempts the downstream service can handle. Each successful
+     * attempt increases the limit by one, and each failed attempt, or attempt that takes longer
+     * than {@code latencyThreshold}, multiplies the limit by {@code backoffRatio}. Attempts in
+     * excess of the current limit are rejected immediately.
+     *
+     * @param initialLimit
+     *            the initial limit
+     * @param minLimit
+     *            the minimum limit
+     * @param maxLimit
+     *            the maximum limit
+     * @param backoffRatio
+     *            the ratio by which the limit is multiplied after a failure, between 0.5 and 1.0
+     * @param latencyThreshold
+     *            the latency above which an attempt is considered to have failed
+     * @param timeUnit
+     *            the unit of the latency threshold
+     * @return an adaptive concurrency limiter
+     */
+    public static ConcurrencyLimiter aimd(
+            final int initialLimit,
+            final int minLimit,
+            final int maxLimit,
+            final double backoffRatio,
+            final long latencyThreshold,
+            @Nonnull final TimeUnit timeUnit) {
+        Preconditions.checkNotNull(timeUnit, "The time unit may not be null");
+        return new AimdConcurrencyLimiter(initialLimit, minLimit, maxLimit, backoffRatio,
+                timeUnit.toNanos(latencyThreshold));
+    }
+
+    /**
+     * Returns an adaptive concurrency limiter which uses additive-increase/multiplicative-decrease
+     * to find the number of concurrent attempts the downstream service can handle. The limit is
+     * multiplied by 0.9 after each failed attempt.
+     *
+     * @param initialLimit
+     *            the initial limit
+     * @param minLimit
+     *            the minimum limit
+     * @param maxLimit
+     *            the maximum limit
+     * @return an adaptive concurrency limiter
+     * @see #aimd(int, int, int, double, long, TimeUnit)
+     */
+    public static ConcurrencyLimiter aimd(final int initialLimit, final int minLimit, final int maxLimit) {
+        return new AimdConcurrencyLimiter(initialLimit, minLimit, maxLimit, 0.9d, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns a concurrency limiter which allows an unlimited number of concurrent attempts.
+     *
+     * @return a concurrency limiter which never rejects an attempt
+     */
+    public static ConcurrencyLimiter noLimit() {
+        return NO_LIMIT;
+    }
+
+    /**
+     * Returns a concurrency limiter which allows at most {@code maxConcurrentAttempts} attempts to
+     * execute at the same time. Any additional attempt is rejected immediately.
+     *
+     * @param maxConcurrentAttempts
+     *            the maximum number of attempts that may execute concurrently
+     * @return a concurrency limiter backed by a non-fair semaphore
+     */
+    public static ConcurrencyLimiter semaphore(final int maxConcurrentAttempts) {
+        return new SemaphoreConcurrencyLimiter(maxConcurrentAttempts, 0, 0L);
+    }
+
+    /**
+     * Returns a concurrency limiter which allows at most {@code maxConcurrentAttempts} attempts to
+     * execute at the same time. When the limit has been reached, up to {@code maxWaitingAttempts}
+     * additional attempts will wait for a permit for at most the given timeout; any other attempt
+     * is rejected immediately.
+     *
+     * @param maxConcurrentAttempts
+     *            the maximum number of attempts that may execute concurrently
+     * @param maxWaitingAttempts
+     *            the maximum number of attempts that may wait for a permit
+     * @param timeout
+     *            the maximum time to wait for a permit
+     * @param timeUnit
+     *            the unit of the timeout
+     * @return a concurrency limiter backed by a non-fair semaphore
+     */
+    public static ConcurrencyLimiter semaphore(
+            final int maxConcurrentAttempts,
+            final int maxWaitingAttempts,
+            final long timeout,
+            @Nonnull final TimeUnit timeUnit) {
+        Preconditions.checkNotNull(timeUnit, "The time unit may not be null");
+        return new SemaphoreConcurrencyLimiter(maxConcurrentAttempts, maxWaitingAttempts,
+                timeUnit.toNanos(timeout));
+    }
+
+    /**
+     * Returns an adaptive concurrency limiter which estimates the number of attempts queued in the
+     * downstream service from the increase of attempt latency over the lowest latency observed,
+     * in the manner of TCP Vegas. The limit is increased while fewer than {@code alpha} attempts
+     * are estimated to be queued, and decreased when more than {@code beta} attempts are. Failed
+     * attempts multiply the limit by 0.9. Attempts in excess of the current limit are rejected
+     * immediately.
+     *
+     * @param initialLimit
+     *            the initial limit
+     * @param minLimit
+     *            the minimum limit
+     * @param maxLimit
+     *            the maximum limit
+     * @param alpha
+     *            estimated queue size below which the limit is increased
+     * @param beta
+     *            estimated queue size above which the limit is decreased
+     * @return an adaptive concurrency limiter
+     */
+    public static ConcurrencyLimiter vegas(
+            final int initialLimit,
+            final int minLimit,
+            final int maxLimit,
+            final int alpha,
+            final int beta) {
+        return new VegasConcurrencyLimiter(initialLimit, minLimit, maxLimit, alpha, beta);
+    }
+
+    /**
+     * Returns an adaptive concurrency limiter in the manner of TCP Vegas, which increases the limit
+     * while fewer than 3 attempts are estimated to be queued in the downstream service, and
+     * decreases it when more than 6 attempts are.
+     *
+     * @param initialLimit
+     *            the initial limit
+     * @param minLimit
+     *            the minimum limit
+     * @param maxLimit
+     *            the maximum limit
+     * @return an adaptive concurrency limiter
+     * @see #vegas(int, int, int, int, int)
+     */
+    public static ConcurrencyLimiter vegas(final int initialLimit, final int minLimit, final int maxLimit) {
+        return new VegasConcurrencyLimiter(initialLimit, minLimit, maxLimit, 3, 6);
+    }
+
+    private ConcurrencyLimiters() {
+    }
+}
@@ -0,0 +1,676 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A persistent queue of work items which are retried in the background, and which survives process
+ * restarts. Items are either submitted directly, or handed over by {@link #call(byte[], Retryer)}
+ * once a synchronous retryer has given up on them.
+ * <p>
+ * Every change to the queue is appended to a log made of fixed-size, memory-mapped segment files
+ * in a directory. Each record is prefixed with its length and a CRC, so that a record which was
+ * only partially written when the process died is detected and ignored on recovery. Once every
+ * item recorded in the oldest segment has completed, the segment is deleted; if only a few items
+ * are still pending, they are first copied to the active segment.
+ * </p>
+ * <p>
+ * Items are re-driven by a pool of background workers, using the rejection predicate, stop
+ * strategy, wait strategy and retry budget of the given {@link Retryer}. The attempt number and
+ * the time of the first attempt of each item are persisted, so stop and wait strategies see the
+ * same attempt history after a restart. The block strategy of the retryer is not used: workers do
+ * not sleep between attempts, they schedule the next one.
+ * </p>
+ */
+@ThreadSafe
+public final class DurableRetryQueue implements Closeable {
+    /**
+     * Processes the payload of a work item.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * Processes the payload of a work item.
+         *
+         * @param payload
+         *            the payload given when the item was submitted
+         * @throws Exception
+         *             if the item could not be processed
+         */
+        void handle(byte[] payload) throws Exception;
+    }
+
+    private static final class Entry {
+        private final long id;
+        private final byte[] payload;
+        private final long firstAttemptTime;
+        private int attemptCount;
+        private long dueTime;
+        private Segment segment;
+
+        /** History of the attempts made since the queue was opened, which is not persisted **/
+        private AttemptHistory history;
+
+        /** Time slept between the attempts made since the queue was opened, which is not persisted **/
+        private long sleepTime;
+
+        public Entry(
+                final long id,
+                final byte[] payload,
+                final int attemptCount,
+                final long firstAttemptTime,
+                final long dueTime) {
+            this.id = id;
+            this.payload = payload;
+            this.attemptCount = attemptCount;
+            this.firstAttemptTime = firstAttemptTime;
+            this.dueTime = dueTime;
+        }
+
+        public int getEnqueueRecordSize() {
+            return HEADER_SIZE + ENQUEUE_SIZE + payload.length;
+        }
+    }
+
+    private static final class Segment {
+        private final long sequence;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int liveEntries;
+        private long liveBytes;
+
+        public Segment(final long sequence, final Path file, final MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        public int remaining() {
+            return buffer.capacity() - writePosition;
+        }
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DurableRetryQueue.class);
+
+    /** Default size of each segment file **/
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /** length and CRC of record body **/
+    private static final int HEADER_SIZE = 8;
+
+    /** type and id **/
+    private static final int BODY_PREFIX_SIZE = 9;
+
+    /** attempt count, first attempt time and due time, followed by payload **/
+    private static final int ENQUEUE_SIZE = BODY_PREFIX_SIZE + 20;
+
+    /** attempt count and due time **/
+    private static final int ATTEMPT_SIZE = BODY_PREFIX_SIZE + 12;
+
+    private static final int COMPLETE_SIZE = BODY_PREFIX_SIZE;
+
+    private static final byte ENQUEUE = 1;
+    private static final byte ATTEMPT = 2;
+    private static final byte COMPLETE = 3;
+
+    private static Path segmentFile(final Path directory, final long sequence) {
+        return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    private final Path directory;
+    private final Retryer<Void> retryer;
+    private final Handler handler;
+    private final int segmentSize;
+    private final boolean force;
+    private final ScheduledExecutorService workers;
+
+    @GuardedBy("this")
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+
+    @GuardedBy("this")
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    @GuardedBy("this")
+    private final CRC32C crc = new CRC32C();
+
+    @GuardedBy("this")
+    private long nextId;
+
+    @GuardedBy("this")
+    private boolean closed;
+
+    /**
+     * Opens a durable retry queue in the given directory, resuming any work items that were pending
+     * when the queue was last closed.
+     *
+     * @param directory
+     *            the directory which holds the segment files of the queue
+     * @param retryer
+     *            the retryer whose strategies are used to retry the items
+     * @param handler
+     *            the handler which processes the items
+     * @param workers
+     *            the number of background workers
+     * @throws IOException
+     *             if the queue cannot be recovered from the directory
+     */
+    public DurableRetryQueue(
+            @Nonnull final Path directory,
+            @Nonnull final Retryer<Void> retryer,
+            @Nonnull final Handler handler,
+            final int workers) throws IOException {
+        this(directory, retryer, handler, workers, DEFAULT_SEGMENT_SIZE, false);
+    }
+
+    /**
+     * Opens a durable retry queue in the given directory, resuming any work items that were pending
+     * when the queue was last closed.
+     *
+     * @param directory
+     *            the directory which holds the segment files of the queue
+     * @param retryer
+     *            the retryer whose strategies are used to retry the items
+     * @param handler
+     *            the handler which processes the items
+     * @param workers
+     *            the number of background workers
+     * @param segmentSize
+     *            the size, in bytes, of each segment file, which must be at least 4096; payloads
+     *            whose record, including its header, exceeds a quarter of this size are rejected
+     * @param force
+     *            <code>true</code> if every change must be forced to the storage device before
+     *            returning; otherwise changes survive a process crash, but not an operating system
+     *            crash
+     * @throws IOException
+     *             if the queue cannot be recovered from the directory
+     */
+    public DurableRetryQueue(
+            @Nonnull final Path directory,
+            @Nonnull final Retryer<Void> retryer,
+            @Nonnull final Handler handler,
+            final int workers,
+            final int segmentSize,
+            final boolean force) throws IOException {
+        Preconditions.checkNotNull(directory, "directory may not be null");
+        Preconditions.checkNotNull(retryer, "retryer may not be null");
+        Preconditions.checkNotNull(handler, "handler may not be null");
+        Preconditions.checkArgument(workers >= 1, "workers must be >= 1 but is %s", workers);
+        Preconditions.checkArgument(
+                segmentSize >= 4096,
+                "segmentSize must be >= 4096 but is %s",
+                segmentSize);
+        this.directory = directory;
+        this.retryer = retryer;
+        this.handler = handler;
+        this.segmentSize = segmentSize;
+        this.force = force;
+
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(workers,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("durable-retry-queue-%d").build());
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.workers = executor;
+
+        Files.createDirectories(directory);
+        synchronized (this) {
+            recover();
+            for (final Entry entry : entries.values()) {
+                schedule(entry);
+            }
+        }
+    }
+
+    /**
+     * Calls the handler with the given payload synchronously, using the given retryer. If the
+     * retryer gives up, the item is appended to the queue and retried in the background; its
+     * attempt count and the time of its first attempt are carried over.
+     *
+     * @param payload
+     *            the payload of the item
+     * @param synchronousRetryer
+     *            the retryer used to make the synchronous attempts
+     * @return <code>true</code> if the item was processed synchronously, <code>false</code> if it
+     *         was appended to the queue
+     * @throws ExecutionException
+     *             if the handler throws an exception which the synchronous retryer does not retry
+     * @throws IOException
+     *             if the item cannot be appended to the queue
+     * @throws IllegalArgumentException
+     *             if the item must be appended to the queue, and its record exceeds a quarter of the
+     *             segment size
+     */
+    public boolean call(@Nonnull final byte[] payload, @Nonnull final Retryer<Void> synchronousRetryer)
+            throws ExecutionException, IOException {
+        Preconditions.checkNotNull(payload, "payload may not be null");
+        Preconditions.checkNotNull(synchronousRetryer, "synchronousRetryer may not be null");
+        try {
+            synchronousRetryer.call(() -> {
+                handler.handle(payload);
+                return null;
+            });
+            return true;
+        } catch (final RetryException e) {
+            @SuppressWarnings("unchecked")
+            final Attempt<Void> lastFailedAttempt = (Attempt<Void>) e.getLastFailedAttempt();
+            final long now = System.currentTimeMillis();
+            final long firstAttemptTime = now - lastFailedAttempt.getDelaySinceFirstAttempt();
+            final long dueTime = now + retryer.computeSleepTime(lastFailedAttempt);
+            enqueue(payload, e.getNumberOfFailedAttempts(), firstAttemptTime, dueTime);
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (final Segment segment : segments) {
+                segment.buffer.force();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of items which have not completed yet.
+     *
+     * @return the number of pending items
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Appends an item to the queue, to be attempted as soon as possible by a background worker.
+     *
+     * @param payload
+     *            the payload of the item
+     * @throws IOException
+     *             if the item cannot be appended to the queue
+     * @throws IllegalArgumentException
+     *             if the record of the payload exceeds a quarter of the segment size
+     */
+    public void submit(@Nonnull final byte[] payload) throws IOException {
+        Preconditions.checkNotNull(payload, "payload may not be null");
+        final long now = System.currentTimeMillis();
+        enqueue(payload, 0, now, now);
+    }
+
+    @GuardedBy("this")
+    private void append(final Entry entry, final byte type) throws IOException {
+        final int size;
+        switch (type) {
+        case ENQUEUE:
+            size = entry.getEnqueueRecordSize();
+            break;
+        case ATTEMPT:
+            size = HEADER_SIZE + ATTEMPT_SIZE;
+            break;
+        default:
+            size = HEADER_SIZE + COMPLETE_SIZE;
+            break;
+        }
+        Preconditions.checkArgument(
+                size <= segmentSize / 4,
+                "Record of %s bytes is too large for segments of %s bytes",
+                size,
+                segmentSize);
+
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.remaining() < size) {
+            // compaction never fills more than a quarter of the new segment
+            segment = roll();
+        }
+
+        final MappedByteBuffer buffer = segment.buffer;
+        final int start = segment.writePosition;
+        int pos = start + HEADER_SIZE;
+        buffer.put(pos, type);
+        buffer.putLong(pos + 1, entry.id);
+        pos += BODY_PREFIX_SIZE;
+        if (type != COMPLETE) {
+            buffer.putInt(pos, entry.attemptCount);
+            pos += 4;
+            if (type == ENQUEUE) {
+                buffer.putLong(pos, entry.firstAttemptTime);
+                pos += 8;
+            }
+            buffer.putLong(pos, entry.dueTime);
+            pos += 8;
+            if (type == ENQUEUE) {
+                final ByteBuffer dst = buffer.duplicate();
+                dst.position(pos);
+                dst.put(entry.payload);
+                pos += entry.payload.length;
+            }
+        }
+
+        // length is written last, so that a partially written record reads as end of log
+        final int length = pos - start - HEADER_SIZE;
+        buffer.putInt(start + 4, checksum(buffer, start + HEADER_SIZE, length));
+        buffer.putInt(start, length);
+        segment.writePosition = pos;
+        if (force) {
+            buffer.force();
+        }
+
+        if (type == ENQUEUE) {
+            if (entry.segment != null) {
+                entry.segment.liveEntries--;
+                entry.segment.liveBytes -= size;
+            }
+            entry.segment = segment;
+            segment.liveEntries++;
+            segment.liveBytes += size;
+        }
+    }
+
+    @GuardedBy("this")
+    private void apply(final Segment segment, final ByteBuffer buffer, final int position, final int length) {
+        final byte type = buffer.get(position);
+        final long id = buffer.getLong(position + 1);
+        int pos = position + BODY_PREFIX_SIZE;
+        nextId = Math.max(nextId, id + 1);
+
+        switch (type) {
+        case ENQUEUE: {
+            final int attemptCount = buffer.getInt(pos);
+            final long firstAttemptTime = buffer.getLong(pos + 4);
+            final long dueTime = buffer.getLong(pos + 12);
+            pos += 20;
+            final byte[] payload = new byte[length - ENQUEUE_SIZE];
+            final ByteBuffer src = buffer.duplicate();
+            src.position(pos);
+            src.get(payload);
+
+            final Entry previous = entries.remove(id);
+            if (previous != null) {
+                previous.segment.liveEntries--;
+                previous.segment.liveBytes -= previous.getEnqueueRecordSize();
+            }
+            final Entry entry = new Entry(id, payload, attemptCount, firstAttemptTime, dueTime);
+            entry.segment = segment;
+            segment.liveEntries++;
+            segment.liveBytes += entry.getEnqueueRecordSize();
+            entries.put(id, entry);
+            break;
+        }
+        case ATTEMPT: {
+            final Entry entry = entries.get(id);
+            if (entry != null) {
+                entry.attemptCount = buffer.getInt(pos);
+                entry.dueTime = buffer.getLong(pos + 4);
+            }
+            break;
+        }
+        case COMPLETE: {
+            final Entry entry = entries.remove(id);
+            if (entry != null) {
+                entry.segment.liveEntries--;
+                entry.segment.liveBytes -= entry.getEnqueueRecordSize();
+            }
+            break;
+        }
+        default:
+            LOGGER.warn("Ignoring record of unknown type {} in {}", type, segment.file);
+            break;
+        }
+    }
+
+    @GuardedBy("this")
+    private int checksum(final ByteBuffer buffer, final int position, final int length) {
+        final ByteBuffer body = buffer.duplicate();
+        body.position(position);
+        body.limit(position + length);
+        crc.reset();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Deletes segments from the head of the log once all of their items have completed. Segments
+     * must be deleted in order, since a segment may hold the completion records of items that were
+     * enqueued in an older segment. The few items still pending in the oldest segment are copied
+     * to the active segment, provided they take up no more than a quarter of a segment.
+     */
+    @GuardedBy("this")
+    private void compact() throws IOException {
+        while (segments.size() > 1) {
+            final Segment oldest = segments.peekFirst();
+            if (oldest.liveEntries != 0) {
+                final Segment active = segments.peekLast();
+                if (oldest.liveBytes > segmentSize / 4 || oldest.liveBytes > active.remaining()) {
+                    return;
+                }
+                final List<Entry> live = new ArrayList<>(oldest.liveEntries);
+                for (final Entry entry : entries.values()) {
+                    if (entry.segment == oldest) {
+                        live.add(entry);
+                    }
+                }
+                for (final Entry entry : live) {
+                    append(entry, ENQUEUE);
+                }
+            }
+            segments.removeFirst();
+            try {
+                Files.deleteIfExists(oldest.file);
+            } catch (final IOException e) {
+                LOGGER.warn("Unable to delete segment {}", oldest.file, e);
+            }
+        }
+    }
+
+    @GuardedBy("this")
+    private void complete(final Entry entry) {
+        if (entries.remove(entry.id) == null) {
+            return;
+        }
+        entry.segment.liveEntries--;
+        entry.segment.liveBytes -= entry.getEnqueueRecordSize();
+        try {
+            append(entry, COMPLETE);
+            if (entry.segment.liveEntries == 0 && entry.segment == segments.peekFirst()) {
+                compact();
+            }
+        } catch (final IOException e) {
+            // item will be retried again after restart
+            LOGGER.warn("Unable to record completion of item {}", entry.id, e);
+        }
+    }
+
+    private void enqueue(
+            final byte[] payload,
+            final int attemptCount,
+            final long firstAttemptTime,
+            final long dueTime) throws IOException {
+        synchronized (this) {
+            Preconditions.checkState(!closed, "Queue is closed");
+            final Entry entry = new Entry(nextId++, payload.clone(), attemptCount, firstAttemptTime,
+                    dueTime);
+            append(entry, ENQUEUE);
+            entries.put(entry.id, entry);
+            schedule(entry);
+        }
+    }
+
+    private MappedByteBuffer map(final Path file, final long size) throws IOException {
+        try (final FileChannel channel = FileChannel.open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    @GuardedBy("this")
+    private void recover() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files
+                .newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (final Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(Comparator.comparing(Path::getFileName));
+
+        for (final Path file : files) {
+            final String name = file.getFileName().toString();
+            final long sequence = Long.parseLong(
+                    name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            final long size = Math.max(Files.size(file), segmentSize);
+            final Segment segment = new Segment(sequence, file, map(file, size));
+            segments.addLast(segment);
+
+            final MappedByteBuffer buffer = segment.buffer;
+            int pos = 0;
+            while (pos + HEADER_SIZE <= buffer.capacity()) {
+                final int length = buffer.getInt(pos);
+                if (length < BODY_PREFIX_SIZE || pos + HEADER_SIZE + length > buffer.capacity()) {
+                    break;
+                }
+                if (buffer.getInt(pos + 4) != checksum(buffer, pos + HEADER_SIZE, length)) {
+                    LOGGER.warn("Ignoring corrupt record at offset {} of {}", pos, file);
+                    break;
+                }
+                apply(segment, buffer, pos + HEADER_SIZE, length);
+                pos += HEADER_SIZE + length;
+            }
+            segment.writePosition = pos;
+        }
+
+        if (!segments.isEmpty()) {
+            LOGGER.info("Recovered {} pending items from {}", entries.size(), directory);
+            compact();
+        }
+    }
+
+    @GuardedBy("this")
+    private Segment roll() throws IOException {
+        final Segment last = segments.peekLast();
+        final long sequence = last == null ? 0L : last.sequence + 1;
+        final Path file = segmentFile(directory, sequence);
+        final Segment segment = new Segment(sequence, file, map(file, segmentSize));
+        if (last != null && force) {
+            last.buffer.force();
+        }
+        segments.addLast(segment);
+        compact();
+        return segment;
+    }
+
+    private void run(final Entry entry) {
+        final int attemptNumber = entry.attemptCount + 1;
+        final long now = System.currentTimeMillis();
+        final long startTime = retryer.getTicker().read()
+                - TimeUnit.MILLISECONDS.toNanos(Math.max(0L, now - entry.firstAttemptTime));
+
+        if (entry.history == null) {
+            entry.history = retryer.newAttemptHistory();
+        }
+
+        final Retryer.Outcome<Void> outcome;
+        try {
+            outcome = retryer.attempt(() -> {
+                handler.handle(entry.payload);
+                return null;
+            }, attemptNumber, startTime, entry.sleepTime, entry.history);
+        } catch (final InterruptedException e) {
+            // queue is closing, item remains in the log
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            final Attempt<Void> attempt = outcome.getAttempt();
+            if (!retryer.isRejected(outcome)) {
+                if (attempt.hasException()) {
+                    LOGGER.warn("Item {} failed with an exception that is not retried", entry.id,
+                            attempt.getExceptionCause());
+                }
+                complete(entry);
+            } else if (retryer.shouldStop(attempt)) {
+                LOGGER.warn("Giving up on item {} after {} attempts", entry.id, attemptNumber);
+                complete(entry);
+            } else {
+                final long sleepTime = retryer.computeSleepTime(attempt);
+                entry.attemptCount = attemptNumber;
+                entry.sleepTime += sleepTime;
+                entry.dueTime = System.currentTimeMillis() + sleepTime;
+                try {
+                    append(entry, ATTEMPT);
+                } catch (final IOException e) {
+                    LOGGER.warn("Unable to record attempt {} of item {}", attemptNumber, entry.id, e);
+                }
+                schedule(entry);
+            }
+        }
+    }
+
+    @GuardedBy("this")
+    private void schedule(final Entry entry) {
+        final long delay = Math.max(0L, entry.dueTime - System.currentTimeMillis());
+        workers.schedule(() -> run(entry), delay, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A queue of pending retries which is shared fairly between tenants.
+ * <p>
+ * Every pending retry belongs to a priority class and a tenant. Retries of a higher priority class
+ * are always taken before those of a lower priority class. Within a priority class, tenants are
+ * served using deficit round robin: each tenant with pending retries may take up to its weight in
+ * retries before the next tenant gets its turn, so a tenant with many failing tasks cannot starve
+ * the retries of other tenants.
+ * </p>
+ * <p>
+ * In addition, every tenant has a quota, which is the maximum number of retries it may have pending
+ * at any time across all priority classes. Retries in excess of the quota are refused by
+ * {@link #offer(String, int, Object)}, so the retries of a misbehaving tenant are shed rather than
+ * queued.
+ * </p>
+ *
+ * @param <T>
+ *            the type of the pending retries
+ */
+@ThreadSafe
+public final class FairRetryScheduler<T> {
+    /**
+     * The retries of a single tenant within a single priority class.
+     */
+    private static final class Flow<T> {
+        private final String tenant;
+        private final ArrayDeque<T> queue = new ArrayDeque<>();
+        private int deficit;
+
+        public Flow(final String tenant) {
+            this.tenant = tenant;
+        }
+    }
+
+    /**
+     * The tenants with pending retries within a single priority class, in round robin order.
+     */
+    private static final class PriorityClass<T> {
+        private final Map<String, Flow<T>> flows = new HashMap<>();
+        private final ArrayDeque<Flow<T>> active = new ArrayDeque<>();
+    }
+
+    /** The tenant used for retries which do not specify a tenant. **/
+    public static final String DEFAULT_TENANT = "";
+
+    /** The priority class used for retries which do not specify one. **/
+    public static final int DEFAULT_PRIORITY = 0;
+
+    private final int defaultWeight;
+    private final int defaultQuota;
+
+    @GuardedBy("this")
+    private final Map<String, Integer> weights = new HashMap<>();
+
+    @GuardedBy("this")
+    private final Map<String, Integer> quotas = new HashMap<>();
+
+    @GuardedBy("this")
+    private final Map<String, Integer> pending = new HashMap<>();
+
+    /** Priority classes with pending retries, highest priority first **/
+    @GuardedBy("this")
+    private final TreeMap<Integer, PriorityClass<T>> priorityClasses = new TreeMap<>(
+            Comparator.reverseOrder());
+
+    @GuardedBy("this")
+    private int size;
+
+    /**
+     * Creates a scheduler where every tenant has the same weight and an unlimited quota.
+     */
+    public FairRetryScheduler() {
+        this(1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a scheduler with the given defaults for tenants which have not been configured
+     * explicitly.
+     *
+     * @param defaultWeight
+     *            the number of retries a tenant may take per round
+     * @param defaultQuota
+     *            the maximum number of retries a tenant may have pending
+     */
+    public FairRetryScheduler(final int defaultWeight, final int defaultQuota) {
+        Preconditions
+                .checkArgument(defaultWeight >= 1, "defaultWeight must be >= 1 but is %s", defaultWeight);
+        Preconditions.checkArgument(defaultQuota >= 1, "defaultQuota must be >= 1 but is %s", defaultQuota);
+        this.defaultWeight = defaultWeight;
+        this.defaultQuota = defaultQuota;
+    }
+
+    /**
+     * Returns <code>true</code> if there are no pending retries.
+     *
+     * @return <code>true</code> if there are no pending retries
+     */
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds a pending retry, unless the tenant has already reached its quota.
+     *
+     * @param tenant
+     *            the tenant the retry belongs to
+     * @param priority
+     *            the priority class of the retry; higher values are served first
+     * @param item
+     *            the pending retry
+     * @return <code>true</code> if the retry was added, <code>false</code> if the quota of the
+     *         tenant has been reached
+     */
+    public synchronized boolean offer(
+            @Nonnull final String tenant,
+            final int priority,
+            @Nonnull final T item) {
+        Preconditions.checkNotNull(tenant, "tenant may not be null");
+        Preconditions.checkNotNull(item, "item may not be null");
+        final int tenantPending = pending.getOrDefault(tenant, 0);
+        if (tenantPending >= quotas.getOrDefault(tenant, defaultQuota)) {
+            return false;
+        }
+        pending.put(tenant, tenantPending + 1);
+        size++;
+
+        final PriorityClass<T> priorityClass = priorityClasses
+                .computeIfAbsent(priority, p -> new PriorityClass<>());
+        Flow<T> flow = priorityClass.flows.get(tenant);
+        if (flow == null) {
+            flow = new Flow<>(tenant);
+            priorityClass.flows.put(tenant, flow);
+            priorityClass.active.addLast(flow);
+        }
+        flow.queue.addLast(item);
+        return true;
+    }
+
+    /**
+     * Removes and returns the next pending retry.
+     *
+     * @return the next pending retry, or <code>null</code> if there are none
+     */
+    public synchronized T poll() {
+        if (size == 0) {
+            return null;
+        }
+
+        final Map.Entry<Integer, PriorityClass<T>> first = priorityClasses.firstEntry();
+        final PriorityClass<T> priorityClass = first.getValue();
+        final Flow<T> flow = priorityClass.active.peekFirst();
+        if (flow.deficit == 0) {
+            // start of this tenant's turn
+            flow.deficit = weights.getOrDefault(flow.tenant, defaultWeight);
+        }
+        final T item = flow.queue.pollFirst();
+        flow.deficit--;
+
+        if (flow.queue.isEmpty()) {
+            priorityClass.active.pollFirst();
+            priorityClass.flows.remove(flow.tenant);
+            if (priorityClass.active.isEmpty()) {
+                priorityClasses.remove(first.getKey());
+            }
+        } else if (flow.deficit == 0) {
+            priorityClass.active.addLast(priorityClass.active.pollFirst());
+        }
+
+        final int tenantPending = pending.get(flow.tenant) - 1;
+        if (tenantPending == 0) {
+            pending.remove(flow.tenant);
+        } else {
+            pending.put(flow.tenant, tenantPending);
+        }
+        size--;
+        return item;
+    }
+
+    /**
+     * Sets the maximum number of retries the given tenant may have pending.
+     *
+     * @param tenant
+     *            the tenant
+     * @param quota
+     *            the maximum number of pending retries
+     */
+    public synchronized void setQuota(@Nonnull final String tenant, final int quota) {
+        Preconditions.checkNotNull(tenant, "tenant may not be null");
+        Preconditions.checkArgument(quota >= 1, "quota must be >= 1 but is %s", quota);
+        quotas.put(tenant, quota);
+    }
+
+    /**
+     * Sets the number of retries the given tenant may take per round, relative to other tenants in
+     * the same priority class.
+     *
+     * @param tenant
+     *            the tenant
+     * @param weight
+     *            the number of retries per round
+     */
+    public synchronized void setWeight(@Nonnull final String tenant, final int weight) {
+        Preconditions.checkNotNull(tenant, "tenant may not be null");
+        Preconditions.checkArgument(weight >= 1, "weight must be >= 1 but is %s", weight);
+        weights.put(tenant, weight);
+    }
+
+    /**
+     * Returns the number of pending retries.
+     *
+     * @return the number of pending retries
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of pending retries of the given tenant.
+     *
+     * @param tenant
+     *            the tenant
+     * @return the number of pending retries of the tenant
+     */
+    public synchronized int size(@Nonnull final String tenant) {
+        return pending.getOrDefault(tenant, 0);
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An in-process synthetic dependency, used to load test retry policies with real threads, for
+ * example with {@link RetryLoadGenerator}.
+ * <p>
+ * Each call sleeps for a latency drawn from a log-normal distribution, then fails with an
+ * {@link IOException} with the configured probability, or returns {@link Boolean#TRUE}. Calls in
+ * excess of the maximum concurrency fail immediately with a {@link RejectedExecutionException},
+ * and calls made during an outage fail immediately with an {@link IOException}. The behavior can
+ * be changed while the service is being called.
+ * </p>
+ */
+@ThreadSafe
+public final class FlakyService implements Callable<Boolean> {
+    /** 99th percentile of the standard normal distribution **/
+    private static final double Z_99 = 2.3263478740408408d;
+
+    private volatile long medianLatency = TimeUnit.MILLISECONDS.toNanos(10);
+    private volatile double sigma;
+    private volatile double errorRate;
+    private volatile Semaphore throttle;
+    private volatile long startTime = System.nanoTime();
+    private volatile long outageStart;
+    private volatile long outageEnd;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder outageRejections = new LongAdder();
+
+    @Override
+    public Boolean call() throws IOException, InterruptedException {
+        calls.increment();
+        final long now = System.nanoTime() - startTime;
+        if (now >= outageStart && now < outageEnd) {
+            outageRejections.increment();
+            throw new IOException("Synthetic outage");
+        }
+        final Semaphore semaphore = throttle;
+        if (semaphore != null && !semaphore.tryAcquire()) {
+            throttled.increment();
+            throw new RejectedExecutionException("Synthetic throttling");
+        }
+        try {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final long latency = sigma != 0.0d
+                    ? (long) (medianLatency * Math.exp(sigma * random.nextGaussian()))
+                    : medianLatency;
+            TimeUnit.NANOSECONDS.sleep(latency);
+            if (errorRate != 0.0d && random.nextDouble() < errorRate) {
+                errors.increment();
+                throw new IOException("Synthetic failure");
+            }
+            return Boolean.TRUE;
+        } finally {
+            if (semaphore != null) {
+                semaphore.release();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of calls made since the service was created or reset.
+     *
+     * @return the number of calls
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * Returns the number of calls which failed because of the error rate.
+     *
+     * @return the number of failed calls
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * Returns the number of calls which failed because of an outage.
+     *
+     * @return the number of calls rejected during outages
+     */
+    public long getOutageRejections() {
+        return outageRejections.sum();
+    }
+
+    /**
+     * Returns the number of calls which failed because of the maximum concurrency.
+     *
+     * @return the number of throttled calls
+     */
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    /**
+     * Resets the counters of the service, and the time from which outages are scheduled.
+     */
+    public void reset() {
+        calls.reset();
+        errors.reset();
+        throttled.reset();
+        outageRejections.reset();
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * Sets the probability that a call fails with an {@link IOException}. The default is 0.
+     *
+     * @param errorRate
+     *            the probability, between 0 and 1
+     * @return <code>this</code>
+     */
+    public FlakyService withErrorRate(final double errorRate) {
+        Preconditions.checkArgument(
+                errorRate >= 0.0d && errorRate <= 1.0d,
+                "errorRate must be between 0 and 1 but is %s",
+                errorRate);
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Sets the log-normal distribution of the latency of calls, by its median and 99th percentile.
+     * The default is a constant latency of 10 ms.
+     *
+     * @param median
+     *            the median latency
+     * @param p99
+     *            the 99th percentile of the latency, which may not be less than the median
+     * @param unit
+     *            the unit of the latencies
+     * @return <code>this</code>
+     */
+    public FlakyService withLatency(final long median, final long p99, @Nonnull final TimeUnit unit) {
+        Preconditions.checkNotNull(unit, "unit may not be null");
+        Preconditions.checkArgument(median >= 0L, "median must be >= 0 but is %s", median);
+        Preconditions.checkArgument(p99 >= median, "p99 must be >= %s but is %s", median, p99);
+        this.sigma = median != 0L ? Math.log((double) p99 / median) / Z_99 : 0.0d;
+        this.medianLatency = unit.toNanos(median);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of concurrent calls; calls in excess of it are throttled. The default
+     * is not to throttle calls.
+     *
+     * @param maxConcurrency
+     *            the maximum number of concurrent calls, or 0 not to throttle calls
+     * @return <code>this</code>
+     */
+    public FlakyService withMaxConcurrency(final int maxConcurrency) {
+        Preconditions.checkArgument(
+                maxConcurrency >= 0,
+                "maxConcurrency must be >= 0 but is %s",
+                maxConcurrency);
+        this.throttle = maxConcurrency != 0 ? new Semaphore(maxConcurrency) : null;
+        return this;
+    }
+
+    /**
+     * Sets an outage, during which every call fails immediately.
+     *
+     * @param start
+     *            the start of the outage, since the service was created or reset
+     * @param duration
+     *            the duration of the outage
+     * @param unit
+     *            the unit of the start and duration
+     * @return <code>this</code>
+     */
+    public FlakyService withOutage(final long start, final long duration, @Nonnull final TimeUnit unit) {
+        Preconditions.checkNotNull(unit, "unit may not be null");
+        Preconditions.checkArgument(start >= 0L, "start must be >= 0 but is %s", start);
+        Preconditions.checkArgument(duration >= 0L, "duration must be >= 0 but is %s", duration);
+        this.outageStart = unit.toNanos(start);
+        this.outageEnd = outageStart + unit.toNanos(duration);
+        return this;
+    }
+}
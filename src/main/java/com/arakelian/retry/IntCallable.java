@@ -0,0 +1,35 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+/**
+ * A task that returns an int and may throw an exception, used by the primitive entry points of
+ * {@link Retryer} to avoid boxing the result of each attempt.
+ *
+ * @see java.util.concurrent.Callable
+ */
+@FunctionalInterface
+public interface IntCallable {
+    /**
+     * Computes a result, or throws an exception if unable to do so.
+     *
+     * @return the computed result
+     * @throws Exception
+     *             if unable to compute a result
+     */
+    int call() throws Exception;
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link RetryListener} which logs failed attempts to SLF4J without flooding the log when many
+ * attempts fail.
+ * <p>
+ * Failed attempts are grouped by key, which is the class name of the exception thrown by the
+ * attempt, or {@code "result"} for attempts whose result was rejected. For each key, failures are
+ * logged individually as long as a token bucket allows it. Failures in excess of that are counted
+ * instead, and once per window a single summary line is logged for each key with such failures,
+ * with the number of failures in the window and how many of them were not logged, the highest
+ * attempt number, and the message of the last failure. Every so often, an individually logged
+ * failure includes the stack trace of its exception.
+ * </p>
+ * <p>
+ * Summaries are logged by the first failure after a window ends, or by {@link #flush()}: the
+ * listener has no thread of its own, so if failures stop, the summary of the last window is only
+ * logged once {@link #flush()} is called, for example periodically or when the application shuts
+ * down. Windows and the token buckets are timed by a {@link Ticker}, which should be the ticker of
+ * the retryer, for example a {@link VirtualClock}.
+ * </p>
+ */
+@ThreadSafe
+public final class LoggingRetryListener implements RetryListener {
+    /**
+     * Failures of a single key.
+     */
+    private static final class Failures {
+        /** Failures in the current window **/
+        private final LongAdder failed = new LongAdder();
+        private final AtomicLong logged = new AtomicLong();
+        private final LongAdder suppressed = new LongAdder();
+        private final AtomicLong maxAttemptNumber = new AtomicLong();
+
+        /** Exception or rejected result of the last failure, formatted only by a summary **/
+        private volatile Object lastFailure;
+
+        /** Lines available in the token bucket, guarded by <code>this</code> **/
+        private double lines;
+
+        /** Time at which the token bucket was last refilled, guarded by <code>this</code> **/
+        private long refillNanos;
+
+        public Failures(final int burst, final long now) {
+            this.lines = burst;
+            this.refillNanos = now;
+        }
+
+        /**
+         * Refills the token bucket for the time elapsed since it was last refilled, and takes a line
+         * from it if one is available.
+         */
+        public synchronized boolean tryAcquireLine(
+                final long now,
+                final int burst,
+                final double linesPerNano) {
+            lines = Math.min(burst, lines + Math.max(0L, now - refillNanos) * linesPerNano);
+            refillNanos = now;
+            if (lines < 1.0d) {
+                return false;
+            }
+            lines -= 1.0d;
+            return true;
+        }
+    }
+
+    private static final String RESULT_KEY = "result";
+
+    private final Logger logger;
+    private final long windowNanos;
+    private final int burst;
+    private final double linesPerNano;
+    private final int stackTraceInterval;
+    private final Ticker ticker;
+    private final Map<String, Failures> failures = new ConcurrentHashMap<>();
+    private final AtomicLong windowStart;
+
+    /**
+     * Creates a listener which logs summaries every minute, and logs up to three failures of each
+     * key individually in a burst, plus one every ten seconds. One in ten individually logged
+     * failures includes a stack trace.
+     *
+     * @param logger
+     *            the logger
+     */
+    public LoggingRetryListener(@Nonnull final Logger logger) {
+        this(logger, 1, TimeUnit.MINUTES, 3, 0.1d, 10);
+    }
+
+    /**
+     * Creates a listener.
+     *
+     * @param logger
+     *            the logger
+     * @param window
+     *            the interval at which summaries are logged
+     * @param windowUnit
+     *            the time unit of the window
+     * @param burst
+     *            the maximum number of failures of each key that are logged individually in a burst
+     * @param linesPerSecond
+     *            the rate at which failures of each key are logged individually after a burst
+     * @param stackTraceInterval
+     *            include a stack trace in one out of this many individually logged failures of each
+     *            key, or 0 never to include stack traces
+     */
+    public LoggingRetryListener(
+            @Nonnull final Logger logger,
+            final long window,
+            @Nonnull final TimeUnit windowUnit,
+            final int burst,
+            final double linesPerSecond,
+            final int stackTraceInterval) {
+        this(logger, window, windowUnit, burst, linesPerSecond, stackTraceInterval, Ticker.systemTicker());
+    }
+
+    /**
+     * Creates a listener.
+     *
+     * @param logger
+     *            the logger
+     * @param window
+     *            the interval at which summaries are logged
+     * @param windowUnit
+     *            the time unit of the window
+     * @param burst
+     *            the maximum number of failures of each key that are logged individually in a burst
+     * @param linesPerSecond
+     *            the rate at which failures of each key are logged individually after a burst
+     * @param stackTraceInterval
+     *            include a stack trace in one out of this many individually logged failures of each
+     *            key, or 0 never to include stack traces
+     * @param ticker
+     *            the ticker timing the windows and the rate of individually logged failures, which
+     *            should be the ticker of the retryer
+     */
+    public LoggingRetryListener(
+            @Nonnull final Logger logger,
+            final long window,
+            @Nonnull final TimeUnit windowUnit,
+            final int burst,
+            final double linesPerSecond,
+            final int stackTraceInterval,
+            @Nonnull final Ticker ticker) {
+        Preconditions.checkNotNull(logger, "logger may not be null");
+        Preconditions.checkArgument(window > 0L, "window must be > 0 but is %s", window);
+        Preconditions.checkNotNull(windowUnit, "windowUnit may not be null");
+        Preconditions.checkArgument(
+                stackTraceInterval >= 0,
+                "stackTraceInterval must be >= 0 but is %s",
+                stackTraceInterval);
+        Preconditions.checkArgument(burst >= 1, "burst must be >= 1 but is %s", burst);
+        Preconditions.checkArgument(linesPerSecond > 0.0d, "linesPerSecond must be > 0 but is %s",
+                linesPerSecond);
+        Preconditions.checkNotNull(ticker, "ticker may not be null");
+        this.logger = logger;
+        this.windowNanos = windowUnit.toNanos(window);
+        this.burst = burst;
+        this.linesPerNano = linesPerSecond / TimeUnit.SECONDS.toNanos(1L);
+        this.stackTraceInterval = stackTraceInterval;
+        this.ticker = ticker;
+        this.windowStart = new AtomicLong(ticker.read());
+    }
+
+    /**
+     * Logs a summary of the failures of each key since the last summary, for the keys with failures
+     * that were not logged individually, and starts a new window.
+     */
+    public void flush() {
+        windowStart.set(ticker.read());
+        for (final Map.Entry<String, Failures> entry : failures.entrySet()) {
+            final Failures keyFailures = entry.getValue();
+            final long failed = keyFailures.failed.sumThenReset();
+            final long suppressed = keyFailures.suppressed.sumThenReset();
+            final long maxAttemptNumber = keyFailures.maxAttemptNumber.getAndSet(0L);
+            if (suppressed != 0L) {
+                logger.warn(
+                        "{} failed attempts with {} ({} not logged), up to attempt {}; last: {}",
+                        failed,
+                        entry.getKey(),
+                        suppressed,
+                        maxAttemptNumber,
+                        String.valueOf(keyFailures.lastFailure));
+            }
+        }
+    }
+
+    @Override
+    public <V> void onFailure(final Attempt<V> failedAttempt) {
+        if (!logger.isWarnEnabled()) {
+            return;
+        }
+
+        final long now = ticker.read();
+        final long start = windowStart.get();
+        if (now - start >= windowNanos && windowStart.compareAndSet(start, now)) {
+            flush();
+        }
+
+        final Throwable cause = failedAttempt.hasException()
+                ? failedAttempt.getExceptionCause()
+                : null;
+        final String key = cause != null ? cause.getClass().getName() : RESULT_KEY;
+        final Failures keyFailures = failures.computeIfAbsent(key, k -> new Failures(burst, now));
+        final long attemptNumber = failedAttempt.getAttemptNumber();
+        keyFailures.failed.increment();
+        keyFailures.maxAttemptNumber.accumulateAndGet(attemptNumber, Math::max);
+        keyFailures.lastFailure = cause != null ? cause : failedAttempt.getResult();
+
+        if (keyFailures.tryAcquireLine(now, burst, linesPerNano)) {
+            final long logged = keyFailures.logged.getAndIncrement();
+            if (cause == null) {
+                logger.warn(
+                        "Attempt {} was rejected with result {}",
+                        attemptNumber,
+                        failedAttempt.getResult());
+            } else if (stackTraceInterval != 0 && logged % stackTraceInterval == 0) {
+                logger.warn("Attempt {} failed", attemptNumber, cause);
+            } else {
+                logger.warn("Attempt {} failed with {}", attemptNumber, cause.toString());
+            }
+        } else {
+            keyFailures.suppressed.increment();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * An attempt made by one of the primitive entry points of {@link Retryer}, such as
+ * {@link Retryer#callInt(IntCallable, java.util.function.IntPredicate)}, which returned a result.
+ * The result is stored unboxed and can be read with {@link #getIntResult()},
+ * {@link #getLongResult()} or {@link #getBooleanResult()}; {@link #getResult()} boxes it.
+ * <p>
+ * Stop strategies, wait strategies and listeners which examine results can test for this class to
+ * avoid boxing. Note that {@link #getResult()} returns an {@link Integer}, {@link Long},
+ * {@link Boolean} or <code>null</code> depending on the entry point, regardless of the type
+ * parameter of the retryer.
+ * </p>
+ *
+ * @param <V>
+ *            the type parameter of the retryer
+ */
+@Immutable
+public final class PrimitiveAttempt<V> extends AbstractAttempt<V> {
+    /**
+     * The primitive type of a result.
+     */
+    enum Type {
+        BOOLEAN, INT, LONG, VOID;
+    }
+
+    private final Type type;
+    private final long result;
+
+    PrimitiveAttempt(
+            final Type type,
+            final long result,
+            final long attemptNumber,
+            final long delaySinceFirstAttempt,
+            final long startTime,
+            final long duration,
+            final long cpuTime,
+            final long cumulativeSleepTime,
+            final AttemptHistory history) {
+        super(attemptNumber, delaySinceFirstAttempt, startTime, duration, cpuTime, cumulativeSleepTime,
+                history);
+        this.type = type;
+        this.result = result;
+    }
+
+    @Override
+    public V get() throws ExecutionException {
+        return getResult();
+    }
+
+    /**
+     * Returns the result of an attempt made by
+     * {@link Retryer#callBoolean(BooleanCallable, boolean)}.
+     *
+     * @return the result of the attempt
+     */
+    public boolean getBooleanResult() {
+        return result != 0L;
+    }
+
+    @Override
+    public Throwable getExceptionCause() throws IllegalStateException {
+        throw new IllegalStateException("The attempt resulted in a result, not in an exception");
+    }
+
+    /**
+     * Returns the result of an attempt made by
+     * {@link Retryer#callInt(IntCallable, java.util.function.IntPredicate)}.
+     *
+     * @return the result of the attempt
+     */
+    public int getIntResult() {
+        return (int) result;
+    }
+
+    /**
+     * Returns the result of an attempt made by
+     * {@link Retryer#callLong(LongCallable, java.util.function.LongPredicate)}, or of any other
+     * primitive entry point widened to a long.
+     *
+     * @return the result of the attempt
+     */
+    public long getLongResult() {
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V getResult() throws IllegalStateException {
+        switch (type) {
+        case BOOLEAN:
+            return (V) Boolean.valueOf(getBooleanResult());
+        case INT:
+            return (V) Integer.valueOf(getIntResult());
+        case LONG:
+            return (V) Long.valueOf(result);
+        default:
+            return null;
+        }
+    }
+
+    @Override
+    public boolean hasException() {
+        return false;
+    }
+
+    @Override
+    public boolean hasResult() {
+        return true;
+    }
+}
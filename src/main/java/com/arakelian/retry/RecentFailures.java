@@ -0,0 +1,192 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A bounded ring of the most recent failed attempts of a {@link Retryer}, across all of its calls.
+ * <p>
+ * Once the ring is full, each failure overwrites the oldest one, so that the memory used by the
+ * ring is fixed regardless of the failure rate. Failures are recorded without locking, and only a
+ * summary of each failed attempt is retained: neither the exception nor the rejected result is
+ * referenced by the ring.
+ * </p>
+ *
+ * @see RetryerBuilder#withRecentFailures(int)
+ */
+@ThreadSafe
+public final class RecentFailures {
+    /**
+     * A summary of a failed attempt.
+     */
+    @Immutable
+    public static final class Failure {
+        private final long sequence;
+        private final long timestamp;
+        private final long attemptNumber;
+        private final long duration;
+        private final String exceptionClass;
+        private final String message;
+
+        private Failure(
+                final long sequence,
+                final long timestamp,
+                final long attemptNumber,
+                final long duration,
+                final String exceptionClass,
+                final String message) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.attemptNumber = attemptNumber;
+            this.duration = duration;
+            this.exceptionClass = exceptionClass;
+            this.message = message;
+        }
+
+        /**
+         * The number, starting from 1, of the failed attempt within its call.
+         *
+         * @return the attempt number
+         */
+        public long getAttemptNumber() {
+            return attemptNumber;
+        }
+
+        /**
+         * The time the attempt took, in nanoseconds, or 0 if the attempt did not execute.
+         *
+         * @return the duration of the attempt, in nanoseconds
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * The name of the class of the exception thrown by the attempt, or <code>null</code> if the
+         * attempt returned a result which was rejected.
+         *
+         * @return the name of the exception class, or <code>null</code>
+         */
+        public String getExceptionClass() {
+            return exceptionClass;
+        }
+
+        /**
+         * The message of the exception thrown by the attempt, or <code>null</code>.
+         *
+         * @return the message of the exception, or <code>null</code>
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * The time at which the failure was recorded, in milliseconds since the epoch.
+         *
+         * @return the time at which the failure was recorded
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public String toString() {
+            return "Failure [timestamp=" + timestamp + ", attemptNumber=" + attemptNumber + ", duration="
+                    + duration + ", exceptionClass=" + exceptionClass + ", message=" + message + "]";
+        }
+    }
+
+    private final AtomicReferenceArray<Failure> ring;
+
+    /** Sequence of the next failure to be recorded **/
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Creates a ring which retains the given number of failures.
+     *
+     * @param capacity
+     *            the maximum number of failures retained
+     */
+    RecentFailures(final int capacity) {
+        Preconditions.checkArgument(capacity >= 1, "capacity must be >= 1 but is %s", capacity);
+        this.ring = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Returns the maximum number of failures retained.
+     *
+     * @return the capacity of the ring
+     */
+    public int getCapacity() {
+        return ring.length();
+    }
+
+    /**
+     * Returns the number of failures recorded since the ring was created, including those which
+     * have since been overwritten.
+     *
+     * @return the number of failures recorded
+     */
+    public long getCount() {
+        return tail.get();
+    }
+
+    /**
+     * Records a failed attempt, overwriting the oldest failure if the ring is full.
+     *
+     * @param failedAttempt
+     *            the failed attempt
+     */
+    void record(final Attempt<?> failedAttempt) {
+        final Throwable cause = failedAttempt.hasException() ? failedAttempt.getExceptionCause() : null;
+        final long sequence = tail.getAndIncrement();
+        ring.set((int) (sequence % ring.length()), new Failure(sequence, System.currentTimeMillis(),
+                failedAttempt.getAttemptNumber(), failedAttempt.getDuration(),
+                cause != null ? cause.getClass().getName() : null,
+                cause != null ? cause.getMessage() : null));
+    }
+
+    /**
+     * Returns the failures currently retained, oldest first. Failures recorded while the snapshot
+     * is taken may or may not be included.
+     *
+     * @return the failures currently retained
+     */
+    public List<Failure> snapshot() {
+        final long end = tail.get();
+        final long start = Math.max(0L, end - ring.length());
+        final List<Failure> failures = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            final Failure failure = ring.get((int) (sequence % ring.length()));
+            // slot was claimed but not yet written, or already overwritten by a newer failure
+            if (failure != null && failure.sequence == sequence) {
+                failures.add(failure);
+            }
+        }
+        return Collections.unmodifiableList(failures);
+    }
+}
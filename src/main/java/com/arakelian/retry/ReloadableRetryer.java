@@ -0,0 +1,164 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A handle to a {@link Retryer} built from a {@link RetryerSpec}, which can be reloaded with a new
+ * specification without restarting the application.
+ * <p>
+ * Reloading builds a new retryer and atomically replaces the current one, with a volatile write.
+ * Calls read the current retryer once, with a volatile read, and make all of their attempts with
+ * it; calls in progress during a reload complete with the retryer they started with. Calls neither
+ * lock nor parse the specification. If the new specification cannot be built, the current retryer
+ * is kept.
+ * </p>
+ * <p>
+ * The state of a retryer, such as its recent failures or its concurrency limiter, is not carried
+ * over to the retryer which replaces it.
+ * </p>
+ *
+ * @param <V>
+ *            result of a {@link Retryer}'s call, the type of the call return value
+ */
+@ThreadSafe
+public final class ReloadableRetryer<V> {
+    /**
+     * A specification and the retryer built from it, replaced together.
+     */
+    @Immutable
+    private static final class Policy<V> {
+        private final RetryerSpec spec;
+        private final Retryer<V> retryer;
+
+        public Policy(final RetryerSpec spec, final Retryer<V> retryer) {
+            this.spec = spec;
+            this.retryer = retryer;
+        }
+    }
+
+    private final Consumer<RetryerBuilder<V>> customizer;
+    private volatile Policy<V> policy;
+
+    /**
+     * Creates a handle to a retryer built from the given specification.
+     *
+     * @param spec
+     *            the initial specification
+     */
+    public ReloadableRetryer(@Nonnull final RetryerSpec spec) {
+        this(spec, builder -> {
+            // the specification alone configures the retryer
+        });
+    }
+
+    /**
+     * Creates a handle to a retryer built from the given specification. The given customizer is
+     * applied to the builder configured by each specification before the retryer is built, for
+     * example to add listeners or result predicates that cannot be expressed by a specification.
+     *
+     * @param spec
+     *            the initial specification
+     * @param customizer
+     *            applied to the builder of each retryer
+     */
+    public ReloadableRetryer(
+            @Nonnull final RetryerSpec spec,
+            @Nonnull final Consumer<RetryerBuilder<V>> customizer) {
+        Preconditions.checkNotNull(customizer, "customizer may not be null");
+        this.customizer = customizer;
+        this.policy = build(spec);
+    }
+
+    /**
+     * Executes the given callable with the current retryer.
+     *
+     * @param callable
+     *            the callable task to be executed
+     * @return the computed result of the given callable
+     * @throws ExecutionException
+     *             if the given callable throws an exception, and the rejection predicate considers
+     *             the attempt as successful. The original exception is wrapped into an
+     *             ExecutionException.
+     * @throws RetryException
+     *             if all the attempts failed before the stop strategy decided to abort, or the
+     *             thread was interrupted. Note that if the thread is interrupted, this exception is
+     *             thrown and the thread's interrupt status is set.
+     * @see Retryer#call(Callable)
+     */
+    public V call(final Callable<V> callable) throws ExecutionException, RetryException {
+        return policy.retryer.call(callable);
+    }
+
+    /**
+     * Returns the current retryer, for example to use its other entry points.
+     *
+     * @return the current retryer
+     */
+    public Retryer<V> getRetryer() {
+        return policy.retryer;
+    }
+
+    /**
+     * Returns the specification of the current retryer.
+     *
+     * @return the current specification
+     */
+    public RetryerSpec getSpec() {
+        return policy.spec;
+    }
+
+    /**
+     * Replaces the current retryer with one built from the given specification, unless it is equal
+     * to the current specification.
+     *
+     * @param spec
+     *            the new specification
+     * @return <code>true</code> if the retryer was replaced, <code>false</code> if the
+     *         specification did not change
+     * @throws IllegalArgumentException
+     *             if a retryer cannot be built from the specification, in which case the current
+     *             retryer is kept
+     * @throws IllegalStateException
+     *             if the customizer configures something the specification already configures, in
+     *             which case the current retryer is kept
+     */
+    public boolean reload(@Nonnull final RetryerSpec spec) {
+        Preconditions.checkNotNull(spec, "spec may not be null");
+        if (spec.equals(policy.spec)) {
+            return false;
+        }
+        policy = build(spec);
+        return true;
+    }
+
+    private Policy<V> build(final RetryerSpec spec) {
+        Preconditions.checkNotNull(spec, "spec may not be null");
+        final RetryerBuilder<V> builder = spec.toBuilder();
+        customizer.accept(builder);
+        return new Policy<>(spec, builder.build());
+    }
+}
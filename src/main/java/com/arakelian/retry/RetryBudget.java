@@ -0,0 +1,36 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+/**
+ * A budget shared by one or more retryers which limits the total rate of retries, regardless of
+ * how many calls are failing. Unlike a {@link StopStrategy}, which looks at a single call in
+ * isolation, a budget prevents a fleet of callers from amplifying the load on a service that is
+ * already struggling.
+ */
+public interface RetryBudget {
+
+    /**
+     * Returns <code>true</code> if the retryer may retry after the given failed attempt, consuming
+     * one retry from the budget.
+     *
+     * @param failedAttempt
+     *            the previous failed {@code Attempt}
+     * @return <code>true</code> if a retry may be made, <code>false</code> if the retryer must stop
+     */
+    boolean tryAcquire(Attempt<?> failedAttempt);
+}
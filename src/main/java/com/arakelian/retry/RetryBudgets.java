@@ -0,0 +1,235 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Factory class for {@link RetryBudget} instances.
+ */
+public final class RetryBudgets {
+
+    /**
+     * Token bucket whose entire state is packed into a single <code>long</code>, so that it can be
+     * updated with a single compare-and-set. The upper 40 bits hold the time of the last refill,
+     * in milliseconds since {@link #EPOCH}, and the lower 24 bits hold the number of available
+     * tokens. Wall clock time is used so that the state is meaningful across processes.
+     */
+    @ThreadSafe
+    private abstract static class TokenBucketRetryBudget implements RetryBudget {
+        /** 2020-01-01T00:00:00Z; 40 bits of milliseconds are good for almost 35 years from here **/
+        private static final long EPOCH = 1577836800000L;
+        private static final int TOKEN_BITS = 24;
+        private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+
+        private final long capacity;
+        private final double tokensPerMilli;
+
+        public TokenBucketRetryBudget(final int capacity, final double tokensPerSecond) {
+            Preconditions.checkArgument(
+                    capacity >= 1 && capacity <= TOKEN_MASK,
+                    "capacity must be between 1 and %s but is %s",
+                    TOKEN_MASK,
+                    capacity);
+            Preconditions.checkArgument(
+                    tokensPerSecond > 0.0d,
+                    "tokensPerSecond must be > 0 but is %s",
+                    tokensPerSecond);
+            this.capacity = capacity;
+            this.tokensPerMilli = tokensPerSecond / 1000.0d;
+        }
+
+        @Override
+        public boolean tryAcquire(final Attempt<?> failedAttempt) {
+            final long now = System.currentTimeMillis() - EPOCH;
+            for (;;) {
+                final long state = getState();
+                long time = state >>> TOKEN_BITS;
+                long tokens = state & TOKEN_MASK;
+
+                final long elapsed = now - time;
+                if (elapsed > 0L) {
+                    final long refill = (long) (elapsed * tokensPerMilli);
+                    if (refill > 0L) {
+                        if (tokens + refill >= capacity) {
+                            tokens = capacity;
+                            time = now;
+                        } else {
+                            // carry the fraction of a token that has not been refilled yet
+                            tokens += refill;
+                            time += (long) (refill / tokensPerMilli);
+                        }
+                    }
+                }
+
+                if (tokens == 0L) {
+                    return false;
+                }
+                if (compareAndSetState(state, time << TOKEN_BITS | tokens - 1)) {
+                    return true;
+                }
+            }
+        }
+
+        protected abstract boolean compareAndSetState(long expected, long state);
+
+        protected abstract long getState();
+    }
+
+    @ThreadSafe
+    private static final class LocalTokenBucketRetryBudget extends TokenBucketRetryBudget {
+        private final AtomicLong state = new AtomicLong();
+
+        public LocalTokenBucketRetryBudget(final int capacity, final double tokensPerSecond) {
+            super(capacity, tokensPerSecond);
+        }
+
+        @Override
+        protected boolean compareAndSetState(final long expected, final long newState) {
+            return state.compareAndSet(expected, newState);
+        }
+
+        @Override
+        protected long getState() {
+            return state.get();
+        }
+    }
+
+    /**
+     * Token bucket whose state lives in a small memory-mapped file, so that every process on the
+     * host which maps the same file shares the same budget. A zeroed file is a valid, full bucket,
+     * so processes can race to create the file without any further coordination.
+     */
+    @ThreadSafe
+    private static final class SharedTokenBucketRetryBudget extends TokenBucketRetryBudget {
+        private static final VarHandle LONGS = MethodHandles
+                .byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+        /** "RTRYBDGT" **/
+        private static final long MAGIC = 0x5254525942444754L;
+        private static final int MAGIC_OFFSET = 0;
+        private static final int STATE_OFFSET = 8;
+        private static final int FILE_SIZE = 64;
+
+        private final MappedByteBuffer buffer;
+
+        public SharedTokenBucketRetryBudget(
+                @Nonnull final Path file,
+                final int capacity,
+                final double tokensPerSecond) throws IOException {
+            super(capacity, tokensPerSecond);
+            try (final FileChannel channel = FileChannel.open(
+                    file,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            }
+            final long magic = (long) LONGS.compareAndExchange(buffer, MAGIC_OFFSET, 0L, MAGIC);
+            Preconditions.checkArgument(
+                    magic == 0L || magic == MAGIC,
+                    "%s is not a retry budget file",
+                    file);
+        }
+
+        @Override
+        protected boolean compareAndSetState(final long expected, final long newState) {
+            return LONGS.compareAndSet(buffer, STATE_OFFSET, expected, newState);
+        }
+
+        @Override
+        protected long getState() {
+            return (long) LONGS.getVolatile(buffer, STATE_OFFSET);
+        }
+    }
+
+    @Immutable
+    private static final class UnlimitedRetryBudget implements RetryBudget {
+        @Override
+        public boolean tryAcquire(final Attempt<?> failedAttempt) {
+            return true;
+        }
+    }
+
+    private static final RetryBudget UNLIMITED = new UnlimitedRetryBudget();
+
+    /**
+     * Returns a retry budget which is shared by every process on the host that opens the same
+     * file. The budget is a token bucket holding at most {@code capacity} retries, which is refilled
+     * at {@code retriesPerSecond}. The state of the bucket is kept in a small memory-mapped file and
+     * updated with atomic compare-and-set operations, so admitting a retry involves no system calls
+     * or locks.
+     *
+     * @param file
+     *            the file holding the state of the budget; it is created if it does not exist
+     * @param capacity
+     *            the maximum number of retries that may be made in a burst
+     * @param retriesPerSecond
+     *            the rate at which retries are added to the budget
+     * @return a retry budget shared across processes
+     * @throws IOException
+     *             if the file cannot be created or mapped
+     */
+    public static RetryBudget sharedTokenBucket(
+            @Nonnull final Path file,
+            final int capacity,
+            final double retriesPerSecond) throws IOException {
+        Preconditions.checkNotNull(file, "file may not be null");
+        return new SharedTokenBucketRetryBudget(file, capacity, retriesPerSecond);
+    }
+
+    /**
+     * Returns a retry budget which is a token bucket holding at most {@code capacity} retries, and
+     * which is refilled at {@code retriesPerSecond}. The budget may be shared by several retryers
+     * in the same process.
+     *
+     * @param capacity
+     *            the maximum number of retries that may be made in a burst
+     * @param retriesPerSecond
+     *            the rate at which retries are added to the budget
+     * @return a retry budget
+     */
+    public static RetryBudget tokenBucket(final int capacity, final double retriesPerSecond) {
+        return new LocalTokenBucketRetryBudget(capacity, retriesPerSecond);
+    }
+
+    /**
+     * Returns a retry budget which never limits retries.
+     *
+     * @return a retry budget which always allows a retry
+     */
+    public static RetryBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    private RetryBudgets() {
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events emitted by {@link Retryer}.
+ * <p>
+ * The events are disabled by default, and are enabled like any other JFR event, for example with a
+ * custom <code>.jfc</code> settings file. While they are disabled, emitting them costs a single
+ * check. When JFR is not available, no events are emitted; the classes of this file that refer to
+ * JFR are only loaded when JFR is available.
+ * </p>
+ */
+final class RetryEvents {
+    @Name("com.arakelian.retry.Attempt")
+    @Label("Retry Attempt")
+    @Description("A single attempt of a call made by a retryer")
+    @Category("Retry")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class AttemptEvent extends Event {
+        @Label("Attempt Number")
+        long attemptNumber;
+
+        @Label("Outcome")
+        @Description("Whether the attempt returned a result or threw an exception")
+        String outcome;
+
+        @Label("Exception Class")
+        Class<?> exceptionClass;
+    }
+
+    @Name("com.arakelian.retry.Backoff")
+    @Label("Retry Backoff")
+    @Description("The time a retryer was blocked between attempts")
+    @Category("Retry")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class BackoffEvent extends Event {
+        @Label("Attempt Number")
+        @Description("The number of the failed attempt after which the retryer blocked")
+        long attemptNumber;
+
+        @Label("Computed Wait")
+        @Description("The sleep time computed by the wait strategy")
+        @Timespan(Timespan.MILLISECONDS)
+        long computedWait;
+    }
+
+    @Name("com.arakelian.retry.GiveUp")
+    @Label("Retry Give Up")
+    @Description("A retryer gave up on a call")
+    @Category("Retry")
+    @Enabled(false)
+    static final class GiveUpEvent extends Event {
+        @Label("Attempt Number")
+        @Description("The number of the last failed attempt")
+        long attemptNumber;
+
+        @Label("Delay Since First Attempt")
+        @Timespan(Timespan.MILLISECONDS)
+        long delaySinceFirstAttempt;
+
+        @Label("Exception Class")
+        Class<?> exceptionClass;
+    }
+
+    /**
+     * Holds the event types, so that JFR classes are only loaded once JFR is known to be available.
+     */
+    private static final class Types {
+        private static final EventType ATTEMPT = EventType.getEventType(AttemptEvent.class);
+        private static final EventType BACKOFF = EventType.getEventType(BackoffEvent.class);
+        private static final EventType GIVE_UP = EventType.getEventType(GiveUpEvent.class);
+    }
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    /**
+     * Returns a started attempt event, or <code>null</code> if attempt events are disabled.
+     *
+     * @return a started attempt event, or <code>null</code>
+     */
+    static Object beginAttempt() {
+        if (!AVAILABLE || !Types.ATTEMPT.isEnabled()) {
+            return null;
+        }
+        final AttemptEvent event = new AttemptEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Returns a started backoff event, or <code>null</code> if backoff events are disabled.
+     *
+     * @return a started backoff event, or <code>null</code>
+     */
+    static Object beginBackoff() {
+        if (!AVAILABLE || !Types.BACKOFF.isEnabled()) {
+            return null;
+        }
+        final BackoffEvent event = new BackoffEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits an event returned by {@link #beginAttempt()}.
+     *
+     * @param event
+     *            the event
+     * @param attempt
+     *            the outcome of the attempt
+     */
+    static void commitAttempt(final Object event, final Attempt<?> attempt) {
+        final AttemptEvent attemptEvent = (AttemptEvent) event;
+        attemptEvent.end();
+        if (attemptEvent.shouldCommit()) {
+            attemptEvent.attemptNumber = attempt.getAttemptNumber();
+            if (attempt.hasException()) {
+                attemptEvent.outcome = "exception";
+                attemptEvent.exceptionClass = attempt.getExceptionCause().getClass();
+            } else {
+                attemptEvent.outcome = "result";
+            }
+            attemptEvent.commit();
+        }
+    }
+
+    /**
+     * Ends and commits an event returned by {@link #beginBackoff()}.
+     *
+     * @param event
+     *            the event
+     * @param attemptNumber
+     *            the number of the failed attempt after which the retryer blocked
+     * @param computedWait
+     *            the sleep time, in milliseconds, computed by the wait strategy
+     */
+    static void commitBackoff(final Object event, final long attemptNumber, final long computedWait) {
+        final BackoffEvent backoffEvent = (BackoffEvent) event;
+        backoffEvent.end();
+        if (backoffEvent.shouldCommit()) {
+            backoffEvent.attemptNumber = attemptNumber;
+            backoffEvent.computedWait = computedWait;
+            backoffEvent.commit();
+        }
+    }
+
+    /**
+     * Emits a give up event, if enabled.
+     *
+     * @param lastFailedAttempt
+     *            the last failed attempt
+     */
+    static void giveUp(final Attempt<?> lastFailedAttempt) {
+        if (!AVAILABLE || !Types.GIVE_UP.isEnabled()) {
+            return;
+        }
+        final GiveUpEvent event = new GiveUpEvent();
+        if (event.shouldCommit()) {
+            event.attemptNumber = lastFailedAttempt.getAttemptNumber();
+            event.delaySinceFirstAttempt = lastFailedAttempt.getDelaySinceFirstAttempt();
+            if (lastFailedAttempt.hasException()) {
+                event.exceptionClass = lastFailedAttempt.getExceptionCause().getClass();
+            }
+            event.commit();
+        }
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return Types.ATTEMPT != null;
+        } catch (final ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private RetryEvents() {
+    }
+}
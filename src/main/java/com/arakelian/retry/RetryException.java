@@ -42,8 +42,27 @@ public final class RetryException extends Exception {
      *            what happened the last time we failed
      */
     public RetryException(final int numberOfFailedAttempts, @Nonnull final Attempt<?> lastFailedAttempt) {
+        this(numberOfFailedAttempts, lastFailedAttempt, true);
+    }
+
+    /**
+     * If the last {@link Attempt} had an Exception, ensure it is available as the cause, without
+     * wrapping it.
+     *
+     * @param numberOfFailedAttempts
+     *            times we've tried and failed
+     * @param lastFailedAttempt
+     *            what happened the last time we failed
+     * @param writableStackTrace
+     *            <code>false</code> not to fill in the stack trace of this exception, which makes it
+     *            cheaper to create; the cause keeps its own stack trace
+     */
+    public RetryException(
+            final int numberOfFailedAttempts,
+            @Nonnull final Attempt<?> lastFailedAttempt,
+            final boolean writableStackTrace) {
         this("Retrying failed to complete successfully after " + numberOfFailedAttempts + " attempts.",
-                numberOfFailedAttempts, lastFailedAttempt);
+                numberOfFailedAttempts, lastFailedAttempt, writableStackTrace);
     }
 
     /**
@@ -60,14 +79,33 @@ public final class RetryException extends Exception {
             final String message,
             final int numberOfFailedAttempts,
             final Attempt<?> lastFailedAttempt) {
+        this(message, numberOfFailedAttempts, lastFailedAttempt, true);
+    }
+
+    private RetryException(
+            final String message,
+            final int numberOfFailedAttempts,
+            final Attempt<?> lastFailedAttempt,
+            final boolean writableStackTrace) {
         super(message,
                 checkNotNull(lastFailedAttempt, "Last attempt was null").hasException()
                         ? lastFailedAttempt.getExceptionCause()
-                        : null);
+                        : null,
+                true, writableStackTrace);
         this.numberOfFailedAttempts = numberOfFailedAttempts;
         this.lastFailedAttempt = lastFailedAttempt;
     }
 
+    /**
+     * Returns the history of the attempts of the call, if enabled with
+     * {@link RetryerBuilder#withAttemptHistory(int)}.
+     *
+     * @return the history of the call, or <code>null</code>
+     */
+    public AttemptHistory getAttemptHistory() {
+        return lastFailedAttempt.getAttemptHistory();
+    }
+
     /**
      * Returns the last failed attempt
      *
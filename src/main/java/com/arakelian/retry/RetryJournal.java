@@ -0,0 +1,381 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Records attempts, waits and outcomes of retryers as compact binary records in rotating,
+ * memory-mapped files, for later analysis with {@link RetryJournalAnalyzer}.
+ * <p>
+ * Each retryer records through its own listener, obtained from {@link #listener(String)}. Records
+ * are fixed-width, and refer to retryer names and exception types by ids which are written once to
+ * a separate names file. Each thread accumulates records in its own buffer, without locking, and
+ * copies them into the current file when the buffer is full and at the end of each call, claiming
+ * space in the file with a single atomic increment. When the current file is full, a new file is
+ * started, and the oldest files are deleted.
+ * </p>
+ * <p>
+ * Calls are identified by the thread which made their first attempt, so timelines are exact for
+ * calls made with {@link Retryer#call(java.util.concurrent.Callable)}. Call ids are unique across
+ * journals reopened in the same directory. Records of a call that is in progress when the journal is
+ * closed are not written.
+ * </p>
+ */
+@ThreadSafe
+public final class RetryJournal implements Closeable {
+    /**
+     * Records the attempts of a single retryer.
+     */
+    private final class Recorder implements RetryListener {
+        private final int retryerId;
+
+        public Recorder(final int retryerId) {
+            this.retryerId = retryerId;
+        }
+
+        @Override
+        public void beforeAttempt(final long attemptNumber, final long delaySinceFirstAttempt) {
+            final ThreadBuffer buffer = buffers.get();
+            if (attemptNumber == 1L || buffer.callId == 0L) {
+                buffer.callId = nextCallId.incrementAndGet();
+            }
+        }
+
+        @Override
+        public <V> void beforeSleep(final Attempt<V> failedAttempt, final long sleepTime) {
+            record(SLEEP, failedAttempt, sleepTime, true);
+        }
+
+        @Override
+        public <V> void onGiveUp(final Attempt<V> lastFailedAttempt) {
+            record(GIVE_UP, lastFailedAttempt, 0L, false);
+        }
+
+        @Override
+        public <V> void onRetry(final Attempt<V> attempt) {
+            record(ATTEMPT, attempt, attempt.getDuration(), true);
+        }
+
+        @Override
+        public <V> void onSuccess(final Attempt<V> attempt) {
+            record(SUCCESS, attempt, 0L, false);
+        }
+
+        private void record(
+                final byte type,
+                final Attempt<?> attempt,
+                final long value,
+                final boolean more) {
+            if (closed) {
+                return;
+            }
+            final ThreadBuffer threadBuffer = buffers.get();
+            final ByteBuffer buffer = threadBuffer.buffer;
+            final boolean exception = attempt.hasException();
+            buffer.putLong(System.currentTimeMillis());
+            buffer.putLong(threadBuffer.callId);
+            buffer.putLong(value);
+            buffer.putInt(retryerId);
+            buffer.putInt((int) attempt.getAttemptNumber());
+            buffer.putInt(exception ? intern(attempt.getExceptionCause().getClass().getName()) : 0);
+            buffer.put(type);
+            buffer.put(exception ? EXCEPTION : RESULT);
+            buffer.putShort((short) 0);
+            if (!more || !buffer.hasRemaining()) {
+                flush(buffer);
+            }
+        }
+    }
+
+    /**
+     * A file of the journal.
+     */
+    private static final class Segment {
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger position = new AtomicInteger(HEADER_SIZE);
+
+        public Segment(final MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Records of a single thread which have not yet been copied into the journal.
+     */
+    private static final class ThreadBuffer {
+        private final ByteBuffer buffer = ByteBuffer.allocate(BATCH_SIZE * RECORD_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        private long callId;
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryJournal.class);
+
+    /** Default size of each journal file **/
+    public static final int DEFAULT_FILE_SIZE = 64 * 1024 * 1024;
+
+    /** Default number of journal files that are kept **/
+    public static final int DEFAULT_MAX_FILES = 8;
+
+    /** "RTRYJRNL" **/
+    static final long MAGIC = 0x525452594A524E4CL;
+
+    /** magic and record size, padded to the record alignment **/
+    static final int HEADER_SIZE = 16;
+
+    /**
+     * timestamp, call id and value; retryer id, attempt number and exception type id; record type
+     * and outcome; padding
+     **/
+    static final int RECORD_SIZE = 40;
+
+    static final String NAMES_FILE = "names.txt";
+    static final String FILE_PREFIX = "journal-";
+    static final String FILE_SUFFIX = ".bin";
+
+    /** an attempt was made; value is its duration in nanoseconds **/
+    static final byte ATTEMPT = 1;
+
+    /** the retryer is about to sleep; value is the sleep time in milliseconds **/
+    static final byte SLEEP = 2;
+
+    /** an attempt was accepted, ending the call **/
+    static final byte SUCCESS = 3;
+
+    /** the retryer gave up, ending the call **/
+    static final byte GIVE_UP = 4;
+
+    static final byte RESULT = 1;
+    static final byte EXCEPTION = 2;
+
+    /** Number of records that each thread buffers **/
+    private static final int BATCH_SIZE = 64;
+
+    static Path journalFile(final Path directory, final long sequence) {
+        return directory.resolve(String.format("%s%016d%s", FILE_PREFIX, sequence, FILE_SUFFIX));
+    }
+
+    /**
+     * Returns the sequence numbers of the journal files in the given directory, in ascending order.
+     */
+    static long[] journalSequences(final Path directory) throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX))
+                    .mapToLong(name -> Long.parseLong(
+                            name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length())))
+                    .sorted().toArray();
+        }
+    }
+
+    private final Path directory;
+    private final int fileSize;
+    private final int maxFiles;
+    private final ThreadLocal<ThreadBuffer> buffers = ThreadLocal.withInitial(ThreadBuffer::new);
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /**
+     * Last call id, whose high 32 bits are the sequence number of the first file written by this
+     * journal, so that calls recorded by different journals in the same directory never share ids
+     **/
+    private final AtomicLong nextCallId;
+
+    private volatile Segment segment;
+    private volatile boolean closed;
+
+    @GuardedBy("this")
+    private long nextSequence;
+
+    /**
+     * Creates a journal in the given directory, with the default file size and number of files.
+     *
+     * @param directory
+     *            the directory which holds the journal files
+     * @throws IOException
+     *             if the journal cannot be created
+     */
+    public RetryJournal(@Nonnull final Path directory) throws IOException {
+        this(directory, DEFAULT_FILE_SIZE, DEFAULT_MAX_FILES);
+    }
+
+    /**
+     * Creates a journal in the given directory. Existing journal files in the directory are kept,
+     * subject to the maximum number of files.
+     *
+     * @param directory
+     *            the directory which holds the journal files
+     * @param fileSize
+     *            the size, in bytes, of each journal file
+     * @param maxFiles
+     *            the maximum number of journal files that are kept
+     * @throws IOException
+     *             if the journal cannot be created
+     */
+    public RetryJournal(@Nonnull final Path directory, final int fileSize, final int maxFiles)
+            throws IOException {
+        Preconditions.checkNotNull(directory, "directory may not be null");
+        Preconditions.checkArgument(
+                fileSize >= HEADER_SIZE + BATCH_SIZE * RECORD_SIZE,
+                "fileSize must be >= %s but is %s",
+                HEADER_SIZE + BATCH_SIZE * RECORD_SIZE,
+                fileSize);
+        Preconditions.checkArgument(maxFiles >= 1, "maxFiles must be >= 1 but is %s", maxFiles);
+        this.directory = directory;
+        this.fileSize = fileSize;
+        this.maxFiles = maxFiles;
+
+        Files.createDirectories(directory);
+        loadNames();
+        synchronized (this) {
+            final long[] sequences = journalSequences(directory);
+            nextSequence = sequences.length != 0 ? sequences[sequences.length - 1] + 1 : 0L;
+            this.nextCallId = new AtomicLong(nextSequence << 32);
+            this.segment = newSegment();
+        }
+    }
+
+    /**
+     * Stops recording. Records of calls which are in progress are discarded.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Returns a listener which records the attempts of a retryer with the given name.
+     *
+     * @param retryerName
+     *            the name of the retryer, which identifies its records
+     * @return a listener which records attempts in this journal
+     */
+    public RetryListener listener(@Nonnull final String retryerName) {
+        Preconditions.checkNotNull(retryerName, "retryerName may not be null");
+        return new Recorder(intern(retryerName));
+    }
+
+    private void flush(final ByteBuffer buffer) {
+        buffer.flip();
+        final int length = buffer.remaining();
+        try {
+            for (;;) {
+                final Segment current = segment;
+                final int position = current.position.getAndAdd(length);
+                if (position + length <= fileSize) {
+                    final ByteBuffer target = current.buffer.duplicate();
+                    target.position(position);
+                    target.put(buffer);
+                    return;
+                }
+                roll(current);
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to write retry journal in {}", directory, e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private int intern(final String name) {
+        final Integer id = ids.get(name);
+        return id != null ? id : newId(name);
+    }
+
+    private void loadNames() throws IOException {
+        final Path file = directory.resolve(NAMES_FILE);
+        if (Files.exists(file)) {
+            for (final String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                final int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    ids.put(line.substring(tab + 1), Integer.valueOf(line.substring(0, tab)));
+                }
+            }
+        }
+    }
+
+    private synchronized int newId(final String name) {
+        final Integer existing = ids.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        final int id = ids.size() + 1;
+        try {
+            Files.write(
+                    directory.resolve(NAMES_FILE),
+                    (id + "\t" + name + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ids.put(name, id);
+        return id;
+    }
+
+    @GuardedBy("this")
+    private Segment newSegment() throws IOException {
+        final Path file = journalFile(directory, nextSequence++);
+        final MappedByteBuffer buffer;
+        try (final FileChannel channel = FileChannel.open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(8, RECORD_SIZE);
+
+        // oldest files are deleted; mappings of deleted files remain valid until unreferenced
+        final long[] sequences = journalSequences(directory);
+        for (int i = 0; i < sequences.length - maxFiles; i++) {
+            Files.deleteIfExists(journalFile(directory, sequences[i]));
+        }
+        return new Segment(buffer);
+    }
+
+    private synchronized void roll(final Segment full) throws IOException {
+        if (segment == full) {
+            segment = newSegment();
+        }
+    }
+}
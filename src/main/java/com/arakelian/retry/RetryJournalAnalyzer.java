@@ -0,0 +1,267 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Command-line analyzer of the files written by a {@link RetryJournal}.
+ * <p>
+ * For each retryer, the analyzer reports the number of calls, attempts and give-ups, the retry
+ * amplification (the average number of attempts per call), the distribution of the number of
+ * attempts per call, and the exceptions that caused attempts to fail. Optionally, it prints the
+ * timeline of every call.
+ * </p>
+ *
+ * <pre>
+ * java -cp retry-all.jar com.arakelian.retry.RetryJournalAnalyzer [--timelines] directory
+ * </pre>
+ */
+public final class RetryJournalAnalyzer {
+    /**
+     * A record of the journal.
+     */
+    private static final class Record {
+        private final long timestamp;
+        private final long callId;
+        private final long value;
+        private final int retryerId;
+        private final int attemptNumber;
+        private final int exceptionId;
+        private final byte type;
+        private final byte outcome;
+
+        public Record(final ByteBuffer buffer) {
+            this.timestamp = buffer.getLong();
+            this.callId = buffer.getLong();
+            this.value = buffer.getLong();
+            this.retryerId = buffer.getInt();
+            this.attemptNumber = buffer.getInt();
+            this.exceptionId = buffer.getInt();
+            this.type = buffer.get();
+            this.outcome = buffer.get();
+            buffer.getShort();
+        }
+    }
+
+    /**
+     * Statistics of a single retryer.
+     */
+    private static final class RetryerStats {
+        private long calls;
+        private long attempts;
+        private long successes;
+        private long giveUps;
+        private long sleepTime;
+        private final Map<Integer, Long> attemptsPerCall = new TreeMap<>();
+        private final Map<String, Long> exceptions = new HashMap<>();
+    }
+
+    /**
+     * Analyzes the journal in the given directory and prints the report to standard output.
+     *
+     * @param args
+     *            optionally <code>--timelines</code>, followed by the journal directory
+     * @throws IOException
+     *             if the journal cannot be read
+     */
+    public static void main(final String[] args) throws IOException {
+        final boolean timelines = args.length == 2 && "--timelines".equals(args[0]);
+        if (args.length != (timelines ? 2 : 1)) {
+            System.err.println("Usage: RetryJournalAnalyzer [--timelines] directory");
+            System.exit(1);
+        }
+        analyze(Paths.get(args[args.length - 1]), System.out, timelines);
+    }
+
+    /**
+     * Analyzes the journal in the given directory.
+     *
+     * @param directory
+     *            the directory of the journal
+     * @param out
+     *            the stream to which the report is printed
+     * @param timelines
+     *            <code>true</code> to print the timeline of every call
+     * @throws IOException
+     *             if the journal cannot be read
+     */
+    public static void analyze(
+            @Nonnull final Path directory,
+            @Nonnull final PrintStream out,
+            final boolean timelines) throws IOException {
+        Preconditions.checkNotNull(directory, "directory may not be null");
+        Preconditions.checkNotNull(out, "out may not be null");
+        final Map<Integer, String> names = readNames(directory);
+        final Map<Long, List<Record>> calls = new LinkedHashMap<>();
+        for (final long sequence : RetryJournal.journalSequences(directory)) {
+            for (final Record record : readRecords(RetryJournal.journalFile(directory, sequence))) {
+                calls.computeIfAbsent(record.callId, id -> new ArrayList<>()).add(record);
+            }
+        }
+
+        final Map<String, RetryerStats> stats = new TreeMap<>();
+        for (final Map.Entry<Long, List<Record>> call : calls.entrySet()) {
+            final List<Record> records = call.getValue();
+            records.sort(Comparator.comparingLong(r -> r.timestamp));
+            final String retryer = names.getOrDefault(records.get(0).retryerId, "?");
+            final RetryerStats retryerStats = stats.computeIfAbsent(retryer, r -> new RetryerStats());
+            retryerStats.calls++;
+
+            int attempts = 0;
+            for (final Record record : records) {
+                switch (record.type) {
+                case RetryJournal.ATTEMPT:
+                    attempts++;
+                    if (record.outcome == RetryJournal.EXCEPTION) {
+                        final String exception = names.getOrDefault(record.exceptionId, "?");
+                        retryerStats.exceptions.merge(exception, 1L, Long::sum);
+                    }
+                    break;
+                case RetryJournal.SLEEP:
+                    retryerStats.sleepTime += record.value;
+                    break;
+                case RetryJournal.SUCCESS:
+                    retryerStats.successes++;
+                    break;
+                case RetryJournal.GIVE_UP:
+                    retryerStats.giveUps++;
+                    break;
+                default:
+                    break;
+                }
+            }
+            retryerStats.attempts += attempts;
+            retryerStats.attemptsPerCall.merge(attempts, 1L, Long::sum);
+
+            if (timelines) {
+                printTimeline(out, call.getKey(), retryer, records, names);
+            }
+        }
+
+        for (final Map.Entry<String, RetryerStats> entry : stats.entrySet()) {
+            printStats(out, entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static void printStats(final PrintStream out, final String retryer, final RetryerStats stats) {
+        out.printf("retryer %s%n", retryer);
+        out.printf("  calls %d, attempts %d, amplification %.2f%n", stats.calls, stats.attempts,
+                stats.calls != 0 ? (double) stats.attempts / stats.calls : 0.0d);
+        out.printf("  succeeded %d, gave up %d, incomplete %d, total sleep %d ms%n", stats.successes,
+                stats.giveUps, stats.calls - stats.successes - stats.giveUps, stats.sleepTime);
+        out.printf("  attempts per call:%n");
+        for (final Map.Entry<Integer, Long> entry : stats.attemptsPerCall.entrySet()) {
+            out.printf("    %d: %d%n", entry.getKey(), entry.getValue());
+        }
+        if (!stats.exceptions.isEmpty()) {
+            out.printf("  exceptions:%n");
+            stats.exceptions.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long> comparingByValue().reversed())
+                    .forEach(entry -> out.printf("    %s: %d%n", entry.getKey(), entry.getValue()));
+        }
+    }
+
+    private static void printTimeline(
+            final PrintStream out,
+            final long callId,
+            final String retryer,
+            final List<Record> records,
+            final Map<Integer, String> names) {
+        final long start = records.get(0).timestamp;
+        out.printf("call %d of %s at %s%n", callId, retryer, Instant.ofEpochMilli(start));
+        for (final Record record : records) {
+            final long offset = record.timestamp - start;
+            switch (record.type) {
+            case RetryJournal.ATTEMPT:
+                out.printf("  +%d ms attempt %d %s in %.3f ms%n", offset, record.attemptNumber,
+                        record.outcome == RetryJournal.EXCEPTION
+                                ? "threw " + names.getOrDefault(record.exceptionId, "?")
+                                : "returned",
+                        record.value / (double) TimeUnit.MILLISECONDS.toNanos(1));
+                break;
+            case RetryJournal.SLEEP:
+                out.printf("  +%d ms sleep %d ms%n", offset, record.value);
+                break;
+            case RetryJournal.SUCCESS:
+                out.printf("  +%d ms succeeded after %d attempts%n", offset, record.attemptNumber);
+                break;
+            case RetryJournal.GIVE_UP:
+                out.printf("  +%d ms gave up after %d attempts%n", offset, record.attemptNumber);
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    private static Map<Integer, String> readNames(final Path directory) throws IOException {
+        final Map<Integer, String> names = new HashMap<>();
+        final Path file = directory.resolve(RetryJournal.NAMES_FILE);
+        if (Files.exists(file)) {
+            for (final String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                final int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    names.put(Integer.valueOf(line.substring(0, tab)), line.substring(tab + 1));
+                }
+            }
+        }
+        return names;
+    }
+
+    private static List<Record> readRecords(final Path file) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        final List<Record> records = new ArrayList<>();
+        if (buffer.remaining() < RetryJournal.HEADER_SIZE || buffer.getLong(0) != RetryJournal.MAGIC
+                || buffer.getInt(8) != RetryJournal.RECORD_SIZE) {
+            return records;
+        }
+        buffer.position(RetryJournal.HEADER_SIZE);
+        while (buffer.remaining() >= RetryJournal.RECORD_SIZE) {
+            final Record record = new Record(buffer);
+            // space claimed by a writer but never written, or the unused end of the file
+            if (record.timestamp != 0L) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private RetryJournalAnalyzer() {
+    }
+}
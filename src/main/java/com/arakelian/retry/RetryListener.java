@@ -21,10 +21,66 @@ import com.google.common.annotations.Beta;
 /**
  * This listener provides callbacks for several events that occur when running code through a
  * {@link Retryer} instance.
+ * <p>
+ * Every callback has an empty default implementation, so that listeners only override the ones
+ * they are interested in. A {@link Retryer} determines which callbacks each listener overrides
+ * when it is constructed, and only invokes those, so callbacks that are not overridden cost
+ * nothing.
+ * </p>
  */
 @Beta
 public interface RetryListener {
 
+    /**
+     * Called before each attempt is made.
+     *
+     * @param attemptNumber
+     *            the number, starting from 1, of the attempt about to be made
+     * @param delaySinceFirstAttempt
+     *            the delay, in milliseconds, since the start of the first attempt
+     */
+    default void beforeAttempt(final long attemptNumber, final long delaySinceFirstAttempt) {
+    }
+
+    /**
+     * Called after a failed attempt, once the retryer has decided to retry, before it sleeps.
+     *
+     * @param failedAttempt
+     *            the failed {@link Attempt}
+     * @param sleepTime
+     *            the time, in milliseconds, until the next attempt
+     * @param <V>
+     *            the type returned by the retryer callable
+     */
+    default <V> void beforeSleep(final Attempt<V> failedAttempt, final long sleepTime) {
+    }
+
+    /**
+     * Called after an attempt is rejected by the rejection predicate, whether or not it will be
+     * retried.
+     *
+     * @param failedAttempt
+     *            the failed {@link Attempt}
+     * @param <V>
+     *            the type returned by the retryer callable
+     */
+    default <V> void onFailure(final Attempt<V> failedAttempt) {
+    }
+
+    /**
+     * Called when the retryer gives up after a failed attempt, because of the stop strategy, the
+     * retry budget, an interruption or a {@link CancellationToken}, or because a callable of
+     * {@link Retryer#callAll} or {@link Retryer#callAny} is no longer retried once its outcome is no
+     * longer needed.
+     *
+     * @param lastFailedAttempt
+     *            the last failed {@link Attempt}
+     * @param <V>
+     *            the type returned by the retryer callable
+     */
+    default <V> void onGiveUp(final Attempt<V> lastFailedAttempt) {
+    }
+
     /**
      * This method with fire no matter what the result is and before the rejection predicate and
      * stop strategies are applied.
@@ -34,5 +90,19 @@ public interface RetryListener {
      * @param <V>
      *            the type returned by the retryer callable
      */
-    <V> void onRetry(Attempt<V> attempt);
+    default <V> void onRetry(final Attempt<V> attempt) {
+    }
+
+    /**
+     * Called after an attempt is accepted by the rejection predicate, which ends the call. Note
+     * that, depending on the rejection predicate, the attempt may hold an exception which is not
+     * retried.
+     *
+     * @param attempt
+     *            the accepted {@link Attempt}
+     * @param <V>
+     *            the type returned by the retryer callable
+     */
+    default <V> void onSuccess(final Attempt<V> attempt) {
+    }
 }
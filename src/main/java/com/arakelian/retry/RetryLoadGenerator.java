@@ -0,0 +1,397 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A load generator which drives a {@link FlakyService} through a {@link Retryer} at a target
+ * request rate, with real threads, to benchmark a whole retry configuration under concurrency.
+ * <p>
+ * Requests are scheduled open-loop: each request has an intended start time, derived from the
+ * request rate, and is submitted to the worker threads at that time regardless of how many
+ * requests are still in progress. The latency of a request is measured from its intended start
+ * time, so that it includes any time spent waiting for a worker thread and does not suffer from
+ * coordinated omission.
+ * </p>
+ *
+ * <pre>
+ * java -cp retry-all.jar com.arakelian.retry.RetryLoadGenerator rate=500 duration=30 errorRate=0.2
+ * </pre>
+ */
+public final class RetryLoadGenerator {
+    /**
+     * The outcome of a load test.
+     */
+    @Immutable
+    public static final class Report {
+        private final long requests;
+        private final long successes;
+        private final long failures;
+        private final long attempts;
+        private final long elapsedTime;
+        private final int workerThreads;
+        private final int peakThreads;
+
+        /** Latencies of the requests, in nanoseconds, sorted **/
+        private final long[] latencies;
+
+        private Report(
+                final long requests,
+                final long successes,
+                final long failures,
+                final long attempts,
+                final long elapsedTime,
+                final int workerThreads,
+                final int peakThreads,
+                final long[] latencies) {
+            this.requests = requests;
+            this.successes = successes;
+            this.failures = failures;
+            this.attempts = attempts;
+            this.elapsedTime = elapsedTime;
+            this.workerThreads = workerThreads;
+            this.peakThreads = peakThreads;
+            this.latencies = latencies;
+        }
+
+        /**
+         * Returns the retry amplification, i.e. the average number of calls of the service per
+         * request.
+         *
+         * @return the number of calls of the service divided by the number of requests
+         */
+        public double getAmplification() {
+            return requests != 0L ? (double) attempts / requests : 0.0d;
+        }
+
+        /**
+         * Returns the number of calls of the service.
+         *
+         * @return the number of attempts
+         */
+        public long getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * Returns the time from the start of the load test to the end of the last request.
+         *
+         * @param unit
+         *            the unit of the returned time
+         * @return the elapsed time
+         */
+        public long getElapsedTime(@Nonnull final TimeUnit unit) {
+            return unit.convert(elapsedTime, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns the number of requests on which the retryer gave up, or which failed with an
+         * exception that is not retried.
+         *
+         * @return the number of failed requests
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * Returns the given percentile of the latencies of all requests, measured from their
+         * intended start times.
+         *
+         * @param percentile
+         *            the percentile, between 0 and 100
+         * @param unit
+         *            the unit of the returned latency
+         * @return the latency, or 0 if no request was made
+         */
+        public long getLatencyPercentile(final double percentile, @Nonnull final TimeUnit unit) {
+            Preconditions.checkArgument(
+                    percentile >= 0.0d && percentile <= 100.0d,
+                    "percentile must be between 0 and 100 but is %s",
+                    percentile);
+            if (latencies.length == 0) {
+                return 0L;
+            }
+            final int index = (int) Math.ceil(percentile / 100.0d * latencies.length) - 1;
+            return unit.convert(latencies[Math.max(0, index)], TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns the peak number of live threads of the JVM during the load test.
+         *
+         * @return the peak number of threads
+         */
+        public int getPeakThreads() {
+            return peakThreads;
+        }
+
+        /**
+         * Returns the number of requests made.
+         *
+         * @return the number of requests
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * Returns the number of successful requests.
+         *
+         * @return the number of successful requests
+         */
+        public long getSuccesses() {
+            return successes;
+        }
+
+        /**
+         * Returns the throughput, i.e. the number of successful requests per second.
+         *
+         * @return the number of successful requests per second
+         */
+        public double getThroughput() {
+            return elapsedTime != 0L ? successes * 1e9d / elapsedTime : 0.0d;
+        }
+
+        /**
+         * Returns the largest number of worker threads that were running requests at the same time,
+         * which is at most the number of worker threads of the load generator.
+         *
+         * @return the peak number of busy worker threads
+         */
+        public int getWorkerThreads() {
+            return workerThreads;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "requests %d, attempts %d, amplification %.2f%n"
+                            + "succeeded %d, failed %d, throughput %.1f/s in %d ms%n"
+                            + "latency p50 %d ms, p90 %d ms, p99 %d ms, p99.9 %d ms, max %d ms%n"
+                            + "peak busy worker threads %d, peak threads %d%n",
+                    requests, attempts, getAmplification(), successes, failures, getThroughput(),
+                    getElapsedTime(TimeUnit.MILLISECONDS), getLatencyPercentile(50, TimeUnit.MILLISECONDS),
+                    getLatencyPercentile(90, TimeUnit.MILLISECONDS),
+                    getLatencyPercentile(99, TimeUnit.MILLISECONDS),
+                    getLatencyPercentile(99.9, TimeUnit.MILLISECONDS),
+                    getLatencyPercentile(100, TimeUnit.MILLISECONDS), workerThreads, peakThreads);
+        }
+    }
+
+    private static final String USAGE = "Usage: RetryLoadGenerator [option=value]...%n"
+            + "  rate=100            requests per second%n"
+            + "  duration=10         duration of the load test, in seconds%n"
+            + "  threads=200         number of worker threads%n"
+            + "  latency=10          median latency of the service, in milliseconds%n"
+            + "  p99=50              99th percentile latency of the service, in milliseconds%n"
+            + "  errorRate=0.1       probability that a call of the service fails%n"
+            + "  maxConcurrency=0    maximum concurrent calls of the service, or 0%n"
+            + "  outageStart=0       start of an outage of the service, in seconds%n"
+            + "  outageDuration=0    duration of the outage, in seconds%n"
+            + "  attempts=3          maximum number of attempts per request%n"
+            + "  backoff=10          multiplier of the exponential backoff, in milliseconds%n"
+            + "  maxBackoff=1000     maximum backoff, in milliseconds%n";
+
+    /**
+     * Runs a load test configured by the given options, and prints the report to standard output.
+     *
+     * @param args
+     *            options of the form <code>name=value</code>
+     * @throws InterruptedException
+     *             if interrupted while running the load test
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        final Map<String, String> options = new HashMap<>();
+        for (final String arg : args) {
+            final int equals = arg.indexOf('=');
+            if (equals <= 0 || !USAGE.contains("  " + arg.substring(0, equals) + "=")) {
+                System.err.printf(USAGE);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+
+        final FlakyService service = new FlakyService()
+                .withLatency(
+                        Long.parseLong(options.getOrDefault("latency", "10")),
+                        Long.parseLong(options.getOrDefault("p99", "50")),
+                        TimeUnit.MILLISECONDS)
+                .withErrorRate(Double.parseDouble(options.getOrDefault("errorRate", "0.1")))
+                .withMaxConcurrency(Integer.parseInt(options.getOrDefault("maxConcurrency", "0")))
+                .withOutage(
+                        Long.parseLong(options.getOrDefault("outageStart", "0")),
+                        Long.parseLong(options.getOrDefault("outageDuration", "0")),
+                        TimeUnit.SECONDS);
+        final Retryer<Object> retryer = RetryerBuilder.newBuilder().retryIfException()
+                .withStopStrategy(
+                        StopStrategies.stopAfterAttempt(
+                                Integer.parseInt(options.getOrDefault("attempts", "3"))))
+                .withWaitStrategy(
+                        WaitStrategies.exponentialWait(
+                                Long.parseLong(options.getOrDefault("backoff", "10")),
+                                Long.parseLong(options.getOrDefault("maxBackoff", "1000")),
+                                TimeUnit.MILLISECONDS))
+                .build();
+        final Report report = new RetryLoadGenerator(retryer, service)
+                .withRate(Double.parseDouble(options.getOrDefault("rate", "100")))
+                .withDuration(Long.parseLong(options.getOrDefault("duration", "10")), TimeUnit.SECONDS)
+                .withThreads(Integer.parseInt(options.getOrDefault("threads", "200"))).run();
+        System.out.print(report);
+    }
+
+    private final Retryer<Object> retryer;
+    private final FlakyService service;
+    private double rate = 100.0d;
+    private long duration = TimeUnit.SECONDS.toNanos(10);
+    private int threads = 200;
+
+    /**
+     * Creates a load generator which calls the given service through the given retryer. The
+     * default load test makes 100 requests per second for 10 seconds, with 200 worker threads.
+     *
+     * @param retryer
+     *            the retryer used to make each request
+     * @param service
+     *            the service called by each attempt
+     */
+    public RetryLoadGenerator(@Nonnull final Retryer<Object> retryer, @Nonnull final FlakyService service) {
+        this.retryer = Preconditions.checkNotNull(retryer, "retryer may not be null");
+        this.service = Preconditions.checkNotNull(service, "service may not be null");
+    }
+
+    /**
+     * Runs the load test. The service is reset at the start of the load test.
+     *
+     * @return the outcome of the load test
+     * @throws InterruptedException
+     *             if interrupted while running the load test
+     */
+    public Report run() throws InterruptedException {
+        final int requests = (int) Math.min(Integer.MAX_VALUE - 8, Math.round(rate * duration / 1e9d));
+        final double interval = 1e9d / rate;
+        final long[] latencies = new long[requests];
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger busyWorkers = new AtomicInteger();
+        final AtomicInteger peakBusyWorkers = new AtomicInteger();
+        final LongAdder successes = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("retry-load-%d").setDaemon(true).build());
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        threadMXBean.resetPeakThreadCount();
+        service.reset();
+
+        final long startTime = System.nanoTime();
+        try {
+            for (int i = 0; i < requests; i++) {
+                final long intendedStartTime = startTime + (long) (i * interval);
+                long delay;
+                while ((delay = intendedStartTime - System.nanoTime()) > 0L) {
+                    LockSupport.parkNanos(delay);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+                workers.execute(() -> {
+                    peakBusyWorkers.accumulateAndGet(busyWorkers.incrementAndGet(), Math::max);
+                    try {
+                        retryer.call(service::call);
+                        successes.increment();
+                    } catch (final ExecutionException | RetryException e) {
+                        failures.increment();
+                    } finally {
+                        latencies[completed.getAndIncrement()] = System.nanoTime() - intendedStartTime;
+                        busyWorkers.decrementAndGet();
+                    }
+                });
+            }
+            workers.shutdown();
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                // wait for requests in progress
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        final long elapsedTime = System.nanoTime() - startTime;
+
+        Arrays.sort(latencies);
+        return new Report(requests, successes.sum(), failures.sum(), service.getCalls(), elapsedTime,
+                peakBusyWorkers.get(), threadMXBean.getPeakThreadCount(), latencies);
+    }
+
+    /**
+     * Sets the duration of the load test. The default is 10 seconds.
+     *
+     * @param duration
+     *            the duration of the load test
+     * @param unit
+     *            the unit of the duration
+     * @return <code>this</code>
+     */
+    public RetryLoadGenerator withDuration(final long duration, @Nonnull final TimeUnit unit) {
+        Preconditions.checkNotNull(unit, "unit may not be null");
+        Preconditions.checkArgument(duration >= 0L, "duration must be >= 0 but is %s", duration);
+        this.duration = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Sets the target number of requests per second. The default is 100.
+     *
+     * @param rate
+     *            the number of requests per second
+     * @return <code>this</code>
+     */
+    public RetryLoadGenerator withRate(final double rate) {
+        Preconditions.checkArgument(rate > 0.0d, "rate must be > 0 but is %s", rate);
+        this.rate = rate;
+        return this;
+    }
+
+    /**
+     * Sets the number of worker threads which make the requests. Requests which find every worker
+     * busy wait for one, and the wait counts toward their latency. The default is 200.
+     *
+     * @param threads
+     *            the number of worker threads
+     * @return <code>this</code>
+     */
+    public RetryLoadGenerator withThreads(final int threads) {
+        Preconditions.checkArgument(threads >= 1, "threads must be >= 1 but is %s", threads);
+        this.threads = threads;
+        return this;
+    }
+}
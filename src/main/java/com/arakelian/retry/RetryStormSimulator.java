@@ -0,0 +1,701 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A discrete-event simulator of many clients which retry calls to a shared server, used to evaluate
+ * the {@link StopStrategy}, {@link WaitStrategy} and rejection predicate of a retry policy before
+ * rolling it out, for example to find out whether a policy causes synchronized waves of retries
+ * after an outage.
+ * <p>
+ * Each client makes a single call, starting at a random time within the arrival window, and
+ * retries it according to the policy. The server processes up to a fixed number of attempts at a
+ * time, with exponentially distributed service times, and queues up to a fixed number of others.
+ * An attempt fails with a {@link RejectedExecutionException} if the queue is full or the server is
+ * in an outage, with a {@link TimeoutException} if it does not complete within the client timeout,
+ * and with an {@link IOException} if it is picked by failure injection; otherwise, it returns
+ * {@link Boolean#TRUE}. A server keeps working on an attempt whose client timed out, but drops
+ * such attempts from its queue, where they no longer count against its capacity.
+ * </p>
+ * <p>
+ * The simulation runs in virtual time and is deterministic for a given seed, provided the policy
+ * itself is. The strategies see the same attempts as they would in a {@link Retryer}, including
+ * the delay since the first attempt, the duration and the cumulative sleep time of each attempt.
+ * </p>
+ *
+ * <pre>
+ * final RetryStormSimulator.Report report = new RetryStormSimulator(
+ *         StopStrategies.stopAfterAttempt(5),
+ *         WaitStrategies.exponentialWait(10, TimeUnit.SECONDS),
+ *         attempt -&gt; attempt.hasException())
+ *                 .withClients(1_000_000, 1, TimeUnit.MINUTES)
+ *                 .withOutage(10, 20, TimeUnit.SECONDS)
+ *                 .run();
+ * </pre>
+ */
+@NotThreadSafe
+public final class RetryStormSimulator {
+    /**
+     * A min-heap of events, ordered by time, stored in primitive arrays.
+     */
+    private static final class EventQueue {
+        private long[] times = new long[1024];
+        private long[] payloads = new long[1024];
+        private int size;
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public long peekTime() {
+            return times[0];
+        }
+
+        public long poll() {
+            final long payload = payloads[0];
+            final long lastTime = times[--size];
+            final long lastPayload = payloads[size];
+            int i = 0;
+            for (int child = 1; child < size; child = 2 * i + 1) {
+                if (child + 1 < size && times[child + 1] < times[child]) {
+                    child++;
+                }
+                if (lastTime <= times[child]) {
+                    break;
+                }
+                times[i] = times[child];
+                payloads[i] = payloads[child];
+                i = child;
+            }
+            times[i] = lastTime;
+            payloads[i] = lastPayload;
+            return payload;
+        }
+
+        public void push(final long time, final long payload) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                payloads = Arrays.copyOf(payloads, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                final int parent = (i - 1) / 2;
+                if (times[parent] <= time) {
+                    break;
+                }
+                times[i] = times[parent];
+                payloads[i] = payloads[parent];
+                i = parent;
+            }
+            times[i] = time;
+            payloads[i] = payload;
+        }
+    }
+
+    /**
+     * The outcome of a simulation.
+     */
+    @Immutable
+    public static final class Report {
+        private final int clients;
+        private final long attempts;
+        private final long successes;
+        private final long failures;
+        private final long giveUps;
+        private final long wastedAttempts;
+        private final long simulatedTime;
+        private final long interval;
+        private final long[] offeredLoad;
+        private final long[] completedCalls;
+
+        /** Latencies of the successful calls, in nanoseconds, sorted **/
+        private final long[] latencies;
+
+        private Report(
+                final int clients,
+                final long attempts,
+                final long successes,
+                final long failures,
+                final long giveUps,
+                final long wastedAttempts,
+                final long simulatedTime,
+                final long interval,
+                final long[] offeredLoad,
+                final long[] completedCalls,
+                final long[] latencies) {
+            this.clients = clients;
+            this.attempts = attempts;
+            this.successes = successes;
+            this.failures = failures;
+            this.giveUps = giveUps;
+            this.wastedAttempts = wastedAttempts;
+            this.simulatedTime = simulatedTime;
+            this.interval = interval;
+            this.offeredLoad = offeredLoad;
+            this.completedCalls = completedCalls;
+            this.latencies = latencies;
+        }
+
+        /**
+         * Returns the retry amplification, i.e. the average number of attempts per client.
+         *
+         * @return the number of attempts divided by the number of clients
+         */
+        public double getAmplification() {
+            return clients != 0 ? (double) attempts / clients : 0.0d;
+        }
+
+        /**
+         * Returns the number of attempts made by all clients.
+         *
+         * @return the number of attempts
+         */
+        public long getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * Returns the number of simulated clients.
+         *
+         * @return the number of clients
+         */
+        public int getClients() {
+            return clients;
+        }
+
+        /**
+         * Returns the number of calls which succeeded in each report interval.
+         *
+         * @return the number of successful calls per interval, starting at time 0
+         */
+        public long[] getCompletedCalls() {
+            return completedCalls.clone();
+        }
+
+        /**
+         * Returns the number of calls which ended with an attempt that was not rejected, but threw
+         * an exception.
+         *
+         * @return the number of failed calls
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * Returns the number of calls on which the stop strategy gave up.
+         *
+         * @return the number of calls given up
+         */
+        public long getGiveUps() {
+            return giveUps;
+        }
+
+        /**
+         * Returns the goodput, i.e. the number of successful calls per second of simulated time.
+         *
+         * @return the number of successful calls per second
+         */
+        public double getGoodput() {
+            return simulatedTime != 0L ? successes * 1e9d / simulatedTime : 0.0d;
+        }
+
+        /**
+         * Returns the number of calls which had not ended when the simulation reached its maximum
+         * duration.
+         *
+         * @return the number of incomplete calls
+         */
+        public long getIncomplete() {
+            return clients - successes - failures - giveUps;
+        }
+
+        /**
+         * Returns the duration of each report interval.
+         *
+         * @param unit
+         *            the unit of the returned duration
+         * @return the duration of each report interval
+         */
+        public long getInterval(@Nonnull final TimeUnit unit) {
+            return unit.convert(interval, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns the given percentile of the latencies of the successful calls, from the start of
+         * their first attempt to the end of their last attempt.
+         *
+         * @param percentile
+         *            the percentile, between 0 and 100
+         * @param unit
+         *            the unit of the returned latency
+         * @return the latency, or 0 if no call succeeded
+         */
+        public long getLatencyPercentile(final double percentile, @Nonnull final TimeUnit unit) {
+            Preconditions.checkArgument(
+                    percentile >= 0.0d && percentile <= 100.0d,
+                    "percentile must be between 0 and 100 but is %s",
+                    percentile);
+            if (latencies.length == 0) {
+                return 0L;
+            }
+            final int index = (int) Math.ceil(percentile / 100.0d * latencies.length) - 1;
+            return unit.convert(latencies[Math.max(0, index)], TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns the number of attempts sent to the server in each report interval.
+         *
+         * @return the number of attempts per interval, starting at time 0
+         */
+        public long[] getOfferedLoad() {
+            return offeredLoad.clone();
+        }
+
+        /**
+         * Returns the simulated time, from time 0 to the last event of the simulation.
+         *
+         * @param unit
+         *            the unit of the returned time
+         * @return the simulated time
+         */
+        public long getSimulatedTime(@Nonnull final TimeUnit unit) {
+            return unit.convert(simulatedTime, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns the number of successful calls.
+         *
+         * @return the number of successful calls
+         */
+        public long getSuccesses() {
+            return successes;
+        }
+
+        /**
+         * Returns the number of attempts the server completed after their client had timed out.
+         *
+         * @return the number of attempts which wasted the capacity of the server
+         */
+        public long getWastedAttempts() {
+            return wastedAttempts;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append(String.format("clients %d, attempts %d, amplification %.2f%n", clients, attempts,
+                    getAmplification()));
+            sb.append(String.format("succeeded %d, failed %d, gave up %d, incomplete %d, wasted %d%n",
+                    successes, failures, giveUps, getIncomplete(), wastedAttempts));
+            sb.append(String.format("goodput %.1f/s, latency p50 %d ms, p99 %d ms, p99.9 %d ms%n",
+                    getGoodput(), getLatencyPercentile(50, TimeUnit.MILLISECONDS),
+                    getLatencyPercentile(99, TimeUnit.MILLISECONDS),
+                    getLatencyPercentile(99.9, TimeUnit.MILLISECONDS)));
+            sb.append(String.format("interval %d ms: offered / completed%n",
+                    getInterval(TimeUnit.MILLISECONDS)));
+            for (int i = 0; i < offeredLoad.length; i++) {
+                sb.append(String.format("  %d: %d / %d%n", i, offeredLoad[i], completedCalls[i]));
+            }
+            return sb.toString();
+        }
+    }
+
+    private static final int SEND = 0;
+    private static final int DONE = 1;
+    private static final int TIMEOUT = 2;
+
+    private static final Throwable OVERLOADED = new RejectedExecutionException("Server overloaded");
+    private static final Throwable TIMED_OUT = new TimeoutException("Attempt timed out");
+    private static final Throwable FAILED = new IOException("Injected failure");
+
+    private static long[] increment(final long[] buckets, final int bucket) {
+        final long[] result = bucket < buckets.length ? buckets
+                : Arrays.copyOf(buckets, Math.max(bucket + 1, buckets.length * 2));
+        result[bucket]++;
+        return result;
+    }
+
+    private static long payload(final int client, final int attemptNumber, final int type) {
+        return (long) client << 32 | (long) attemptNumber << 2 | type;
+    }
+
+    private final StopStrategy stopStrategy;
+    private final WaitStrategy waitStrategy;
+    private final Predicate<Attempt<Object>> rejectionPredicate;
+
+    private int clients = 1000;
+    private long arrivalWindow = TimeUnit.SECONDS.toNanos(1);
+    private int servers = 100;
+    private int queueCapacity = 1000;
+    private long serviceTime = TimeUnit.MILLISECONDS.toNanos(10);
+    private long timeout = TimeUnit.SECONDS.toNanos(1);
+    private double failureRate;
+    private long outageStart;
+    private long outageEnd;
+    private long interval = TimeUnit.SECONDS.toNanos(1);
+    private long maxDuration = TimeUnit.HOURS.toNanos(1);
+    private long seed;
+
+    /**
+     * Creates a simulator of the given retry policy. The default simulation is of 1000 clients
+     * arriving within 1 second, and a server which processes 100 attempts at a time, queues up to
+     * 1000 others, takes 10 ms per attempt on average, and never fails; clients time out after 1
+     * second.
+     *
+     * @param stopStrategy
+     *            the strategy used to decide when a client must stop retrying
+     * @param waitStrategy
+     *            the strategy used to decide how much time a client sleeps between attempts
+     * @param rejectionPredicate
+     *            the predicate used to decide if an attempt must be retried
+     */
+    public RetryStormSimulator(
+            @Nonnull final StopStrategy stopStrategy,
+            @Nonnull final WaitStrategy waitStrategy,
+            @Nonnull final Predicate<Attempt<Object>> rejectionPredicate) {
+        this.stopStrategy = Preconditions.checkNotNull(stopStrategy, "stopStrategy may not be null");
+        this.waitStrategy = Preconditions.checkNotNull(waitStrategy, "waitStrategy may not be null");
+        this.rejectionPredicate = Preconditions
+                .checkNotNull(rejectionPredicate, "rejectionPredicate may not be null");
+    }
+
+    /**
+     * Runs the simulation.
+     *
+     * @return the outcome of the simulation
+     */
+    public Report run() {
+        final SplittableRandom random = new SplittableRandom(seed);
+        final long[] callStartTimes = new long[clients];
+        final long[] sendTimes = new long[clients];
+        final long[] sleepTimes = new long[clients];
+        final int[] resolvedAttempts = new int[clients];
+        final long[] latencies = new long[clients];
+        final boolean[] queued = new boolean[clients];
+        long[] queue = new long[Math.max(1, queueCapacity)];
+        final EventQueue events = new EventQueue();
+
+        for (int client = 0; client < clients; client++) {
+            final long time = arrivalWindow != 0L ? random.nextLong(arrivalWindow) : 0L;
+            callStartTimes[client] = time;
+            events.push(time, payload(client, 1, SEND));
+        }
+
+        long[] offeredLoad = new long[16];
+        long[] completedCalls = new long[16];
+        long attempts = 0L;
+        int successes = 0;
+        long failures = 0L;
+        long giveUps = 0L;
+        long wastedAttempts = 0L;
+        int busy = 0;
+        int queueHead = 0;
+        int queueSize = 0;
+
+        // attempts in the queue whose client has not timed out; the others are skipped when dequeued
+        int queuedAttempts = 0;
+        long now = 0L;
+
+        while (!events.isEmpty() && events.peekTime() <= maxDuration) {
+            now = events.peekTime();
+            final long event = events.poll();
+            final int client = (int) (event >>> 32);
+            final int attemptNumber = (int) event >>> 2;
+            final int type = (int) event & 3;
+
+            Throwable cause = null;
+            switch (type) {
+            case SEND:
+                attempts++;
+                offeredLoad = increment(offeredLoad, (int) (now / interval));
+                sendTimes[client] = now;
+                final boolean outage = now >= outageStart && now < outageEnd;
+                if (outage || busy == servers && queuedAttempts == queueCapacity) {
+                    cause = OVERLOADED;
+                    break;
+                }
+                events.push(now + timeout, payload(client, attemptNumber, TIMEOUT));
+                if (busy < servers) {
+                    busy++;
+                    events.push(now + serviceTime(random), payload(client, attemptNumber, DONE));
+                } else {
+                    if (queueSize == queue.length) {
+                        final long[] grown = new long[queue.length * 2];
+                        for (int i = 0; i < queueSize; i++) {
+                            grown[i] = queue[(queueHead + i) % queue.length];
+                        }
+                        queue = grown;
+                        queueHead = 0;
+                    }
+                    queue[(queueHead + queueSize++) % queue.length] = event;
+                    queued[client] = true;
+                    queuedAttempts++;
+                }
+                continue;
+            case DONE:
+                busy--;
+                while (queueSize != 0) {
+                    final long next = queue[queueHead];
+                    queueHead = (queueHead + 1) % queue.length;
+                    queueSize--;
+                    final int queuedClient = (int) (next >>> 32);
+                    if (resolvedAttempts[queuedClient] < ((int) next >>> 2)) {
+                        queued[queuedClient] = false;
+                        queuedAttempts--;
+                        busy++;
+                        events.push(now + serviceTime(random), next & ~3L | DONE);
+                        break;
+                    }
+                }
+                if (resolvedAttempts[client] >= attemptNumber) {
+                    wastedAttempts++;
+                    continue;
+                }
+                if (failureRate != 0.0d && random.nextDouble() < failureRate) {
+                    cause = FAILED;
+                }
+                break;
+            default:
+                if (resolvedAttempts[client] >= attemptNumber) {
+                    continue;
+                }
+                if (queued[client]) {
+                    queued[client] = false;
+                    queuedAttempts--;
+                }
+                cause = TIMED_OUT;
+                break;
+            }
+
+            // the attempt of the client is resolved
+            resolvedAttempts[client] = attemptNumber;
+            final long delaySinceFirstAttempt = TimeUnit.NANOSECONDS.toMillis(now - callStartTimes[client]);
+            final long duration = now - sendTimes[client];
+            final Attempt<Object> attempt = cause == null
+                    ? new Retryer.ResultAttempt<>(Boolean.TRUE, attemptNumber, delaySinceFirstAttempt,
+                            sendTimes[client], duration, -1L, sleepTimes[client], null)
+                    : new Retryer.ExceptionAttempt<>(cause, attemptNumber, delaySinceFirstAttempt,
+                            sendTimes[client], duration, -1L, sleepTimes[client], null);
+            if (!rejectionPredicate.test(attempt)) {
+                if (cause == null) {
+                    latencies[successes++] = now - callStartTimes[client];
+                    completedCalls = increment(completedCalls, (int) (now / interval));
+                } else {
+                    failures++;
+                }
+            } else if (stopStrategy.shouldStop(attempt)) {
+                giveUps++;
+            } else {
+                final long sleepTime = waitStrategy.computeSleepTime(attempt);
+                sleepTimes[client] += sleepTime;
+                events.push(now + TimeUnit.MILLISECONDS.toNanos(sleepTime),
+                        payload(client, attemptNumber + 1, SEND));
+            }
+        }
+
+        final int intervals = (int) (now / interval) + 1;
+        final long[] sortedLatencies = Arrays.copyOf(latencies, successes);
+        Arrays.sort(sortedLatencies);
+        return new Report(clients, attempts, successes, failures, giveUps, wastedAttempts, now, interval,
+                Arrays.copyOf(offeredLoad, intervals), Arrays.copyOf(completedCalls, intervals),
+                sortedLatencies);
+    }
+
+    /**
+     * Sets the number of clients, and the window within which they start their calls, at random.
+     * All clients start at time 0 if the window is 0.
+     *
+     * @param clients
+     *            the number of clients
+     * @param arrivalWindow
+     *            the window within which clients start their calls
+     * @param unit
+     *            the unit of the window
+     * @return <code>this</code>
+     */
+    public RetryStormSimulator withClients(
+            final int clients,
+            final long arrivalWindow,
+            @Nonnull final TimeUnit unit) {
+        Preconditions.checkArgument(clients >= 0, "clients must be >= 0 but is %s", clients);
+        Preconditions.checkArgument(
+                arrivalWindow >= 0L,
+                "arrivalWindow must be >= 0 but is %s",
+                arrivalWindow);
+        Preconditions.checkNotNull(unit, "unit may not be null");
+        this.clients = clients;
+        this.arrivalWindow = unit.toNanos(arrivalWindow);
+        return this;
+    }
+
+    /**
+     * Sets the probability that an attempt processed by the server fails.
+     *
+     * @param failureRate
+     *            the probability, between 0 and 1
+     * @return <code>this</code>
+     */
+    public RetryStormSimulator withFailureRate(final double failureRate) {
+        Preconditions.checkArgument(
+                failureRate >= 0.0d && failureRate <= 1.0d,
+                "failureRate must be between 0 and 1 but is %s",
+                failureRate);
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    /**
+     * Sets the maximum simulated time; calls which have not ended by then are reported as
+     * incomplete. The default is 1 hour.
+     *
+     * @param maxDuration
+     *            the maximum simulated time
+     * @param unit
+     *            the unit of the time
+     * @return <code>this</code>
+     */
+    public RetryStormSimulator withMaxDuration(final long maxDuration, @Nonnull final TimeUnit unit) {
+        Preconditions.checkArgument(maxDuration >= 0L, "maxDuration must be >= 0 but is %s", maxDuration);
+        Preconditions.checkNotNull(unit, "unit may not be null");
+        this.maxDuration = unit.toNanos(maxDuration);
+        return this;
+    }
+
+    /**
+     * Sets an outage, during which the server rejects every attempt immediately.
+     *
+     * @param start
+     *            the start of the outage, since time 0
+     * @param duration
+     *            the duration of the outage
+     * @param unit
+     *            the unit of the start and duration
+     * @return <code>this</code>
+     */
+    public RetryStormSimulator withOutage(
+            final long start,
+            final long duration,
+            @Nonnull final TimeUnit unit) {
+        Preconditions.checkArgument(start >= 0L, "start must be >= 0 but is %s", start);
+        Preconditions.checkArgument(duration >= 0L, "duration must be >= 0 but is %s", duration);
+        Preconditions.checkNotNull(unit, "unit may not be null");
+        this.outageStart = unit.toNanos(start);
+        this.outageEnd = outageStart + unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Sets the duration of the intervals of the offered load and completed calls of the report. The
+     * default is 1 second.
+     *
+     * @param interval
+     *            the duration of each interval
+     * @param unit
+     *            the unit of the duration
+     * @return <code>this</code>
+     */
+    public RetryStormSimulator withReportInterval(final long interval, @Nonnull final TimeUnit unit) {
+        Preconditions.checkNotNull(unit, "unit may not be null");
+        Preconditions.checkArgument(unit.toNanos(interval) >= 1L, "interval must be > 0 but is %s", interval);
+        this.interval = unit.toNanos(interval);
+        return this;
+    }
+
+    /**
+     * Sets the seed of the random numbers of the simulation. The default is 0.
+     *
+     * @param seed
+     *            the seed
+     * @return <code>this</code>
+     */
+    public RetryStormSimulator withSeed(final long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Sets the capacity of the server.
+     *
+     * @param servers
+     *            the number of attempts the server processes at a time
+     * @param queueCapacity
+     *            the number of attempts the server queues while it is busy
+     * @return <code>this</code>
+     */
+    public RetryStormSimulator withServers(final int servers, final int queueCapacity) {
+        Preconditions.checkArgument(servers >= 1, "servers must be >= 1 but is %s", servers);
+        Preconditions.checkArgument(
+                queueCapacity >= 0,
+                "queueCapacity must be >= 0 but is %s",
+                queueCapacity);
+        this.servers = servers;
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Sets the mean of the exponentially distributed time the server takes to process an attempt.
+     *
+     * @param serviceTime
+     *            the mean service time
+     * @param unit
+     *            the unit of the service time
+     * @return <code>this</code>
+     */
+    public RetryStormSimulator withServiceTime(final long serviceTime, @Nonnull final TimeUnit unit) {
+        Preconditions.checkArgument(serviceTime >= 0L, "serviceTime must be >= 0 but is %s", serviceTime);
+        Preconditions.checkNotNull(unit, "unit may not be null");
+        this.serviceTime = unit.toNanos(serviceTime);
+        return this;
+    }
+
+    /**
+     * Sets the time after which a client considers that an attempt failed with a
+     * {@link TimeoutException}.
+     *
+     * @param timeout
+     *            the client timeout
+     * @param unit
+     *            the unit of the timeout
+     * @return <code>this</code>
+     */
+    public RetryStormSimulator withTimeout(final long timeout, @Nonnull final TimeUnit unit) {
+        Preconditions.checkNotNull(unit, "unit may not be null");
+        Preconditions.checkArgument(unit.toNanos(timeout) >= 1L, "timeout must be > 0 but is %s", timeout);
+        this.timeout = unit.toNanos(timeout);
+        return this;
+    }
+
+    private long serviceTime(final SplittableRandom random) {
+        return (long) (-Math.log(1.0d - random.nextDouble()) * serviceTime);
+    }
+}
@@ -16,11 +16,25 @@
 
 package com.arakelian.retry;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
 import java.util.function.Predicate;
 
 import javax.annotation.Nonnull;
@@ -38,7 +52,13 @@ import com.google.common.base.Preconditions;
  * </p>
  * <p>
  * Retryer instances are better constructed with a {@link RetryerBuilder}. A retryer is thread-safe,
- * provided the arguments passed to its constructor are thread-safe.
+ * provided the arguments passed to its constructor are thread-safe. Listeners can be added and
+ * removed once the retryer is constructed, see {@link #addRetryListener(RetryListener)}.
+ * </p>
+ * <p>
+ * Retryers emit the Java Flight Recorder events <code>com.arakelian.retry.Attempt</code>,
+ * <code>com.arakelian.retry.Backoff</code> and <code>com.arakelian.retry.GiveUp</code>, which are
+ * disabled by default.
  * </p>
  *
  * @param <V>
@@ -74,38 +94,39 @@ public final class Retryer<V> {
     }
 
     @Immutable
-    static final class ExceptionAttempt<R> implements Attempt<R> {
-        private final ExecutionException e;
-        private final long attemptNumber;
-        private final long delaySinceFirstAttempt;
+    static final class ExceptionAttempt<R> extends AbstractAttempt<R> {
+        private final Throwable cause;
 
         public ExceptionAttempt(
                 final Throwable cause,
                 final long attemptNumber,
                 final long delaySinceFirstAttempt) {
-            this.e = new ExecutionException(cause);
-            this.attemptNumber = attemptNumber;
-            this.delaySinceFirstAttempt = delaySinceFirstAttempt;
-        }
-
-        @Override
-        public R get() throws ExecutionException {
-            throw e;
+            this(cause, attemptNumber, delaySinceFirstAttempt, System.nanoTime(), 0L, -1L, 0L, null);
         }
 
-        @Override
-        public long getAttemptNumber() {
-            return attemptNumber;
+        public ExceptionAttempt(
+                final Throwable cause,
+                final long attemptNumber,
+                final long delaySinceFirstAttempt,
+                final long startTime,
+                final long duration,
+                final long cpuTime,
+                final long cumulativeSleepTime,
+                final AttemptHistory history) {
+            super(attemptNumber, delaySinceFirstAttempt, startTime, duration, cpuTime, cumulativeSleepTime,
+                    history);
+            this.cause = cause;
         }
 
         @Override
-        public long getDelaySinceFirstAttempt() {
-            return delaySinceFirstAttempt;
+        public R get() throws ExecutionException {
+            // created on demand, so that attempts which are retried do not pay for it
+            throw new ExecutionException(cause);
         }
 
         @Override
         public Throwable getExceptionCause() throws IllegalStateException {
-            return e.getCause();
+            return cause;
         }
 
         @Override
@@ -125,15 +146,25 @@ public final class Retryer<V> {
     }
 
     @Immutable
-    static final class ResultAttempt<R> implements Attempt<R> {
+    static final class ResultAttempt<R> extends AbstractAttempt<R> {
         private final R result;
-        private final long attemptNumber;
-        private final long delaySinceFirstAttempt;
 
         public ResultAttempt(final R result, final long attemptNumber, final long delaySinceFirstAttempt) {
+            this(result, attemptNumber, delaySinceFirstAttempt, System.nanoTime(), 0L, -1L, 0L, null);
+        }
+
+        public ResultAttempt(
+                final R result,
+                final long attemptNumber,
+                final long delaySinceFirstAttempt,
+                final long startTime,
+                final long duration,
+                final long cpuTime,
+                final long cumulativeSleepTime,
+                final AttemptHistory history) {
+            super(attemptNumber, delaySinceFirstAttempt, startTime, duration, cpuTime, cumulativeSleepTime,
+                    history);
             this.result = result;
-            this.attemptNumber = attemptNumber;
-            this.delaySinceFirstAttempt = delaySinceFirstAttempt;
         }
 
         @Override
@@ -141,16 +172,6 @@ public final class Retryer<V> {
             return result;
         }
 
-        @Override
-        public long getAttemptNumber() {
-            return attemptNumber;
-        }
-
-        @Override
-        public long getDelaySinceFirstAttempt() {
-            return delaySinceFirstAttempt;
-        }
-
         @Override
         public Throwable getExceptionCause() throws IllegalStateException {
             throw new IllegalStateException("The attempt resulted in a result, not in an exception");
@@ -172,6 +193,210 @@ public final class Retryer<V> {
         }
     }
 
+    /**
+     * One callable of a group started by {@link Retryer#callAll} or {@link Retryer#callAny}. Each
+     * attempt runs on the executor of the group, and the next attempt is scheduled on the same
+     * executor once the sleep time has passed, so that no thread is blocked during backoff.
+     */
+    private final class FanOutTask implements Runnable {
+        private final Callable<V> callable;
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        private final Executor executor;
+        private final StopStrategy groupStopStrategy;
+        private final AtomicInteger groupAttempts;
+        private final long groupStartTime;
+        private final AttemptHistory history = newAttemptHistory();
+        private int attemptNumber;
+        private long sleepTime;
+        private Attempt<V> lastAttempt;
+
+        public FanOutTask(
+                final Callable<V> callable,
+                final Executor executor,
+                final StopStrategy groupStopStrategy,
+                final AtomicInteger groupAttempts,
+                final long groupStartTime) {
+            this.callable = callable;
+            this.executor = executor;
+            this.groupStopStrategy = groupStopStrategy;
+            this.groupAttempts = groupAttempts;
+            this.groupStartTime = groupStartTime;
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                // cancelled, or another callable of the group succeeded
+                if (lastAttempt != null) {
+                    giveUp(lastAttempt);
+                }
+                return;
+            }
+
+            attemptNumber++;
+            final Outcome<V> outcome;
+            try {
+                outcome = attempt(callable, attemptNumber, groupStartTime, sleepTime, history);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                final Attempt<V> interrupted = exceptionAttempt(e, attemptNumber, groupStartTime, sleepTime,
+                        history);
+                giveUp(interrupted);
+                future.completeExceptionally(newRetryException(attemptNumber, interrupted));
+                return;
+            }
+            final Attempt<V> attempt = outcome.attempt;
+            final int groupAttemptNumber = groupAttempts.incrementAndGet();
+
+            if (!isRejected(outcome)) {
+                if (attempt.hasResult()) {
+                    future.complete(attempt.getResult());
+                } else {
+                    future.completeExceptionally(attempt.getExceptionCause());
+                }
+            } else if (groupStopStrategy.shouldStop(groupAttempt(attempt, groupAttemptNumber))) {
+                giveUp(attempt);
+                future.completeExceptionally(newRetryException(attemptNumber, attempt));
+            } else if (shouldStop(attempt)) {
+                future.completeExceptionally(newRetryException(attemptNumber, attempt));
+            } else {
+                final long nextSleepTime = computeSleepTime(attempt);
+                sleepTime += nextSleepTime;
+                lastAttempt = attempt;
+                try {
+                    CompletableFuture.delayedExecutor(nextSleepTime, TimeUnit.MILLISECONDS, executor)
+                            .execute(this);
+                } catch (final RejectedExecutionException e) {
+                    giveUp(attempt);
+                    future.completeExceptionally(newRetryException(attemptNumber, attempt));
+                }
+            }
+        }
+
+        /**
+         * Returns the given attempt as seen by the group, i.e. numbered among all the attempts of
+         * the group and timed from the start of the group.
+         */
+        private Attempt<V> groupAttempt(final Attempt<V> attempt, final int groupAttemptNumber) {
+            final long delay = millisSince(groupStartTime);
+            return attempt.hasResult()
+                    ? new ResultAttempt<>(attempt.getResult(), groupAttemptNumber, delay,
+                            attempt.getStartTime(), attempt.getDuration(), attempt.getCpuTime(), sleepTime,
+                            history)
+                    : new ExceptionAttempt<>(attempt.getExceptionCause(), groupAttemptNumber, delay,
+                            attempt.getStartTime(), attempt.getDuration(), attempt.getCpuTime(), sleepTime,
+                            history);
+        }
+    }
+
+    /**
+     * The listeners of a retryer, and for each {@link RetryListener} method the listeners which
+     * override it, so that methods which are not overridden need not be invoked. Listeners are
+     * added and removed by replacing the whole set, so that notifying them is a loop over an array
+     * read from a volatile field, without locking.
+     */
+    @Immutable
+    private static final class Listeners {
+        private final RetryListener[] all;
+        private final RetryListener[] beforeAttempt;
+        private final RetryListener[] beforeSleep;
+        private final RetryListener[] failure;
+        private final RetryListener[] giveUp;
+        private final RetryListener[] retry;
+        private final RetryListener[] success;
+
+        public Listeners(final RetryListener[] all) {
+            this.all = all;
+            this.beforeAttempt = listenersOverriding(all, "beforeAttempt", long.class, long.class);
+            this.beforeSleep = listenersOverriding(all, "beforeSleep", Attempt.class, long.class);
+            this.failure = listenersOverriding(all, "onFailure", Attempt.class);
+            this.giveUp = listenersOverriding(all, "onGiveUp", Attempt.class);
+            this.retry = listenersOverriding(all, "onRetry", Attempt.class);
+            this.success = listenersOverriding(all, "onSuccess", Attempt.class);
+        }
+
+        /**
+         * Returns <code>true</code> if no listener needs to be notified of a successful attempt.
+         */
+        private boolean isEmptyOnSuccess() {
+            return retry.length == 0 && success.length == 0;
+        }
+    }
+
+    /**
+     * An attempt, and whether the rejection predicate rejected it, so that the predicate is
+     * evaluated once per attempt.
+     */
+    @Immutable
+    static final class Outcome<R> {
+        private final Attempt<R> attempt;
+        private final boolean rejected;
+
+        public Outcome(final Attempt<R> attempt, final boolean rejected) {
+            this.attempt = attempt;
+            this.rejected = rejected;
+        }
+
+        public Attempt<R> getAttempt() {
+            return attempt;
+        }
+    }
+
+    /**
+     * Returns the listeners which override the given {@link RetryListener} method, so that methods
+     * which are not overridden need not be invoked.
+     */
+    static RetryListener[] listenersOverriding(
+            final RetryListener[] listeners,
+            final String name,
+            final Class<?>... parameterTypes) {
+        return Arrays.stream(listeners).filter(listener -> {
+            try {
+                return listener.getClass().getMethod(name, parameterTypes)
+                        .getDeclaringClass() != RetryListener.class;
+            } catch (final NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        }).toArray(RetryListener[]::new);
+    }
+
+    /**
+     * Returns a {@link CancellationException} for a call cancelled after the given number of
+     * attempts, whose cause is the exception of the last failed attempt, if any.
+     */
+    private static CancellationException newCancellationException(
+            final int numberOfAttempts,
+            final Attempt<?> lastFailedAttempt) {
+        final CancellationException e = new CancellationException(
+                "Retrying cancelled after " + numberOfAttempts + " attempts");
+        if (lastFailedAttempt != null && lastFailedAttempt.hasException()) {
+            e.initCause(lastFailedAttempt.getExceptionCause());
+        }
+        return e;
+    }
+
+    /**
+     * Throws the given exception, which is either unchecked or, as far as the compiler is
+     * concerned, of type <code>E</code>.
+     */
+    @SuppressWarnings("unchecked")
+    private static <E extends Exception> RuntimeException rethrow(final Throwable cause) throws E {
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw (E) cause;
+    }
+
+    private static ThreadMXBean threadMXBeanIfCpuTimeEnabled() {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        return threadMXBean.isCurrentThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled()
+                ? threadMXBean
+                : null;
+    }
+
     private final StopStrategy stopStrategy;
     private final WaitStrategy waitStrategy;
     private final BlockStrategy blockStrategy;
@@ -180,7 +405,29 @@ public final class Retryer<V> {
 
     private final Predicate<Attempt<V>> rejectionPredicate;
 
-    private final Collection<RetryListener> listeners;
+    /** Replaced as a whole, under the lock, when a listener is added or removed **/
+    private volatile Listeners listeners;
+
+    private final Object listenersLock = new Object();
+
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    private final RetryBudget retryBudget;
+
+    /** Recent failed attempts, or <code>null</code> if they are not recorded **/
+    private final RecentFailures recentFailures;
+
+    /** Maximum number of entries of the history of each call, or 0 if not recorded **/
+    private final int attemptHistorySize;
+
+    /** Whether a {@link RetryException} fills in its stack trace **/
+    private final boolean retryExceptionStackTrace;
+
+    /** Used to measure the CPU time of each attempt, or <code>null</code> if not measured **/
+    private final ThreadMXBean threadMXBean;
+
+    /** Source of the times of the attempts **/
+    private final Ticker ticker;
 
     /**
      * Constructor
@@ -235,19 +482,48 @@ public final class Retryer<V> {
             @Nonnull final BlockStrategy blockStrategy,
             @Nonnull final Predicate<Attempt<V>> rejectionPredicate,
             @Nonnull final Collection<RetryListener> listeners) {
+        this(attemptTimeLimiter, stopStrategy, waitStrategy, blockStrategy, rejectionPredicate, listeners,
+                ConcurrencyLimiters.noLimit(), RetryBudgets.unlimited(), null, 0, true, false,
+                Ticker.systemTicker());
+    }
+
+    private Retryer(
+            final AttemptTimeLimiter<V> attemptTimeLimiter,
+            final StopStrategy stopStrategy,
+            final WaitStrategy waitStrategy,
+            final BlockStrategy blockStrategy,
+            final Predicate<Attempt<V>> rejectionPredicate,
+            final Collection<RetryListener> listeners,
+            final ConcurrencyLimiter concurrencyLimiter,
+            final RetryBudget retryBudget,
+            final RecentFailures recentFailures,
+            final int attemptHistorySize,
+            final boolean retryExceptionStackTrace,
+            final boolean attemptCpuTime,
+            final Ticker ticker) {
         Preconditions.checkNotNull(attemptTimeLimiter, "timeLimiter may not be null");
         Preconditions.checkNotNull(stopStrategy, "stopStrategy may not be null");
         Preconditions.checkNotNull(waitStrategy, "waitStrategy may not be null");
         Preconditions.checkNotNull(blockStrategy, "blockStrategy may not be null");
         Preconditions.checkNotNull(rejectionPredicate, "rejectionPredicate may not be null");
         Preconditions.checkNotNull(listeners, "listeners may not null");
+        Preconditions.checkNotNull(concurrencyLimiter, "concurrencyLimiter may not be null");
+        Preconditions.checkNotNull(retryBudget, "retryBudget may not be null");
+        Preconditions.checkNotNull(ticker, "ticker may not be null");
 
         this.attemptTimeLimiter = attemptTimeLimiter;
         this.stopStrategy = stopStrategy;
         this.waitStrategy = waitStrategy;
         this.blockStrategy = blockStrategy;
         this.rejectionPredicate = rejectionPredicate;
-        this.listeners = listeners;
+        this.listeners = new Listeners(listeners.toArray(new RetryListener[0]));
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.retryBudget = retryBudget;
+        this.recentFailures = recentFailures;
+        this.attemptHistorySize = attemptHistorySize;
+        this.retryExceptionStackTrace = retryExceptionStackTrace;
+        this.threadMXBean = attemptCpuTime ? threadMXBeanIfCpuTimeEnabled() : null;
+        this.ticker = ticker;
     }
 
     /**
@@ -294,6 +570,180 @@ public final class Retryer<V> {
                 BlockStrategies.threadSleepStrategy(), rejectionPredicate);
     }
 
+    /**
+     * Constructs a retryer from the current configuration of the given builder.
+     *
+     * @param builder
+     *            the builder used to configure the retryer
+     */
+    Retryer(@Nonnull final RetryerBuilder<V> builder) {
+        this(builder.getAttemptTimeLimiter(), builder.getStopStrategy(), builder.getWaitStrategy(),
+                builder.getBlockStrategy(), builder.getRejectionPredicate(), builder.getListeners(),
+                builder.getConcurrencyLimiter(), builder.getRetryBudget(), builder.newRecentFailures(),
+                builder.getAttemptHistorySize(), builder.isRetryExceptionStackTrace(),
+                builder.isAttemptCpuTime(), builder.getTicker());
+    }
+
+    /**
+     * Adds a listener to this retryer. Calls in progress notify the listener of their subsequent
+     * events only, so that the listener may, for example, be notified of the success of a call
+     * without having been notified of its first attempt.
+     * <p>
+     * Adding or removing a listener copies the listeners of the retryer, and is meant to be
+     * infrequent, for example to enable diagnostics during an incident. Notifying the listeners
+     * neither locks nor allocates.
+     * </p>
+     *
+     * @param listener
+     *            the listener to add
+     * @see RetryerBuilder#withRetryListener(RetryListener)
+     */
+    public void addRetryListener(@Nonnull final RetryListener listener) {
+        Preconditions.checkNotNull(listener, "listener may not be null");
+        synchronized (listenersLock) {
+            final RetryListener[] all = Arrays.copyOf(listeners.all, listeners.all.length + 1);
+            all[all.length - 1] = listener;
+            listeners = new Listeners(all);
+        }
+    }
+
+    /**
+     * Commits the attempt event, if any, records the given attempt in the history of the call, and
+     * notifies the listeners of the attempt.
+     */
+    private void afterAttempt(final Object event, final Attempt<V> attempt, final AttemptHistory history) {
+        if (event != null) {
+            RetryEvents.commitAttempt(event, attempt);
+        }
+        if (history != null) {
+            history.record(attempt);
+        }
+        for (final RetryListener listener : listeners.retry) {
+            listener.onRetry(attempt);
+        }
+    }
+
+    /**
+     * Executes a single attempt of the given callable, subject to the concurrency limiter and the
+     * attempt time limiter, and notifies the listeners before the attempt and of its outcome. If
+     * the concurrency limiter rejects the attempt, the callable is not invoked and the attempt
+     * records a {@link ConcurrencyLimitException}.
+     *
+     * @param callable
+     *            the callable task to be executed
+     * @param attemptNumber
+     *            the number, starting from 1, of this attempt
+     * @param startTime
+     *            the value of the ticker at the start of the first attempt
+     * @param cumulativeSleepTime
+     *            the time slept between the previous attempts of the call, in milliseconds
+     * @param history
+     *            the history of the call, as returned by {@link #newAttemptHistory()}, or
+     *            <code>null</code>
+     * @return the attempt, and whether the rejection predicate rejected it, to be passed to
+     *         {@link #isRejected(Outcome)}
+     * @throws InterruptedException
+     *             if the thread was interrupted while waiting for the concurrency limiter
+     */
+    Outcome<V> attempt(
+            final Callable<V> callable,
+            final int attemptNumber,
+            final long startTime,
+            final long cumulativeSleepTime,
+            final AttemptHistory history) throws InterruptedException {
+        beforeAttempt(attemptNumber, startTime);
+        final Object event = RetryEvents.beginAttempt();
+        final Outcome<V> outcome = attemptUnlessLimited(callable, attemptNumber, startTime,
+                cumulativeSleepTime, history);
+        afterAttempt(event, outcome.attempt, history);
+        return outcome;
+    }
+
+    private Outcome<V> attemptUnlessLimited(
+            final Callable<V> callable,
+            final int attemptNumber,
+            final long startTime,
+            final long cumulativeSleepTime,
+            final AttemptHistory history) throws InterruptedException {
+        if (!concurrencyLimiter.acquire()) {
+            final Attempt<V> limited = exceptionAttempt(new ConcurrencyLimitException(), attemptNumber,
+                    startTime, cumulativeSleepTime, history);
+            return new Outcome<>(limited, rejectionPredicate.test(limited));
+        }
+        final long attemptStartTime = ticker.read();
+        final long cpuStartTime = currentThreadCpuTime();
+        Attempt<V> attempt = null;
+        boolean rejected = false;
+        try {
+            try {
+                final V result = attemptTimeLimiter.call(callable);
+                attempt = new ResultAttempt<>(result, attemptNumber, millisSince(startTime),
+                        attemptStartTime, ticker.read() - attemptStartTime, cpuTimeSince(cpuStartTime),
+                        cumulativeSleepTime, history);
+            } catch (final Throwable t) {
+                attempt = new ExceptionAttempt<>(t, attemptNumber, millisSince(startTime), attemptStartTime,
+                        ticker.read() - attemptStartTime, cpuTimeSince(cpuStartTime), cumulativeSleepTime,
+                        history);
+            }
+            rejected = rejectionPredicate.test(attempt);
+        } finally {
+            // a rejected result is a failure too, so that adaptive limiters back off on it
+            concurrencyLimiter.release(ticker.read() - attemptStartTime,
+                    attempt == null || attempt.hasException() || rejected);
+        }
+        return new Outcome<>(attempt, rejected);
+    }
+
+    /**
+     * Stops, or blocks for the time computed by the wait strategy, after the given failed attempt,
+     * and returns the time slept, in milliseconds. If the given token, which may be
+     * <code>null</code>, is cancelled before or while blocking, the call is cancelled.
+     */
+    private long backoff(
+            final Attempt<V> failedAttempt,
+            final int attemptNumber,
+            final CancellationToken token) throws RetryException {
+        if (token != null && token.isCancelled()) {
+            giveUp(failedAttempt);
+            throw newCancellationException(attemptNumber, failedAttempt);
+        }
+        if (shouldStop(failedAttempt)) {
+            throw newRetryException(attemptNumber, failedAttempt);
+        }
+        final long sleepTime = computeSleepTime(failedAttempt);
+        final Object event = RetryEvents.beginBackoff();
+        try {
+            if (token != null) {
+                blockStrategy.block(sleepTime, token);
+            } else {
+                blockStrategy.block(sleepTime);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            giveUp(failedAttempt);
+            throw newRetryException(attemptNumber, failedAttempt);
+        } finally {
+            if (event != null) {
+                RetryEvents.commitBackoff(event, attemptNumber, sleepTime);
+            }
+        }
+        if (token != null && token.isCancelled()) {
+            giveUp(failedAttempt);
+            throw newCancellationException(attemptNumber, failedAttempt);
+        }
+        return sleepTime;
+    }
+
+    private void beforeAttempt(final int attemptNumber, final long startTime) {
+        final RetryListener[] beforeAttemptListeners = listeners.beforeAttempt;
+        if (beforeAttemptListeners.length != 0) {
+            final long delaySinceFirstAttempt = millisSince(startTime);
+            for (final RetryListener listener : beforeAttemptListeners) {
+                listener.beforeAttempt(attemptNumber, delaySinceFirstAttempt);
+            }
+        }
+    }
+
     /**
      * Executes the given callable. If the rejection predicate accepts the attempt, the stop
      * strategy is used to decide if a new attempt must be made. Then the wait strategy is used to
@@ -307,42 +757,685 @@ public final class Retryer<V> {
      *             the attempt as successful. The original exception is wrapped into an
      *             ExecutionException.
      * @throws RetryException
-     *             if all the attempts failed before the stop strategy decided to abort, or the
-     *             thread was interrupted. Note that if the thread is interrupted, this exception is
-     *             thrown and the thread's interrupt status is set.
+     *             if all the attempts failed before the stop strategy decided to abort, the retry
+     *             budget was exhausted, or the thread was interrupted. Note that if the thread is
+     *             interrupted, this exception is thrown and the thread's interrupt status is set.
      */
     public V call(final Callable<V> callable) throws ExecutionException, RetryException {
-        final long startTime = System.nanoTime();
+        return callUntilAccepted(callable, null).get();
+    }
+
+    /**
+     * Executes the given callable like {@link #call(Callable)}, until the given token is
+     * cancelled. Once the token is cancelled, no further attempt is made: the call wakes up if it
+     * is blocked between attempts, and otherwise stops once the attempt in progress completes. An
+     * attempt which completes with a result accepted by the rejection predicate is returned even
+     * if the token is cancelled.
+     *
+     * @param callable
+     *            the callable task to be executed
+     * @param token
+     *            the token which cancels the call
+     * @return the computed result of the given callable
+     * @throws CancellationException
+     *             if the token was cancelled before the call succeeded. Its cause is the exception
+     *             of the last failed attempt, if any.
+     * @throws ExecutionException
+     *             if the given callable throws an exception, and the rejection predicate considers
+     *             the attempt as successful. The original exception is wrapped into an
+     *             ExecutionException.
+     * @throws RetryException
+     *             if all the attempts failed before the stop strategy decided to abort, the retry
+     *             budget was exhausted, or the thread was interrupted
+     * @see CancellationToken
+     */
+    public V call(final Callable<V> callable, @Nonnull final CancellationToken token)
+            throws CancellationException, ExecutionException, RetryException {
+        Preconditions.checkNotNull(token, "token may not be null");
+        return callUntilAccepted(callable, token).get();
+    }
+
+    /**
+     * Calls every one of the given callables in parallel on the common {@link ForkJoinPool}, each
+     * with the retry behavior of this retryer, and waits for all of them to complete.
+     *
+     * @param callables
+     *            the callables to call
+     * @return the outcome of each callable, in the same order as the given callables
+     * @throws InterruptedException
+     *             if the thread was interrupted while waiting, in which case the remaining callables
+     *             are not retried
+     * @see #callAll(Collection, Executor, StopStrategy)
+     */
+    public List<Future<V>> callAll(@Nonnull final Collection<? extends Callable<V>> callables)
+            throws InterruptedException {
+        return callAll(callables, ForkJoinPool.commonPool(), StopStrategies.neverStop());
+    }
+
+    /**
+     * Calls every one of the given callables in parallel on the given executor, each with the retry
+     * behavior of this retryer, and waits for all of them to complete.
+     * <p>
+     * Attempts of different callables are independent: while one callable is waiting for its next
+     * attempt, the others continue to run, and no thread is blocked during the wait. The block
+     * strategy of this retryer is not used.
+     * </p>
+     * <p>
+     * In addition to the stop strategy of this retryer, which applies to each callable separately,
+     * the given group stop strategy is consulted after every failed attempt with an attempt that is
+     * numbered among all the attempts of the group and timed from the start of the group. For
+     * example, {@link StopStrategies#stopAfterAttempt(int)} limits the total number of attempts of
+     * the group, and {@link StopStrategies#stopAfterDelay(long, TimeUnit)} imposes a deadline on the
+     * group.
+     * </p>
+     *
+     * @param callables
+     *            the callables to call
+     * @param executor
+     *            the executor used to run attempts
+     * @param groupStopStrategy
+     *            the strategy used to decide when to stop retrying any callable of the group
+     * @return the outcome of each callable, in the same order as the given callables. The future of
+     *         a callable which failed holds an {@link ExecutionException} whose cause is either the
+     *         exception accepted by the rejection predicate, or a {@link RetryException}.
+     * @throws InterruptedException
+     *             if the thread was interrupted while waiting, in which case the remaining callables
+     *             are not retried
+     */
+    public List<Future<V>> callAll(
+            @Nonnull final Collection<? extends Callable<V>> callables,
+            @Nonnull final Executor executor,
+            @Nonnull final StopStrategy groupStopStrategy) throws InterruptedException {
+        final List<Future<V>> futures = fanOut(callables, executor, groupStopStrategy);
+        try {
+            for (final Future<V> future : futures) {
+                try {
+                    future.get();
+                } catch (final ExecutionException e) {
+                    // outcome is returned to caller
+                }
+            }
+        } catch (final InterruptedException e) {
+            for (final Future<V> future : futures) {
+                future.cancel(false);
+            }
+            throw e;
+        }
+        return futures;
+    }
+
+    /**
+     * Calls the given callables in parallel on the common {@link ForkJoinPool}, each with the retry
+     * behavior of this retryer, and returns the result of the first one to succeed.
+     *
+     * @param callables
+     *            the callables to call
+     * @return the result of the first callable to succeed
+     * @throws ExecutionException
+     *             if none of the callables succeeded, and the last one to fail threw an exception
+     *             which the rejection predicate considers as successful
+     * @throws RetryException
+     *             if none of the callables succeeded, and the last one to fail was given up on
+     * @throws InterruptedException
+     *             if the thread was interrupted while waiting
+     * @see #callAny(Collection, Executor, StopStrategy)
+     */
+    public V callAny(@Nonnull final Collection<? extends Callable<V>> callables)
+            throws ExecutionException, RetryException, InterruptedException {
+        return callAny(callables, ForkJoinPool.commonPool(), StopStrategies.neverStop());
+    }
+
+    /**
+     * Calls the given callables in parallel on the given executor, each with the retry behavior of
+     * this retryer, and returns the result of the first one to succeed. Once a callable succeeds,
+     * the others are no longer retried. Attempts are run and the group stop strategy is applied as
+     * described in {@link #callAll(Collection, Executor, StopStrategy)}.
+     *
+     * @param callables
+     *            the callables to call
+     * @param executor
+     *            the executor used to run attempts
+     * @param groupStopStrategy
+     *            the strategy used to decide when to stop retrying any callable of the group
+     * @return the result of the first callable to succeed
+     * @throws ExecutionException
+     *             if none of the callables succeeded, and the last one to fail threw an exception
+     *             which the rejection predicate considers as successful
+     * @throws RetryException
+     *             if none of the callables succeeded, and the last one to fail was given up on
+     * @throws InterruptedException
+     *             if the thread was interrupted while waiting
+     */
+    public V callAny(
+            @Nonnull final Collection<? extends Callable<V>> callables,
+            @Nonnull final Executor executor,
+            @Nonnull final StopStrategy groupStopStrategy)
+            throws ExecutionException, RetryException, InterruptedException {
+        Preconditions.checkNotNull(callables, "callables may not be null");
+        Preconditions.checkArgument(!callables.isEmpty(), "callables may not be empty");
+        final List<Future<V>> futures = fanOut(callables, executor, groupStopStrategy);
+        final CompletableFuture<V> first = new CompletableFuture<>();
+        final AtomicInteger remaining = new AtomicInteger(futures.size());
+        for (final Future<V> future : futures) {
+            ((CompletableFuture<V>) future).whenComplete((result, t) -> {
+                if (t == null) {
+                    first.complete(result);
+                } else if (remaining.decrementAndGet() == 0) {
+                    first.completeExceptionally(t);
+                }
+            });
+        }
+
+        try {
+            return first.get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RetryException) {
+                throw (RetryException) e.getCause();
+            }
+            throw e;
+        } finally {
+            for (final Future<V> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Calls the given callable like {@link #call(Callable)}, retrying while it returns the given
+     * result, without boxing the result of each attempt.
+     *
+     * @param callable
+     *            the callable task to be executed
+     * @param retryIfResult
+     *            the result for which the callable is retried
+     * @return the result of the callable
+     * @throws ExecutionException
+     *             if the given callable throws an exception, and the rejection predicate considers
+     *             the attempt as successful
+     * @throws RetryException
+     *             if all the attempts failed before the stop strategy decided to abort
+     * @see #callInt(IntCallable, IntPredicate)
+     */
+    public boolean callBoolean(@Nonnull final BooleanCallable callable, final boolean retryIfResult)
+            throws ExecutionException, RetryException {
+        Preconditions.checkNotNull(callable, "callable may not be null");
+        return callPrimitive(() -> callable.call() ? 1L : 0L, result -> (result != 0L) == retryIfResult,
+                PrimitiveAttempt.Type.BOOLEAN) != 0L;
+    }
+
+    /**
+     * Calls the given callable like {@link #call(Callable)}, without boxing the result of each
+     * attempt.
+     * <p>
+     * Exceptions thrown by the callable are retried according to the rejection predicate of this
+     * retryer, but results are retried according to the given predicate only: the result predicates
+     * of this retryer, which expect results of type <code>V</code>, are not applied. Attempts which
+     * return a result are seen by strategies and listeners as {@link PrimitiveAttempt}. When an
+     * attempt succeeds, and no listener, JFR event or attempt history needs it, no attempt object
+     * is created at all.
+     * </p>
+     * <p>
+     * When this retryer has an attempt time limiter, the result of each attempt is boxed while
+     * passing through the limiter.
+     * </p>
+     *
+     * @param callable
+     *            the callable task to be executed
+     * @param retryIfResult
+     *            the predicate of the results for which the callable is retried
+     * @return the result of the callable
+     * @throws ExecutionException
+     *             if the given callable throws an exception, and the rejection predicate considers
+     *             the attempt as successful
+     * @throws RetryException
+     *             if all the attempts failed before the stop strategy decided to abort
+     */
+    public int callInt(@Nonnull final IntCallable callable, @Nonnull final IntPredicate retryIfResult)
+            throws ExecutionException, RetryException {
+        Preconditions.checkNotNull(callable, "callable may not be null");
+        Preconditions.checkNotNull(retryIfResult, "retryIfResult may not be null");
+        return (int) callPrimitive(callable::call, result -> retryIfResult.test((int) result),
+                PrimitiveAttempt.Type.INT);
+    }
+
+    @SuppressWarnings("unchecked")
+    private long callLimited(final LongCallable callable) throws Exception {
+        return (Long) ((AttemptTimeLimiter<Object>) attemptTimeLimiter).call(callable::call);
+    }
+
+    /**
+     * Calls the given callable like {@link #call(Callable)}, without boxing the result of each
+     * attempt.
+     *
+     * @param callable
+     *            the callable task to be executed
+     * @param retryIfResult
+     *            the predicate of the results for which the callable is retried
+     * @return the result of the callable
+     * @throws ExecutionException
+     *             if the given callable throws an exception, and the rejection predicate considers
+     *             the attempt as successful
+     * @throws RetryException
+     *             if all the attempts failed before the stop strategy decided to abort
+     * @see #callInt(IntCallable, IntPredicate)
+     */
+    public long callLong(@Nonnull final LongCallable callable, @Nonnull final LongPredicate retryIfResult)
+            throws ExecutionException, RetryException {
+        Preconditions.checkNotNull(callable, "callable may not be null");
+        Preconditions.checkNotNull(retryIfResult, "retryIfResult may not be null");
+        return callPrimitive(callable, retryIfResult, PrimitiveAttempt.Type.LONG);
+    }
+
+    /**
+     * The loop of {@link #call(Callable)}, specialized for callables which return a primitive,
+     * widened to a long. An attempt object is only created when an attempt fails, or when a
+     * listener, a JFR event or the attempt history needs it.
+     */
+    private long callPrimitive(
+            final LongCallable callable,
+            final LongPredicate retryIfResult,
+            final PrimitiveAttempt.Type type) throws ExecutionException, RetryException {
+        final long startTime = ticker.read();
+        final AttemptHistory history = newAttemptHistory();
+        final boolean limited = !AttemptTimeLimiters.isNoTimeLimit(attemptTimeLimiter);
+        long sleepTime = 0L;
         for (int attemptNumber = 1;; attemptNumber++) {
-            Attempt<V> attempt;
+            beforeAttempt(attemptNumber, startTime);
+            final Object event = RetryEvents.beginAttempt();
+            long result = 0L;
+            Throwable cause = null;
+            long attemptStartTime = ticker.read();
+            long duration = 0L;
+            long cpuTime = -1L;
+            boolean acquired = false;
             try {
-                final V result = attemptTimeLimiter.call(callable);
-                attempt = new ResultAttempt<>(result, attemptNumber,
-                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
-            } catch (final Throwable t) {
-                attempt = new ExceptionAttempt<>(t, attemptNumber,
-                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                if (concurrencyLimiter.acquire()) {
+                    acquired = true;
+                    attemptStartTime = ticker.read();
+                    final long cpuStartTime = currentThreadCpuTime();
+                    try {
+                        result = limited ? callLimited(callable) : callable.call();
+                    } catch (final Throwable t) {
+                        cause = t;
+                    }
+                    duration = ticker.read() - attemptStartTime;
+                    cpuTime = cpuTimeSince(cpuStartTime);
+                } else {
+                    cause = new ConcurrencyLimitException();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                final Attempt<V> interrupted = exceptionAttempt(e, attemptNumber, startTime, sleepTime,
+                        history);
+                giveUp(interrupted);
+                throw newRetryException(attemptNumber, interrupted);
             }
 
-            for (final RetryListener listener : listeners) {
-                listener.onRetry(attempt);
+            boolean rejectedResult = false;
+            try {
+                rejectedResult = cause == null && retryIfResult.test(result);
+            } finally {
+                if (acquired) {
+                    // a rejected result is a failure too, so that adaptive limiters back off on it
+                    concurrencyLimiter.release(duration, cause != null || rejectedResult);
+                }
+            }
+            if (cause == null && !rejectedResult && event == null && history == null
+                    && listeners.isEmptyOnSuccess()) {
+                return result;
             }
 
-            if (!rejectionPredicate.test(attempt)) {
-                return attempt.get();
+            final long delaySinceFirstAttempt = millisSince(startTime);
+            final Attempt<V> attempt = cause == null
+                    ? new PrimitiveAttempt<>(type, result, attemptNumber, delaySinceFirstAttempt,
+                            attemptStartTime, duration, cpuTime, sleepTime, history)
+                    : new ExceptionAttempt<>(cause, attemptNumber, delaySinceFirstAttempt, attemptStartTime,
+                            duration, cpuTime, sleepTime, history);
+            afterAttempt(event, attempt, history);
+            if (!notifyOutcome(attempt, cause == null ? rejectedResult : rejectionPredicate.test(attempt))) {
+                if (cause != null) {
+                    throw new ExecutionException(cause);
+                }
+                return result;
             }
-            if (stopStrategy.shouldStop(attempt)) {
-                throw new RetryException(attemptNumber, attempt);
-            } else {
-                final long sleepTime = waitStrategy.computeSleepTime(attempt);
-                try {
-                    blockStrategy.block(sleepTime);
-                } catch (final InterruptedException e) {
+            sleepTime += backoff(attempt, attemptNumber, null);
+        }
+    }
+
+    /**
+     * Makes attempts until one of them is accepted by the rejection predicate, and returns it.
+     *
+     * @param callable
+     *            the callable task to be executed
+     * @param token
+     *            the cancellation token of the call, or <code>null</code>
+     */
+    private Attempt<V> callUntilAccepted(final Callable<V> callable, final CancellationToken token)
+            throws RetryException {
+        if (token != null && token.isCancelled()) {
+            throw newCancellationException(0, null);
+        }
+        final long startTime = ticker.read();
+        final AttemptHistory history = newAttemptHistory();
+        long sleepTime = 0L;
+        for (int attemptNumber = 1;; attemptNumber++) {
+            final Outcome<V> outcome;
+            try {
+                if (token == null) {
+                    outcome = attempt(callable, attemptNumber, startTime, sleepTime, history);
+                } else {
+                    token.enterAttempt();
+                    try {
+                        outcome = attempt(callable, attemptNumber, startTime, sleepTime, history);
+                    } finally {
+                        token.exitAttempt();
+                    }
+                }
+            } catch (final InterruptedException e) {
+                final boolean cancelled = token != null && token.isCancelled();
+                if (!cancelled) {
                     Thread.currentThread().interrupt();
-                    throw new RetryException(attemptNumber, attempt);
                 }
+                final Attempt<V> interrupted = exceptionAttempt(e, attemptNumber, startTime, sleepTime,
+                        history);
+                giveUp(interrupted);
+                if (cancelled) {
+                    throw newCancellationException(attemptNumber, interrupted);
+                }
+                throw newRetryException(attemptNumber, interrupted);
+            }
+
+            final Attempt<V> attempt = outcome.attempt;
+            if (token != null && token.isCancelled() && attempt.hasException()) {
+                // the exception may well be due to the cancellation, so it is never accepted
+                notifyOutcome(attempt, true);
+                giveUp(attempt);
+                throw newCancellationException(attemptNumber, attempt);
             }
+            if (!isRejected(outcome)) {
+                return attempt;
+            }
+            sleepTime += backoff(attempt, attemptNumber, token);
+        }
+    }
+
+    /**
+     * Executes the given callable like {@link #call(Callable)}, but rethrows the exception thrown
+     * by the callable as is, rather than wrapped into an {@link ExecutionException}, when the
+     * rejection predicate considers the attempt as successful.
+     * <p>
+     * The exception thrown by an attempt may also be one produced by the retryer rather than by
+     * the callable, such as a {@link ConcurrencyLimitException} or an exception of the attempt time
+     * limiter, in which case it is rethrown as is as well, even if it is a checked exception other
+     * than <code>E</code>.
+     * </p>
+     *
+     * @param callable
+     *            the callable task to be executed
+     * @param <E>
+     *            the type of the checked exception thrown by the callable
+     * @return the computed result of the given callable
+     * @throws E
+     *             if the given callable throws an exception, and the rejection predicate considers
+     *             the attempt as successful
+     * @throws RetryException
+     *             if all the attempts failed before the stop strategy decided to abort, the retry
+     *             budget was exhausted, or the thread was interrupted
+     */
+    public <E extends Exception> V callUnwrapped(@Nonnull final ThrowingCallable<V, E> callable)
+            throws E, RetryException {
+        Preconditions.checkNotNull(callable, "callable may not be null");
+        final Attempt<V> attempt = callUntilAccepted(callable::call, null);
+        if (attempt.hasException()) {
+            throw Retryer.<E> rethrow(attempt.getExceptionCause());
+        }
+        return attempt.getResult();
+    }
+
+    /**
+     * Runs the given callable like {@link #call(Callable)}, retrying according to the rejection
+     * predicate of this retryer when it throws an exception.
+     *
+     * @param callable
+     *            the callable task to be executed
+     * @throws ExecutionException
+     *             if the given callable throws an exception, and the rejection predicate considers
+     *             the attempt as successful
+     * @throws RetryException
+     *             if all the attempts failed before the stop strategy decided to abort
+     * @see #callInt(IntCallable, IntPredicate)
+     */
+    public void callVoid(@Nonnull final VoidCallable callable) throws ExecutionException, RetryException {
+        Preconditions.checkNotNull(callable, "callable may not be null");
+        callPrimitive(() -> {
+            callable.call();
+            return 0L;
+        }, result -> false, PrimitiveAttempt.Type.VOID);
+    }
+
+    /**
+     * Returns the time, in milliseconds, to sleep before retrying after the given failed attempt,
+     * and notifies the listeners that the retryer is about to sleep.
+     *
+     * @param failedAttempt
+     *            the previous failed attempt
+     * @return the sleep time before next attempt
+     */
+    long computeSleepTime(final Attempt<V> failedAttempt) {
+        final long sleepTime = waitStrategy.computeSleepTime(failedAttempt);
+        final AttemptHistory history = failedAttempt.getAttemptHistory();
+        if (history != null) {
+            history.recordWait(sleepTime);
+        }
+        for (final RetryListener listener : listeners.beforeSleep) {
+            listener.beforeSleep(failedAttempt, sleepTime);
+        }
+        return sleepTime;
+    }
+
+    private long cpuTimeSince(final long cpuStartTime) {
+        return cpuStartTime != -1L ? threadMXBean.getCurrentThreadCpuTime() - cpuStartTime : -1L;
+    }
+
+    private long currentThreadCpuTime() {
+        return threadMXBean != null ? threadMXBean.getCurrentThreadCpuTime() : -1L;
+    }
+
+    /**
+     * Returns an attempt which did not invoke the callable, because of the given exception.
+     *
+     * @param cause
+     *            the exception
+     * @param attemptNumber
+     *            the number, starting from 1, of the attempt
+     * @param startTime
+     *            the value of the ticker at the start of the first attempt
+     * @param cumulativeSleepTime
+     *            the time slept between the previous attempts of the call, in milliseconds
+     * @param history
+     *            the history of the call, or <code>null</code>
+     * @return the attempt
+     */
+    Attempt<V> exceptionAttempt(
+            final Throwable cause,
+            final int attemptNumber,
+            final long startTime,
+            final long cumulativeSleepTime,
+            final AttemptHistory history) {
+        return new ExceptionAttempt<>(cause, attemptNumber, millisSince(startTime), ticker.read(), 0L,
+                -1L, cumulativeSleepTime, history);
+    }
+
+    private List<Future<V>> fanOut(
+            final Collection<? extends Callable<V>> callables,
+            final Executor executor,
+            final StopStrategy groupStopStrategy) {
+        Preconditions.checkNotNull(callables, "callables may not be null");
+        Preconditions.checkNotNull(executor, "executor may not be null");
+        Preconditions.checkNotNull(groupStopStrategy, "groupStopStrategy may not be null");
+        final AtomicInteger groupAttempts = new AtomicInteger();
+        final long groupStartTime = ticker.read();
+        final List<Future<V>> futures = new ArrayList<>(callables.size());
+        for (final Callable<V> callable : callables) {
+            final FanOutTask task = new FanOutTask(callable, executor, groupStopStrategy, groupAttempts,
+                    groupStartTime);
+            futures.add(task.future);
+            try {
+                executor.execute(task);
+            } catch (final RejectedExecutionException e) {
+                task.future.completeExceptionally(e);
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * Returns the most recent failed attempts of this retryer, across all of its calls, oldest
+     * first. Failed attempts are only recorded if enabled with
+     * {@link RetryerBuilder#withRecentFailures(int)}; otherwise, the returned list is empty.
+     *
+     * @return the most recent failed attempts
+     */
+    public List<RecentFailures.Failure> getRecentFailures() {
+        return recentFailures != null ? recentFailures.snapshot()
+                : Collections.<RecentFailures.Failure> emptyList();
+    }
+
+    /**
+     * Returns the listeners of this retryer, in the order in which they are notified.
+     *
+     * @return a snapshot of the listeners of this retryer
+     */
+    public List<RetryListener> getRetryListeners() {
+        return Collections.unmodifiableList(Arrays.asList(listeners.all.clone()));
+    }
+
+    /**
+     * Notifies the listeners that the retryer gave up after the given failed attempt, for reasons
+     * other than {@link #shouldStop(Attempt)}, and emits a {@link RetryEvents} give up event.
+     *
+     * @param lastFailedAttempt
+     *            the last failed attempt
+     */
+    void giveUp(final Attempt<V> lastFailedAttempt) {
+        RetryEvents.giveUp(lastFailedAttempt);
+        for (final RetryListener listener : listeners.giveUp) {
+            listener.onGiveUp(lastFailedAttempt);
+        }
+    }
+
+    /**
+     * Returns the ticker used to measure the times of the attempts.
+     *
+     * @return the ticker
+     */
+    Ticker getTicker() {
+        return ticker;
+    }
+
+    /**
+     * Returns <code>true</code> if the rejection predicate rejected the attempt of the given
+     * outcome, i.e. if the attempt must be retried, and notifies the listeners of the success or
+     * failure of the attempt.
+     *
+     * @param outcome
+     *            the outcome of the attempt, as returned by
+     *            {@link #attempt(Callable, int, long, long, AttemptHistory)}
+     * @return <code>true</code> if the attempt was rejected
+     */
+    boolean isRejected(final Outcome<V> outcome) {
+        return notifyOutcome(outcome.attempt, outcome.rejected);
+    }
+
+    private long millisSince(final long startTime) {
+        return TimeUnit.NANOSECONDS.toMillis(ticker.read() - startTime);
+    }
+
+    /**
+     * Returns a new history for a call, or <code>null</code> if attempt histories are not enabled.
+     *
+     * @return a new attempt history, or <code>null</code>
+     */
+    AttemptHistory newAttemptHistory() {
+        return attemptHistorySize != 0 ? new AttemptHistory(attemptHistorySize) : null;
+    }
+
+    /**
+     * Records the given attempt if it was rejected, notifies the listeners of its success or
+     * failure, and returns whether it was rejected.
+     */
+    private boolean notifyOutcome(final Attempt<V> attempt, final boolean rejected) {
+        if (rejected) {
+            if (recentFailures != null) {
+                recentFailures.record(attempt);
+            }
+            for (final RetryListener listener : listeners.failure) {
+                listener.onFailure(attempt);
+            }
+        } else {
+            for (final RetryListener listener : listeners.success) {
+                listener.onSuccess(attempt);
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * Returns a {@link RetryException} for a call which failed after the given number of attempts,
+     * which fills in its stack trace unless configured otherwise with
+     * {@link RetryerBuilder#withoutRetryExceptionStackTraces()}.
+     *
+     * @param numberOfFailedAttempts
+     *            the number of failed attempts
+     * @param lastFailedAttempt
+     *            the last failed attempt
+     * @return a new exception
+     */
+    RetryException newRetryException(final int numberOfFailedAttempts, final Attempt<?> lastFailedAttempt) {
+        return new RetryException(numberOfFailedAttempts, lastFailedAttempt, retryExceptionStackTrace);
+    }
+
+    /**
+     * Removes the first occurrence of the given listener from this retryer. Calls in progress may
+     * still notify the listener of the event they are notifying.
+     *
+     * @param listener
+     *            the listener to remove
+     * @return <code>true</code> if the listener was removed, <code>false</code> if it was not a
+     *         listener of this retryer
+     */
+    public boolean removeRetryListener(@Nonnull final RetryListener listener) {
+        Preconditions.checkNotNull(listener, "listener may not be null");
+        synchronized (listenersLock) {
+            final RetryListener[] all = listeners.all;
+            for (int i = 0; i < all.length; i++) {
+                if (all[i].equals(listener)) {
+                    final RetryListener[] remaining = new RetryListener[all.length - 1];
+                    System.arraycopy(all, 0, remaining, 0, i);
+                    System.arraycopy(all, i + 1, remaining, i, remaining.length - i);
+                    listeners = new Listeners(remaining);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the retryer must stop retrying after the given failed attempt,
+     * either because of the stop strategy or because the retry budget has been exhausted, in which
+     * case the listeners are notified that the retryer gave up.
+     *
+     * @param failedAttempt
+     *            the previous failed attempt
+     * @return <code>true</code> if the retryer must stop
+     */
+    boolean shouldStop(final Attempt<V> failedAttempt) {
+        if (stopStrategy.shouldStop(failedAttempt) || !retryBudget.tryAcquire(failedAttempt)) {
+            giveUp(failedAttempt);
+            return true;
         }
+        return false;
     }
 
     /**
@@ -18,6 +18,7 @@ package com.arakelian.retry;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 
 import javax.annotation.Nonnull;
@@ -112,6 +113,20 @@ public class RetryerBuilder<V> {
 
     private final List<RetryListener> listeners = new ArrayList<>();
 
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    private RetryBudget retryBudget;
+
+    private int recentFailures;
+
+    private int attemptHistorySize;
+
+    private boolean retryExceptionStackTrace = true;
+
+    private boolean attemptCpuTime;
+
+    private Ticker ticker;
+
     private RetryerBuilder() {
     }
 
@@ -121,16 +136,59 @@ public class RetryerBuilder<V> {
      * @return the built retryer.
      */
     public Retryer<V> build() {
-        final AttemptTimeLimiter<V> theAttemptTimeLimiter = attemptTimeLimiter == null
-                ? AttemptTimeLimiters.<V> noTimeLimit()
-                : attemptTimeLimiter;
-        final StopStrategy theStopStrategy = stopStrategy == null ? StopStrategies.neverStop() : stopStrategy;
-        final WaitStrategy theWaitStrategy = waitStrategy == null ? WaitStrategies.noWait() : waitStrategy;
-        final BlockStrategy theBlockStrategy = blockStrategy == null ? BlockStrategies.threadSleepStrategy()
-                : blockStrategy;
+        return new Retryer<>(this);
+    }
+
+    int getAttemptHistorySize() {
+        return attemptHistorySize;
+    }
+
+    AttemptTimeLimiter<V> getAttemptTimeLimiter() {
+        return attemptTimeLimiter == null ? AttemptTimeLimiters.<V> noTimeLimit() : attemptTimeLimiter;
+    }
+
+    BlockStrategy getBlockStrategy() {
+        return blockStrategy == null ? BlockStrategies.threadSleepStrategy() : blockStrategy;
+    }
+
+    ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter == null ? ConcurrencyLimiters.noLimit() : concurrencyLimiter;
+    }
+
+    List<RetryListener> getListeners() {
+        return listeners;
+    }
+
+    RecentFailures newRecentFailures() {
+        return recentFailures != 0 ? new RecentFailures(recentFailures) : null;
+    }
+
+    Predicate<Attempt<V>> getRejectionPredicate() {
+        return rejectionPredicate;
+    }
+
+    RetryBudget getRetryBudget() {
+        return retryBudget == null ? RetryBudgets.unlimited() : retryBudget;
+    }
+
+    boolean isAttemptCpuTime() {
+        return attemptCpuTime;
+    }
 
-        return new Retryer<>(theAttemptTimeLimiter, theStopStrategy, theWaitStrategy, theBlockStrategy,
-                rejectionPredicate, listeners);
+    boolean isRetryExceptionStackTrace() {
+        return retryExceptionStackTrace;
+    }
+
+    StopStrategy getStopStrategy() {
+        return stopStrategy == null ? StopStrategies.neverStop() : stopStrategy;
+    }
+
+    Ticker getTicker() {
+        return ticker == null ? Ticker.systemTicker() : ticker;
+    }
+
+    WaitStrategy getWaitStrategy() {
+        return waitStrategy == null ? WaitStrategies.noWait() : waitStrategy;
     }
 
     /**
@@ -199,6 +257,37 @@ public class RetryerBuilder<V> {
         return this;
     }
 
+    /**
+     * Configures the retryer to measure the CPU time used by each attempt, available from
+     * {@link Attempt#getCpuTime()}, with {@link java.lang.management.ThreadMXBean}. The CPU time is
+     * measured on the thread which makes the attempt, so it does not include the work of other
+     * threads, such as an attempt time limiter which calls the callable on an executor. The default
+     * is not to measure CPU time; it is also not measured if the JVM does not support it.
+     *
+     * @return <code>this</code>
+     */
+    public RetryerBuilder<V> withAttemptCpuTime() {
+        this.attemptCpuTime = true;
+        return this;
+    }
+
+    /**
+     * Configures the retryer to record the history of the attempts of each call, which is available
+     * from {@link Attempt#getAttemptHistory()} and {@link RetryException#getAttemptHistory()}. The
+     * default is not to record histories, in which case no history is allocated.
+     *
+     * @param maxEntries
+     *            the maximum number of entries of each history, where consecutive attempts which
+     *            failed in the same way share an entry
+     * @return <code>this</code>
+     * @see AttemptHistory
+     */
+    public RetryerBuilder<V> withAttemptHistory(final int maxEntries) {
+        Preconditions.checkArgument(maxEntries >= 1, "maxEntries must be >= 1 but is %s", maxEntries);
+        this.attemptHistorySize = maxEntries;
+        return this;
+    }
+
     /**
      * Configures the retryer to limit the duration of any particular attempt by the given duration.
      *
@@ -233,6 +322,113 @@ public class RetryerBuilder<V> {
         return this;
     }
 
+    /**
+     * Sets the concurrency limiter used to decide whether an attempt may execute. The default is to
+     * allow an unlimited number of concurrent attempts. An attempt that is not granted a permit
+     * results in a {@link ConcurrencyLimitException}, which is retried or not according to the
+     * configured retry conditions.
+     *
+     * @param concurrencyLimiter
+     *            the limiter applied to each attempt
+     * @return <code>this</code>
+     * @throws IllegalStateException
+     *             if a concurrency limiter has already been set.
+     */
+    public RetryerBuilder<V> withConcurrencyLimiter(@Nonnull final ConcurrencyLimiter concurrencyLimiter)
+            throws IllegalStateException {
+        Preconditions.checkNotNull(concurrencyLimiter, "concurrencyLimiter may not be null");
+        Preconditions.checkState(
+                this.concurrencyLimiter == null,
+                "a concurrency limiter has already been set %s",
+                this.concurrencyLimiter);
+        this.concurrencyLimiter = concurrencyLimiter;
+        return this;
+    }
+
+    /**
+     * Configures the retryer to execute at most {@code maxConcurrentAttempts} attempts at the same
+     * time. Attempts in excess of the limit are rejected immediately with a
+     * {@link ConcurrencyLimitException}.
+     *
+     * @param maxConcurrentAttempts
+     *            the maximum number of attempts that may execute concurrently
+     * @return <code>this</code>
+     * @throws IllegalStateException
+     *             if a concurrency limiter has already been set.
+     * @see ConcurrencyLimiters#semaphore(int)
+     */
+    public RetryerBuilder<V> withMaxConcurrentAttempts(final int maxConcurrentAttempts)
+            throws IllegalStateException {
+        return withConcurrencyLimiter(ConcurrencyLimiters.semaphore(maxConcurrentAttempts));
+    }
+
+    /**
+     * Configures the retryer to execute at most {@code maxConcurrentAttempts} attempts at the same
+     * time, allowing up to {@code maxWaitingAttempts} additional attempts to wait for a permit for
+     * at most the given timeout. Attempts that cannot obtain a permit are rejected with a
+     * {@link ConcurrencyLimitException}.
+     *
+     * @param maxConcurrentAttempts
+     *            the maximum number of attempts that may execute concurrently
+     * @param maxWaitingAttempts
+     *            the maximum number of attempts that may wait for a permit
+     * @param timeout
+     *            the maximum time to wait for a permit
+     * @param timeUnit
+     *            the unit of the timeout
+     * @return <code>this</code>
+     * @throws IllegalStateException
+     *             if a concurrency limiter has already been set.
+     * @see ConcurrencyLimiters#semaphore(int, int, long, TimeUnit)
+     */
+    public RetryerBuilder<V> withMaxConcurrentAttempts(
+            final int maxConcurrentAttempts,
+            final int maxWaitingAttempts,
+            final long timeout,
+            @Nonnull final TimeUnit timeUnit) throws IllegalStateException {
+        return withConcurrencyLimiter(
+                ConcurrencyLimiters.semaphore(maxConcurrentAttempts, maxWaitingAttempts, timeout, timeUnit));
+    }
+
+    /**
+     * Configures the retryer to retain a summary of its most recent failed attempts, across all of
+     * its calls, which can be queried with {@link Retryer#getRecentFailures()}. The default is not
+     * to retain failed attempts.
+     *
+     * @param capacity
+     *            the maximum number of failed attempts retained; once reached, each failed attempt
+     *            overwrites the oldest one
+     * @return <code>this</code>
+     * @see RecentFailures
+     */
+    public RetryerBuilder<V> withRecentFailures(final int capacity) {
+        Preconditions.checkArgument(capacity >= 1, "capacity must be >= 1 but is %s", capacity);
+        this.recentFailures = capacity;
+        return this;
+    }
+
+    /**
+     * Sets the budget which limits the rate of retries. The budget is consulted after the stop
+     * strategy has decided to retry, and the retryer stops if the budget has been exhausted. The
+     * default is to allow an unlimited number of retries.
+     *
+     * @param retryBudget
+     *            the budget used to admit retries, which may be shared by several retryers
+     * @return <code>this</code>
+     * @throws IllegalStateException
+     *             if a retry budget has already been set.
+     */
+    public RetryerBuilder<V> withRetryBudget(@Nonnull final RetryBudget retryBudget)
+            throws IllegalStateException {
+        Preconditions.checkNotNull(retryBudget, "retryBudget may not be null");
+        Preconditions.checkState(
+                this.retryBudget == null,
+                "a retry budget has already been set %s",
+                this.retryBudget);
+        this.retryBudget = retryBudget;
+        return this;
+    }
+
     /**
      * Adds a listener that will be notified of each attempt that is made
      *
@@ -267,6 +463,25 @@ public class RetryerBuilder<V> {
         return this;
     }
 
+    /**
+     * Sets the ticker used to measure the times of the attempts, such as
+     * {@link Attempt#getDelaySinceFirstAttempt()}, on which stop and wait strategies depend. The
+     * default is {@link Ticker#systemTicker()}. A {@link VirtualClock}, also set as the block
+     * strategy, runs the retry schedule in virtual time.
+     *
+     * @param ticker
+     *            the source of the times of the attempts
+     * @return <code>this</code>
+     * @throws IllegalStateException
+     *             if a ticker has already been set.
+     */
+    public RetryerBuilder<V> withTicker(@Nonnull final Ticker ticker) throws IllegalStateException {
+        Preconditions.checkNotNull(ticker, "ticker may not be null");
+        Preconditions.checkState(this.ticker == null, "a ticker has already been set %s", this.ticker);
+        this.ticker = ticker;
+        return this;
+    }
+
     /**
      * Sets the wait strategy used to decide how long to sleep between failed attempts. The default
      * strategy is to retry immediately after a failed attempt.
@@ -287,4 +502,16 @@ public class RetryerBuilder<V> {
         this.waitStrategy = waitStrategy;
         return this;
     }
+
+    /**
+     * Configures the retryer to throw {@link RetryException}s without a stack trace, which makes
+     * giving up cheaper. The cause of the exception, which is the exception thrown by the last
+     * failed attempt, if any, keeps its own stack trace.
+     *
+     * @return <code>this</code>
+     */
+    public RetryerBuilder<V> withoutRetryExceptionStackTraces() {
+        this.retryExceptionStackTrace = false;
+        return this;
+    }
 }
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A registry of named {@link Retryer} instances, created on first use from a template
+ * {@link RetryerSpec}, which share heavyweight resources and are drained together on shutdown.
+ * <p>
+ * Retryers built separately each own their resources: for example, every
+ * {@link AttemptTimeLimiters#fixedTimeLimit(long, TimeUnit)} creates a thread pool of its own. The
+ * retryers of a registry instead enforce their attempt time limits on a single executor, and
+ * optionally share a single {@link RetryBudget}, so that the retries of all the call sites of an
+ * application are bounded together.
+ * </p>
+ * <p>
+ * The registry counts the calls, attempts, successes and give-ups of each retryer, and the calls in
+ * progress, each callable of {@link Retryer#callAll} or {@link Retryer#callAny} counting as a call.
+ * {@link #shutdown(long, TimeUnit)} stops creating retryers and waits for the calls in progress to
+ * complete. Tasks of a {@link RetryingExecutorService} or a {@link DurableRetryQueue} are not
+ * tracked; shut those down before the registry.
+ * </p>
+ * <p>
+ * The retryers of a registry accept results of any type, since a specification cannot reject
+ * results.
+ * </p>
+ */
+@ThreadSafe
+public final class RetryerRegistry {
+    /**
+     * A snapshot of the counters of one or more retryers of a registry.
+     */
+    @Immutable
+    public static final class Stats {
+        private final long calls;
+        private final long attempts;
+        private final long successes;
+        private final long giveUps;
+        private final long inFlight;
+
+        private Stats(
+                final long calls,
+                final long attempts,
+                final long successes,
+                final long giveUps,
+                final long inFlight) {
+            this.calls = calls;
+            this.attempts = attempts;
+            this.successes = successes;
+            this.giveUps = giveUps;
+            this.inFlight = inFlight;
+        }
+
+        /**
+         * The average number of attempts per call, or 0 if no call was made.
+         *
+         * @return the retry amplification
+         */
+        public double getAmplification() {
+            return calls != 0L ? (double) attempts / calls : 0.0d;
+        }
+
+        /**
+         * The number of attempts made.
+         *
+         * @return the number of attempts
+         */
+        public long getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * The number of calls started.
+         *
+         * @return the number of calls
+         */
+        public long getCalls() {
+            return calls;
+        }
+
+        /**
+         * The number of calls which ended because the retryer gave up.
+         *
+         * @return the number of calls given up
+         */
+        public long getGiveUps() {
+            return giveUps;
+        }
+
+        /**
+         * The number of calls in progress.
+         *
+         * @return the number of calls in progress
+         */
+        public long getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * The number of calls which ended with an accepted attempt.
+         *
+         * @return the number of successful calls
+         */
+        public long getSuccesses() {
+            return successes;
+        }
+
+        private Stats plus(final Stats other) {
+            return new Stats(calls + other.calls, attempts + other.attempts, successes + other.successes,
+                    giveUps + other.giveUps, inFlight + other.inFlight);
+        }
+
+        @Override
+        public String toString() {
+            return "Stats [calls=" + calls + ", attempts=" + attempts + ", successes=" + successes
+                    + ", giveUps=" + giveUps + ", inFlight=" + inFlight + "]";
+        }
+    }
+
+    /**
+     * The retryer of a name, and the listener which counts its calls.
+     */
+    private final class Entry implements RetryListener {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder attempts = new LongAdder();
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder giveUps = new LongAdder();
+        private final AtomicLong inFlight = new AtomicLong();
+        private final Retryer<Object> retryer;
+
+        public Entry(final RetryerSpec spec) {
+            final RetryerBuilder<Object> builder = spec.toBuilder(attemptTimeoutExecutor);
+            if (retryBudget != null) {
+                builder.withRetryBudget(retryBudget);
+            }
+            this.retryer = builder.withRetryListener(this).build();
+        }
+
+        @Override
+        public void beforeAttempt(final long attemptNumber, final long delaySinceFirstAttempt) {
+            attempts.increment();
+            if (attemptNumber == 1L) {
+                calls.increment();
+                inFlight.incrementAndGet();
+                totalInFlight.incrementAndGet();
+            }
+        }
+
+        private void callDone() {
+            inFlight.decrementAndGet();
+            if (totalInFlight.decrementAndGet() == 0L && shutdown) {
+                synchronized (drained) {
+                    drained.notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public <V> void onGiveUp(final Attempt<V> lastFailedAttempt) {
+            giveUps.increment();
+            callDone();
+        }
+
+        @Override
+        public <V> void onSuccess(final Attempt<V> attempt) {
+            successes.increment();
+            callDone();
+        }
+
+        private Stats snapshot() {
+            return new Stats(calls.sum(), attempts.sum(), successes.sum(), giveUps.sum(), inFlight.get());
+        }
+    }
+
+    private final RetryerSpec template;
+    private final Map<String, RetryerSpec> specs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /** Executor created by the registry, shut down with it **/
+    private final ExecutorService ownExecutor;
+
+    private volatile ExecutorService attemptTimeoutExecutor;
+    private volatile RetryBudget retryBudget;
+    private final AtomicLong totalInFlight = new AtomicLong();
+
+    /** Monitor notified when the last call in progress completes after shutdown **/
+    private final Object drained = new Object();
+
+    private volatile boolean shutdown;
+
+    /**
+     * Creates a registry whose retryers are built from the given template, unless configured
+     * otherwise with {@link #withSpec(String, RetryerSpec)}.
+     *
+     * @param template
+     *            the specification of the retryers
+     */
+    public RetryerRegistry(@Nonnull final RetryerSpec template) {
+        this.template = Preconditions.checkNotNull(template, "template may not be null");
+        this.ownExecutor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("retryer-registry-%d").build());
+        this.attemptTimeoutExecutor = ownExecutor;
+    }
+
+    private void checkNotStarted() {
+        Preconditions.checkState(entries.isEmpty(), "retryers have already been created");
+    }
+
+    /**
+     * Returns the retryer of the given name, which is created on first use.
+     *
+     * @param name
+     *            the name of the retryer
+     * @param <V>
+     *            result of a {@link Retryer}'s call, the type of the call return value
+     * @return the retryer of the given name
+     * @throws IllegalStateException
+     *             if the retryer does not exist yet and the registry has been shut down
+     */
+    @SuppressWarnings("unchecked")
+    public <V> Retryer<V> getRetryer(@Nonnull final String name) throws IllegalStateException {
+        Preconditions.checkNotNull(name, "name may not be null");
+        final Entry entry = entries.computeIfAbsent(name, n -> {
+            Preconditions.checkState(!shutdown, "registry has been shut down");
+            return new Entry(getSpec(n));
+        });
+        // no result predicate, so that the retryer accepts results of any type
+        return (Retryer<V>) (Retryer<?>) entry.retryer;
+    }
+
+    /**
+     * Returns the specification of the retryer of the given name.
+     *
+     * @param name
+     *            the name of the retryer
+     * @return the specification of the retryer
+     */
+    public RetryerSpec getSpec(@Nonnull final String name) {
+        Preconditions.checkNotNull(name, "name may not be null");
+        return specs.getOrDefault(name, template);
+    }
+
+    /**
+     * Returns a snapshot of the counters of each retryer created so far, by name.
+     *
+     * @return the counters of each retryer, sorted by name
+     */
+    public SortedMap<String, Stats> getStats() {
+        final SortedMap<String, Stats> stats = new TreeMap<>();
+        for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return stats;
+    }
+
+    /**
+     * Returns a snapshot of the counters of all the retryers created so far, added together.
+     *
+     * @return the aggregate counters
+     */
+    public Stats getTotalStats() {
+        Stats total = new Stats(0L, 0L, 0L, 0L, 0L);
+        for (final Entry entry : entries.values()) {
+            total = total.plus(entry.snapshot());
+        }
+        return total;
+    }
+
+    /**
+     * Returns <code>true</code> if {@link #shutdown(long, TimeUnit)} has been called.
+     *
+     * @return <code>true</code> if the registry has been shut down
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Stops creating retryers, and waits up to the given time for the calls in progress to
+     * complete. The retryers already created remain usable, but calls they start from now on also
+     * delay the completion of the shutdown.
+     * <p>
+     * Once the calls are drained, the executor created by the registry is shut down. If the
+     * deadline passes first, that executor is shut down immediately, which interrupts the attempts
+     * running under a time limit on it. An executor given to
+     * {@link #withAttemptTimeoutExecutor(ExecutorService)} is never shut down by the registry.
+     * </p>
+     *
+     * @param timeout
+     *            the maximum time to wait
+     * @param unit
+     *            the time unit of the timeout
+     * @return <code>true</code> if every call completed, <code>false</code> if the deadline passed
+     *         first
+     * @throws InterruptedException
+     *             if the thread was interrupted while waiting
+     */
+    public boolean shutdown(final long timeout, @Nonnull final TimeUnit unit) throws InterruptedException {
+        Preconditions.checkNotNull(unit, "unit may not be null");
+        shutdown = true;
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (drained) {
+            while (totalInFlight.get() != 0L) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    ownExecutor.shutdownNow();
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(drained, remaining);
+            }
+        }
+        ownExecutor.shutdown();
+        return true;
+    }
+
+    /**
+     * Sets the executor on which the retryers enforce the time limits of their attempts, instead
+     * of a cached thread pool of daemon threads created by the registry.
+     *
+     * @param attemptTimeoutExecutor
+     *            the executor shared by the time limiters of the retryers
+     * @return <code>this</code>
+     * @throws IllegalStateException
+     *             if a retryer has already been created
+     */
+    public RetryerRegistry withAttemptTimeoutExecutor(@Nonnull final ExecutorService attemptTimeoutExecutor)
+            throws IllegalStateException {
+        Preconditions.checkNotNull(attemptTimeoutExecutor, "attemptTimeoutExecutor may not be null");
+        checkNotStarted();
+        this.attemptTimeoutExecutor = attemptTimeoutExecutor;
+        return this;
+    }
+
+    /**
+     * Sets a retry budget shared by all the retryers, so that they draw their retries from a
+     * single budget.
+     *
+     * @param retryBudget
+     *            the shared retry budget
+     * @return <code>this</code>
+     * @throws IllegalStateException
+     *             if a retryer has already been created
+     */
+    public RetryerRegistry withRetryBudget(@Nonnull final RetryBudget retryBudget)
+            throws IllegalStateException {
+        Preconditions.checkNotNull(retryBudget, "retryBudget may not be null");
+        checkNotStarted();
+        this.retryBudget = retryBudget;
+        return this;
+    }
+
+    /**
+     * Configures the retryer of the given name with the entries of the given specification, which
+     * override those of the template.
+     *
+     * @param name
+     *            the name of the retryer
+     * @param overrides
+     *            the entries which override those of the template
+     * @return <code>this</code>
+     * @throws IllegalArgumentException
+     *             if the entries cannot be combined with those of the template
+     * @throws IllegalStateException
+     *             if the retryer of the given name has already been created
+     */
+    public RetryerRegistry withSpec(@Nonnull final String name, @Nonnull final RetryerSpec overrides)
+            throws IllegalStateException {
+        Preconditions.checkNotNull(name, "name may not be null");
+        Preconditions.checkNotNull(overrides, "overrides may not be null");
+        Preconditions.checkState(!entries.containsKey(name), "retryer %s has already been created", name);
+        final Map<String, String> merged = new TreeMap<>(template.getEntries());
+        merged.putAll(overrides.getEntries());
+        specs.put(name, RetryerSpec.fromMap(merged));
+        return this;
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A specification of a retry policy, parsed from a string, a map or properties, which configures a
+ * {@link RetryerBuilder}. It allows retry policies to be changed without code changes, for
+ * example with a {@link ReloadableRetryer}.
+ * <p>
+ * A specification is a comma-separated list of <code>key=value</code> entries, such as
+ * <code>stopAfterAttempt=5,exponentialWait=100ms:30s,retryIfException=true</code>. Durations
+ * are an integer followed by a unit: <code>ms</code>, <code>s</code>, <code>m</code>,
+ * <code>h</code> or <code>d</code>. The supported keys are:
+ * </p>
+ * <ul>
+ * <li><code>stopAfterAttempt=5</code>: see {@link StopStrategies#stopAfterAttempt(int)}</li>
+ * <li><code>stopAfterDelay=30s</code>: see {@link StopStrategies#stopAfterDelay(long, TimeUnit)};
+ * with <code>stopAfterAttempt</code>, the retryer stops at whichever is reached first</li>
+ * <li><code>fixedWait=100ms</code>: see {@link WaitStrategies#fixedWait(long, TimeUnit)}</li>
+ * <li><code>randomWait=1s</code> or <code>randomWait=100ms:1s</code>: see
+ * {@link WaitStrategies#randomWait(long, TimeUnit, long, TimeUnit)}</li>
+ * <li><code>incrementingWait=100ms:50ms</code>: initial sleep time and increment, see
+ * {@link WaitStrategies#incrementingWait(long, TimeUnit, long, TimeUnit)}</li>
+ * <li><code>exponentialWait=100ms:30s</code>: multiplier and maximum, see
+ * {@link WaitStrategies#exponentialWait(long, long, TimeUnit)}</li>
+ * <li><code>fibonacciWait=100ms:30s</code>: multiplier and maximum, see
+ * {@link WaitStrategies#fibonacciWait(long, long, TimeUnit)}</li>
+ * <li><code>blockStrategy=sleep</code> or <code>blockStrategy=managed</code>: see
+ * {@link BlockStrategies}</li>
+ * <li><code>attemptTimeout=5s</code>: see {@link AttemptTimeLimiters#fixedTimeLimit(long, TimeUnit)}
+ * </li>
+ * <li><code>retryIfException=true</code> and <code>retryIfRuntimeException=true</code>: see
+ * {@link RetryerBuilder#retryIfException()} and {@link RetryerBuilder#retryIfRuntimeException()}
+ * </li>
+ * <li><code>retryIfExceptionOfType=java.io.IOException|java.util.concurrent.TimeoutException</code>:
+ * see {@link RetryerBuilder#retryIfExceptionOfType(Class)}</li>
+ * <li><code>maxConcurrentAttempts=10</code>: see {@link RetryerBuilder#withMaxConcurrentAttempts(int)}
+ * </li>
+ * <li><code>attemptHistory=10</code>: see {@link RetryerBuilder#withAttemptHistory(int)}</li>
+ * <li><code>recentFailures=100</code>: see {@link RetryerBuilder#withRecentFailures(int)}</li>
+ * </ul>
+ * <p>
+ * Several wait strategies are joined, see {@link WaitStrategies#join(WaitStrategy...)}. The
+ * strategies are created when the specification is parsed, so that an invalid specification is
+ * rejected with an {@link IllegalArgumentException} before it is used.
+ * </p>
+ */
+@Immutable
+public final class RetryerSpec {
+    private static final Pattern DURATION = Pattern.compile("(\\d+)(ms|s|m|h|d)");
+
+    /**
+     * Returns the specification of the given entries.
+     *
+     * @param entries
+     *            the entries of the specification
+     * @return the specification
+     * @throws IllegalArgumentException
+     *             if an entry is invalid
+     */
+    public static RetryerSpec fromMap(@Nonnull final Map<String, String> entries) {
+        Preconditions.checkNotNull(entries, "entries may not be null");
+        return new RetryerSpec(new TreeMap<>(entries));
+    }
+
+    /**
+     * Returns the specification of the properties whose names start with the given prefix, which
+     * is removed from their names. For example, with the prefix <code>retry.</code>, the property
+     * <code>retry.stopAfterAttempt=5</code> is the entry <code>stopAfterAttempt=5</code>.
+     *
+     * @param properties
+     *            the properties
+     * @param prefix
+     *            the prefix of the names of the properties of the specification
+     * @return the specification
+     * @throws IllegalArgumentException
+     *             if an entry is invalid
+     */
+    public static RetryerSpec fromProperties(
+            @Nonnull final Properties properties,
+            @Nonnull final String prefix) {
+        Preconditions.checkNotNull(properties, "properties may not be null");
+        Preconditions.checkNotNull(prefix, "prefix may not be null");
+        final SortedMap<String, String> entries = new TreeMap<>();
+        for (final String name : properties.stringPropertyNames()) {
+            if (name.startsWith(prefix)) {
+                entries.put(name.substring(prefix.length()), properties.getProperty(name));
+            }
+        }
+        return new RetryerSpec(entries);
+    }
+
+    /**
+     * Returns a stop strategy which stops when either of the given strategies stops.
+     */
+    private static StopStrategy or(final StopStrategy first, final StopStrategy second) {
+        return first == null ? second
+                : failedAttempt -> first.shouldStop(failedAttempt) || second.shouldStop(failedAttempt);
+    }
+
+    /**
+     * Returns the specification of the given string.
+     *
+     * @param specification
+     *            a comma-separated list of <code>key=value</code> entries
+     * @return the specification
+     * @throws IllegalArgumentException
+     *             if an entry is invalid
+     */
+    public static RetryerSpec parse(@Nonnull final String specification) {
+        Preconditions.checkNotNull(specification, "specification may not be null");
+        final SortedMap<String, String> entries = new TreeMap<>();
+        for (final String entry : specification.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            final int equals = entry.indexOf('=');
+            Preconditions.checkArgument(equals > 0, "entry must be of the form key=value but is %s", entry);
+            final String key = entry.substring(0, equals).trim();
+            Preconditions.checkArgument(!entries.containsKey(key), "key %s is repeated", key);
+            entries.put(key, entry.substring(equals + 1));
+        }
+        return new RetryerSpec(entries);
+    }
+
+    private static boolean parseBoolean(final String key, final String value) {
+        Preconditions.checkArgument(
+                "true".equals(value.trim()) || "false".equals(value.trim()),
+                "%s must be true or false but is %s",
+                key,
+                value);
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    private static Class<? extends Throwable> parseExceptionClass(final String key, final String name) {
+        final ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+        final ClassLoader loader = contextLoader != null ? contextLoader : RetryerSpec.class.getClassLoader();
+        try {
+            return Class.forName(name.trim(), false, loader).asSubclass(Throwable.class);
+        } catch (final ClassNotFoundException | ClassCastException e) {
+            throw new IllegalArgumentException(key + " must name exception classes but names " + name, e);
+        }
+    }
+
+    private static int parseInt(final String key, final String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be an integer but is " + value, e);
+        }
+    }
+
+    /**
+     * Parses a duration, such as <code>100ms</code>, into milliseconds.
+     */
+    private static long parseMillis(final String key, final String value) {
+        final Matcher matcher = DURATION.matcher(value.trim());
+        Preconditions.checkArgument(
+                matcher.matches(),
+                "%s must be a duration such as 100ms but is %s",
+                key,
+                value);
+        final long duration = Long.parseLong(matcher.group(1));
+        switch (matcher.group(2)) {
+        case "ms":
+            return duration;
+        case "s":
+            return TimeUnit.SECONDS.toMillis(duration);
+        case "m":
+            return TimeUnit.MINUTES.toMillis(duration);
+        case "h":
+            return TimeUnit.HOURS.toMillis(duration);
+        default:
+            return TimeUnit.DAYS.toMillis(duration);
+        }
+    }
+
+    /**
+     * Parses the given number of colon-separated durations into milliseconds.
+     */
+    private static long[] parseMillis(final String key, final String value, final int count) {
+        final String[] parts = value.split(":");
+        Preconditions.checkArgument(
+                parts.length == count,
+                "%s must have %s durations but is %s",
+                key,
+                count,
+                value);
+        final long[] durations = new long[count];
+        for (int i = 0; i < count; i++) {
+            durations[i] = parseMillis(key, parts[i]);
+        }
+        return durations;
+    }
+
+    /** The entries of the specification, sorted by key **/
+    private final SortedMap<String, String> entries;
+
+    private final StopStrategy stopStrategy;
+    private final WaitStrategy waitStrategy;
+    private final BlockStrategy blockStrategy;
+
+    /** The time limit of each attempt, in milliseconds, or -1 if attempts are not time limited **/
+    private final long attemptTimeout;
+
+    private final boolean retryIfException;
+    private final boolean retryIfRuntimeException;
+    private final List<Class<? extends Throwable>> retryIfExceptionOfType;
+    private final int maxConcurrentAttempts;
+    private final int attemptHistory;
+    private final int recentFailures;
+
+    private RetryerSpec(final SortedMap<String, String> entries) {
+        this.entries = Collections.unmodifiableSortedMap(entries);
+
+        StopStrategy stop = null;
+        final List<WaitStrategy> waits = new ArrayList<>();
+        BlockStrategy block = null;
+        long timeout = -1L;
+        boolean exception = false;
+        boolean runtimeException = false;
+        final List<Class<? extends Throwable>> exceptionClasses = new ArrayList<>();
+        int concurrentAttempts = 0;
+        int history = 0;
+        int failures = 0;
+
+        for (final Map.Entry<String, String> entry : entries.entrySet()) {
+            final String key = entry.getKey();
+            final String value = Preconditions
+                    .checkNotNull(entry.getValue(), "value of %s may not be null", key);
+            final long[] durations;
+            switch (key) {
+            case "stopAfterAttempt":
+                stop = or(stop, StopStrategies.stopAfterAttempt(parseInt(key, value)));
+                break;
+            case "stopAfterDelay":
+                stop = or(stop,
+                        StopStrategies.stopAfterDelay(parseMillis(key, value), TimeUnit.MILLISECONDS));
+                break;
+            case "fixedWait":
+                waits.add(WaitStrategies.fixedWait(parseMillis(key, value), TimeUnit.MILLISECONDS));
+                break;
+            case "randomWait":
+                durations = value.contains(":") ? parseMillis(key, value, 2)
+                        : new long[] { 0L, parseMillis(key, value) };
+                waits.add(WaitStrategies.randomWait(durations[0], TimeUnit.MILLISECONDS, durations[1],
+                        TimeUnit.MILLISECONDS));
+                break;
+            case "incrementingWait":
+                durations = parseMillis(key, value, 2);
+                waits.add(WaitStrategies.incrementingWait(durations[0], TimeUnit.MILLISECONDS, durations[1],
+                        TimeUnit.MILLISECONDS));
+                break;
+            case "exponentialWait":
+                durations = parseMillis(key, value, 2);
+                waits.add(WaitStrategies.exponentialWait(durations[0], durations[1], TimeUnit.MILLISECONDS));
+                break;
+            case "fibonacciWait":
+                durations = parseMillis(key, value, 2);
+                waits.add(WaitStrategies.fibonacciWait(durations[0], durations[1], TimeUnit.MILLISECONDS));
+                break;
+            case "blockStrategy":
+                Preconditions.checkArgument(
+                        "sleep".equals(value.trim()) || "managed".equals(value.trim()),
+                        "%s must be sleep or managed but is %s",
+                        key,
+                        value);
+                block = "sleep".equals(value.trim()) ? BlockStrategies.threadSleepStrategy()
+                        : BlockStrategies.managedSleepStrategy();
+                break;
+            case "attemptTimeout":
+                timeout = parseMillis(key, value);
+                break;
+            case "retryIfException":
+                exception = parseBoolean(key, value);
+                break;
+            case "retryIfRuntimeException":
+                runtimeException = parseBoolean(key, value);
+                break;
+            case "retryIfExceptionOfType":
+                for (final String name : value.split("\\|")) {
+                    exceptionClasses.add(parseExceptionClass(key, name));
+                }
+                break;
+            case "maxConcurrentAttempts":
+                concurrentAttempts = parseInt(key, value);
+                Preconditions.checkArgument(concurrentAttempts >= 1, "%s must be >= 1 but is %s", key, value);
+                break;
+            case "attemptHistory":
+                history = parseInt(key, value);
+                Preconditions.checkArgument(history >= 1, "%s must be >= 1 but is %s", key, value);
+                break;
+            case "recentFailures":
+                failures = parseInt(key, value);
+                Preconditions.checkArgument(failures >= 1, "%s must be >= 1 but is %s", key, value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown key " + key);
+            }
+        }
+
+        this.stopStrategy = stop;
+        this.waitStrategy = waits.isEmpty() ? null
+                : waits.size() == 1 ? waits.get(0) : WaitStrategies.join(waits.toArray(new WaitStrategy[0]));
+        this.blockStrategy = block;
+        this.attemptTimeout = timeout;
+        this.retryIfException = exception;
+        this.retryIfRuntimeException = runtimeException;
+        this.retryIfExceptionOfType = Collections.unmodifiableList(exceptionClasses);
+        this.maxConcurrentAttempts = concurrentAttempts;
+        this.attemptHistory = history;
+        this.recentFailures = failures;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj instanceof RetryerSpec && entries.equals(((RetryerSpec) obj).entries);
+    }
+
+    /**
+     * Returns the entries of the specification, sorted by key.
+     *
+     * @return the entries of the specification
+     */
+    public SortedMap<String, String> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public int hashCode() {
+        return entries.hashCode();
+    }
+
+    /**
+     * Returns a new builder configured by this specification. The builder can be further
+     * configured, for example with listeners or result predicates, before the retryer is built.
+     *
+     * @param <V>
+     *            result of a {@link Retryer}'s call, the type of the call return value
+     * @return a new builder
+     */
+    public <V> RetryerBuilder<V> toBuilder() {
+        return toBuilder(attemptTimeout != -1L
+                ? AttemptTimeLimiters.fixedTimeLimit(attemptTimeout, TimeUnit.MILLISECONDS)
+                : null);
+    }
+
+    /**
+     * Returns a new builder configured by this specification, whose attempt time limit, if any,
+     * runs the attempts on the given executor instead of on a thread pool of its own. This allows
+     * the retryers of many specifications to share a single executor.
+     *
+     * @param attemptTimeoutExecutor
+     *            the executor used to enforce the time limit of the attempts
+     * @param <V>
+     *            result of a {@link Retryer}'s call, the type of the call return value
+     * @return a new builder
+     * @see AttemptTimeLimiters#fixedTimeLimit(long, TimeUnit, ExecutorService)
+     */
+    public <V> RetryerBuilder<V> toBuilder(@Nonnull final ExecutorService attemptTimeoutExecutor) {
+        Preconditions.checkNotNull(attemptTimeoutExecutor, "attemptTimeoutExecutor may not be null");
+        return toBuilder(attemptTimeout != -1L ? AttemptTimeLimiters
+                .fixedTimeLimit(attemptTimeout, TimeUnit.MILLISECONDS, attemptTimeoutExecutor) : null);
+    }
+
+    private <V> RetryerBuilder<V> toBuilder(final AttemptTimeLimiter<V> attemptTimeLimiter) {
+        final RetryerBuilder<V> builder = RetryerBuilder.newBuilder();
+        if (stopStrategy != null) {
+            builder.withStopStrategy(stopStrategy);
+        }
+        if (waitStrategy != null) {
+            builder.withWaitStrategy(waitStrategy);
+        }
+        if (blockStrategy != null) {
+            builder.withBlockStrategy(blockStrategy);
+        }
+        if (attemptTimeLimiter != null) {
+            builder.withAttemptTimeLimiter(attemptTimeLimiter);
+        }
+        if (retryIfException) {
+            builder.retryIfException();
+        }
+        if (retryIfRuntimeException) {
+            builder.retryIfRuntimeException();
+        }
+        for (final Class<? extends Throwable> exceptionClass : retryIfExceptionOfType) {
+            builder.retryIfExceptionOfType(exceptionClass);
+        }
+        if (maxConcurrentAttempts != 0) {
+            builder.withMaxConcurrentAttempts(maxConcurrentAttempts);
+        }
+        if (attemptHistory != 0) {
+            builder.withAttemptHistory(attemptHistory);
+        }
+        if (recentFailures != 0) {
+            builder.withRecentFailures(recentFailures);
+        }
+        return builder;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (final Map.Entry<String, String> entry : entries.entrySet()) {
+            if (sb.length() != 0) {
+                sb.append(',');
+            }
+            sb.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+}
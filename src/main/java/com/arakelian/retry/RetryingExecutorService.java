@@ -0,0 +1,451 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * An {@link ExecutorService} which retries failed tasks using a {@link Retryer}, without occupying a
+ * worker thread while a task is waiting for its next attempt.
+ * <p>
+ * Worker threads only ever execute attempts. When an attempt is rejected, the next attempt is
+ * scheduled in a {@link DelayQueue} after the sleep time computed by the wait strategy of the
+ * retryer, and a single dispatcher thread hands tasks back to the workers once they are due. A
+ * small pool of workers can therefore keep a very large number of tasks in backoff. The block
+ * strategy of the retryer is not used.
+ * </p>
+ * <p>
+ * When created with a {@link FairRetryScheduler}, tasks which are due are not handed to the workers
+ * directly. Instead, at most one attempt per worker thread is in progress at any time, and the
+ * scheduler decides which tenant's task runs next, so that the tasks of one tenant cannot occupy
+ * all workers while the tasks of other tenants wait. Tasks submitted using
+ * {@link #submit(String, int, Callable)} belong to the given tenant and priority class; all other
+ * tasks belong to {@link FairRetryScheduler#DEFAULT_TENANT}. A task which would exceed the quota of
+ * its tenant is rejected when first submitted, and completes with a {@link RetryException} when
+ * retried.
+ * </p>
+ * <p>
+ * The {@link java.util.concurrent.Future} of a task completes with the result of the first attempt
+ * that is not rejected, with the exception thrown by such an attempt, or with a
+ * {@link RetryException} once the retryer gives up.
+ * </p>
+ */
+@ThreadSafe
+public final class RetryingExecutorService extends AbstractExecutorService {
+    private final class RetryingTask<T> extends AbstractFuture<T> implements RunnableFuture<T>, Delayed {
+        private final Callable<T> callable;
+        private final String tenant;
+        private final int priority;
+        private final long startTime;
+        private final AttemptHistory history;
+        private int attemptNumber;
+        private long sleepTime;
+        private Attempt<Object> lastAttempt;
+        private volatile long dueTime;
+
+        public RetryingTask(final Callable<T> callable, final String tenant, final int priority) {
+            this.callable = callable;
+            this.tenant = tenant;
+            this.priority = priority;
+            this.startTime = retryer.getTicker().read();
+            this.history = retryer.newAttemptHistory();
+            this.dueTime = System.nanoTime();
+        }
+
+        @Override
+        public int compareTo(final Delayed other) {
+            return Long.compare(dueTime, ((RetryingTask<?>) other).dueTime);
+        }
+
+        @Override
+        public long getDelay(final TimeUnit unit) {
+            return unit.convert(dueTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void run() {
+            try {
+                attempt();
+            } finally {
+                if (scheduler != null) {
+                    running.decrementAndGet();
+                    runScheduled();
+                }
+            }
+        }
+
+        @Override
+        protected void afterDone() {
+            taskDone();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void attempt() {
+            if (isDone()) {
+                return;
+            }
+
+            final Retryer.Outcome<Object> outcome;
+            attemptNumber++;
+            try {
+                outcome = retryer.attempt((Callable<Object>) callable, attemptNumber, startTime, sleepTime,
+                        history);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                setException(retryer.newRetryException(attemptNumber,
+                        retryer.exceptionAttempt(e, attemptNumber, startTime, sleepTime, history)));
+                return;
+            }
+
+            final Attempt<Object> attempt = outcome.getAttempt();
+            if (!retryer.isRejected(outcome)) {
+                if (attempt.hasResult()) {
+                    set((T) attempt.getResult());
+                } else {
+                    setException(attempt.getExceptionCause());
+                }
+            } else if (retryer.shouldStop(attempt)) {
+                setException(retryer.newRetryException(attemptNumber, attempt));
+            } else {
+                final long nextSleepTime = retryer.computeSleepTime(attempt);
+                sleepTime += nextSleepTime;
+                lastAttempt = attempt;
+                dueTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(nextSleepTime);
+                delayed.add(this);
+
+                // shutdownNow() may have drained the delay queue before this task was added
+                if (stopped && delayed.remove(this)) {
+                    reject(new RejectedExecutionException("Executor has been shut down"));
+                }
+            }
+        }
+
+        private void reject(final RejectedExecutionException e) {
+            if (lastAttempt != null) {
+                // quota exceeded, or workers shut down, while retrying
+                setException(retryer.newRetryException(attemptNumber, lastAttempt));
+            } else {
+                setException(e);
+            }
+        }
+    }
+
+    private static ExecutorService newWorkers(final int workerThreads) {
+        return Executors.newFixedThreadPool(
+                workerThreads,
+                new ThreadFactoryBuilder().setNameFormat("retrying-executor-%d").build());
+    }
+
+    private final ExecutorService workers;
+    private final Retryer<Object> retryer;
+    private final FairRetryScheduler<RetryingTask<?>> scheduler;
+    private final int maxRunning;
+    private final AtomicInteger running = new AtomicInteger();
+    private final DelayQueue<RetryingTask<?>> delayed = new DelayQueue<>();
+    private final Thread dispatcher;
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private volatile boolean shutdown;
+
+    /** Whether {@link #shutdownNow()} has been called **/
+    private volatile boolean stopped;
+
+    /**
+     * Creates an executor service which uses a fixed pool of worker threads to execute attempts.
+     *
+     * @param retryer
+     *            the retryer used to decide when and how tasks are retried
+     * @param workerThreads
+     *            the number of worker threads
+     */
+    public RetryingExecutorService(@Nonnull final Retryer<?> retryer, final int workerThreads) {
+        this(retryer, newWorkers(workerThreads), null, 0);
+    }
+
+    /**
+     * Creates an executor service which uses a fixed pool of worker threads to execute attempts,
+     * and the given scheduler to share the workers fairly between tenants.
+     *
+     * @param retryer
+     *            the retryer used to decide when and how tasks are retried
+     * @param workerThreads
+     *            the number of worker threads
+     * @param scheduler
+     *            the scheduler which decides which task runs next; it should not be shared with
+     *            other executor services
+     */
+    public RetryingExecutorService(
+            @Nonnull final Retryer<?> retryer,
+            final int workerThreads,
+            @Nonnull final FairRetryScheduler<Runnable> scheduler) {
+        this(retryer, newWorkers(workerThreads), Preconditions
+                .checkNotNull(scheduler, "scheduler may not be null"), workerThreads);
+    }
+
+    /**
+     * Creates an executor service which executes attempts using the given executor service. The
+     * given executor service is shut down when this executor service terminates.
+     *
+     * @param retryer
+     *            the retryer used to decide when and how tasks are retried
+     * @param workers
+     *            the executor service used to execute attempts
+     */
+    public RetryingExecutorService(
+            @Nonnull final Retryer<?> retryer,
+            @Nonnull final ExecutorService workers) {
+        this(retryer, workers, null, 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private RetryingExecutorService(
+            final Retryer<?> retryer,
+            final ExecutorService workers,
+            final FairRetryScheduler<?> scheduler,
+            final int maxRunning) {
+        Preconditions.checkNotNull(retryer, "retryer may not be null");
+        Preconditions.checkNotNull(workers, "workers may not be null");
+        this.retryer = (Retryer<Object>) retryer;
+        this.workers = workers;
+        this.scheduler = (FairRetryScheduler<RetryingTask<?>>) scheduler;
+        this.maxRunning = maxRunning;
+        this.dispatcher = new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("retrying-executor-dispatcher-%d").build().newThread(this::runDispatcher);
+        this.dispatcher.start();
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!terminated.await(timeout, unit)) {
+            return false;
+        }
+        return workers.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void execute(@Nonnull final Runnable command) {
+        Preconditions.checkNotNull(command, "command may not be null");
+        final RetryingTask<?> task = command instanceof RetryingTask
+                ? (RetryingTask<?>) command
+                : new RetryingTask<>(Executors.callable(command), FairRetryScheduler.DEFAULT_TENANT,
+                        FairRetryScheduler.DEFAULT_PRIORITY);
+        pendingTasks.incrementAndGet();
+        if (shutdown) {
+            taskDone();
+            throw new RejectedExecutionException("Executor has been shut down");
+        }
+        try {
+            dispatch(task);
+        } catch (final RejectedExecutionException e) {
+            task.reject(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of tasks that are waiting for their next attempt to become due.
+     *
+     * @return the number of tasks in backoff
+     */
+    public int getDelayedTaskCount() {
+        return delayed.size();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0 && workers.isTerminated();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        if (pendingTasks.get() == 0) {
+            terminate();
+        }
+    }
+
+    /**
+     * Shuts down this executor service, interrupts the attempts in progress, and cancels the tasks
+     * which are in backoff, waiting in the scheduler, or waiting for a worker thread.
+     *
+     * @return the tasks which were waiting for their next attempt
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        stopped = true;
+        final List<Runnable> notStarted = new ArrayList<>();
+
+        // drainTo() would only remove the tasks whose next attempt is due
+        for (final RetryingTask<?> task : delayed) {
+            if (delayed.remove(task)) {
+                notStarted.add(task);
+            }
+        }
+        if (scheduler != null) {
+            for (RetryingTask<?> task = scheduler.poll(); task != null; task = scheduler.poll()) {
+                notStarted.add(task);
+            }
+        }
+        notStarted.addAll(workers.shutdownNow());
+        for (final Runnable task : notStarted) {
+            if (task instanceof RetryingTask) {
+                ((RetryingTask<?>) task).cancel(false);
+            }
+        }
+        terminate();
+        return notStarted;
+    }
+
+    /**
+     * Submits a task on behalf of the given tenant, which is retried until it succeeds or the
+     * retryer gives up.
+     *
+     * @param tenant
+     *            the tenant the task belongs to
+     * @param priority
+     *            the priority class of the task; higher values are served first
+     * @param task
+     *            the task to submit
+     * @param <T>
+     *            the type of the task's result
+     * @return a future representing the outcome of the task
+     * @throws RejectedExecutionException
+     *             if this executor service has been shut down, or the tenant has reached its quota
+     */
+    public <T> Future<T> submit(
+            @Nonnull final String tenant,
+            final int priority,
+            @Nonnull final Callable<T> task) {
+        Preconditions.checkNotNull(tenant, "tenant may not be null");
+        Preconditions.checkNotNull(task, "task may not be null");
+        final RetryingTask<T> future = new RetryingTask<>(task, tenant, priority);
+        execute(future);
+        return future;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(final Callable<T> callable) {
+        return new RetryingTask<>(callable, FairRetryScheduler.DEFAULT_TENANT,
+                FairRetryScheduler.DEFAULT_PRIORITY);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(final Runnable runnable, final T value) {
+        return new RetryingTask<>(Executors.callable(runnable, value), FairRetryScheduler.DEFAULT_TENANT,
+                FairRetryScheduler.DEFAULT_PRIORITY);
+    }
+
+    private void dispatch(final RetryingTask<?> task) {
+        if (task.isDone()) {
+            return;
+        }
+        if (scheduler == null) {
+            workers.execute(task);
+        } else if (scheduler.offer(task.tenant, task.priority, task)) {
+            runScheduled();
+        } else {
+            throw new RejectedExecutionException("Tenant '" + task.tenant + "' has reached its quota");
+        }
+    }
+
+    private void runDispatcher() {
+        try {
+            for (;;) {
+                final RetryingTask<?> task = delayed.take();
+                try {
+                    dispatch(task);
+                } catch (final RejectedExecutionException e) {
+                    task.reject(e);
+                }
+            }
+        } catch (final InterruptedException e) {
+            // executor has terminated
+        }
+    }
+
+    /**
+     * Hands tasks from the scheduler to the workers until every worker is busy or the scheduler is
+     * empty.
+     */
+    private void runScheduled() {
+        for (;;) {
+            final int current = running.get();
+            if (current >= maxRunning) {
+                return;
+            }
+            if (!running.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            final RetryingTask<?> task = scheduler.poll();
+            if (task == null) {
+                running.decrementAndGet();
+                // a task may have been scheduled after we polled, while we held the slot
+                if (scheduler.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                workers.execute(task);
+            } catch (final RejectedExecutionException e) {
+                running.decrementAndGet();
+                task.reject(e);
+            }
+        }
+    }
+
+    private void taskDone() {
+        if (pendingTasks.decrementAndGet() == 0 && shutdown) {
+            terminate();
+        }
+    }
+
+    private void terminate() {
+        if (terminated.getCount() != 0) {
+            workers.shutdown();
+            dispatcher.interrupt();
+            terminated.countDown();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+/**
+ * A source of nanosecond-precision time, used by a retryer to measure its attempts. Only the
+ * difference between two readings is meaningful, as with {@link System#nanoTime()}.
+ */
+public interface Ticker {
+
+    /**
+     * Returns the ticker which reads {@link System#nanoTime()}.
+     *
+     * @return the system ticker
+     */
+    static Ticker systemTicker() {
+        return System::nanoTime;
+    }
+
+    /**
+     * Returns the number of nanoseconds elapsed since this ticker's fixed point of reference.
+     *
+     * @return the current time, in nanoseconds
+     */
+    long read();
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A virtual clock, which is both a {@link Ticker} and a {@link BlockStrategy}: blocking advances
+ * the clock by the sleep time and returns immediately. A retryer configured with the same virtual
+ * clock as its ticker and its block strategy runs its retry schedule in virtual time, so that
+ * policies spanning minutes or hours can be exercised in milliseconds, deterministically.
+ *
+ * <pre>
+ * final VirtualClock clock = new VirtualClock();
+ * final Retryer&lt;Integer&gt; retryer = RetryerBuilder.&lt;Integer&gt; newBuilder().retryIfException()
+ *         .withStopStrategy(StopStrategies.stopAfterDelay(5, TimeUnit.MINUTES))
+ *         .withWaitStrategy(WaitStrategies.exponentialWait(1, TimeUnit.MINUTES))
+ *         .withTicker(clock).withBlockStrategy(clock).build();
+ * </pre>
+ * <p>
+ * Attempts take no virtual time unless the callable advances the clock, for example to simulate a
+ * slow dependency. Only the blocking of {@link Retryer#call(java.util.concurrent.Callable)} and
+ * the other synchronous entry points is virtual: {@link Retryer#callAll(java.util.Collection)},
+ * {@link RetryingExecutorService} and {@link DurableRetryQueue} schedule their retries in real
+ * time, although they measure the attempts with the ticker.
+ * </p>
+ */
+@ThreadSafe
+public final class VirtualClock implements BlockStrategy, Ticker {
+    /** Current time, in nanoseconds **/
+    private final AtomicLong nanos = new AtomicLong();
+
+    /**
+     * Advances the clock by the given duration.
+     *
+     * @param duration
+     *            the duration, which may not be negative
+     * @param unit
+     *            the unit of the duration
+     */
+    public void advance(final long duration, @Nonnull final TimeUnit unit) {
+        Preconditions.checkNotNull(unit, "unit may not be null");
+        Preconditions.checkArgument(duration >= 0L, "duration must be >= 0 but is %s", duration);
+        nanos.addAndGet(unit.toNanos(duration));
+    }
+
+    /**
+     * Advances the clock by the given sleep time, without blocking.
+     *
+     * @param sleepTime
+     *            the computed sleep duration in milliseconds
+     * @throws InterruptedException
+     *             if the current thread is interrupted, like {@link Thread#sleep(long)}
+     */
+    @Override
+    public void block(final long sleepTime) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        advance(sleepTime, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long read() {
+        return nanos.get();
+    }
+}
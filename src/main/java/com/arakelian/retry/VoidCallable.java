@@ -0,0 +1,34 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+/**
+ * A task that returns no result and may throw an exception, used by
+ * {@link Retryer#callVoid(VoidCallable)}.
+ *
+ * @see java.util.concurrent.Callable
+ */
+@FunctionalInterface
+public interface VoidCallable {
+    /**
+     * Performs the task, or throws an exception if unable to do so.
+     *
+     * @throws Exception
+     *             if unable to perform the task
+     */
+    void call() throws Exception;
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.arakelian.retry.AsyncRetryListener.Overflow;
+
+public class AsyncRetryListenerTest {
+
+    private static final class RecordingListener implements RetryListener {
+        private final List<Long> attemptNumbers = new CopyOnWriteArrayList<>();
+        private final List<Thread> threads = new CopyOnWriteArrayList<>();
+        private final CountDownLatch release;
+
+        public RecordingListener(final CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public <V> void onRetry(final Attempt<V> attempt) {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            attemptNumbers.add(attempt.getAttemptNumber());
+            threads.add(Thread.currentThread());
+        }
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException {
+        final RecordingListener listener = new RecordingListener(new CountDownLatch(0));
+        final AsyncRetryListener async = new AsyncRetryListener(4, Overflow.BLOCK, listener);
+        final List<Thread> publishers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final Thread publisher = new Thread(() -> {
+                for (int n = 1; n <= 1000; n++) {
+                    async.onRetry(attempt(n));
+                }
+            });
+            publisher.start();
+            publishers.add(publisher);
+        }
+        for (final Thread publisher : publishers) {
+            publisher.join();
+        }
+        async.close();
+        assertEquals(0, async.getDroppedCount());
+        assertEquals(4000, listener.attemptNumbers.size());
+    }
+
+    @Test
+    public void testDispatchesLifecycleCallbacks() throws ExecutionException, RetryException {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final AsyncRetryListener async = new AsyncRetryListener(16, Overflow.BLOCK, new RetryListener() {
+            @Override
+            public void beforeAttempt(final long attemptNumber, final long delaySinceFirstAttempt) {
+                events.add("before " + attemptNumber);
+            }
+
+            @Override
+            public <V> void beforeSleep(final Attempt<V> failedAttempt, final long sleepTime) {
+                events.add("sleep " + sleepTime);
+            }
+
+            @Override
+            public <V> void onFailure(final Attempt<V> failedAttempt) {
+                events.add("failure " + failedAttempt.getAttemptNumber());
+            }
+
+            @Override
+            public <V> void onGiveUp(final Attempt<V> lastFailedAttempt) {
+                events.add("give up " + lastFailedAttempt.getAttemptNumber());
+            }
+
+            @Override
+            public <V> void onSuccess(final Attempt<V> attempt) {
+                events.add("success " + attempt.getAttemptNumber());
+            }
+        });
+        final Retryer<Boolean> retryer = RetryerBuilder.<Boolean> newBuilder()
+                .retryIfResult(result -> !result)
+                .withWaitStrategy(WaitStrategies.fixedWait(1, TimeUnit.MILLISECONDS))
+                .withStopStrategy(StopStrategies.stopAfterAttempt(2)).withRetryListener(async).build();
+        final List<Boolean> results = new ArrayList<>(List.of(false, true));
+        assertTrue(retryer.call(() -> results.remove(0)));
+        async.close();
+        assertEquals(List.of("before 1", "failure 1", "sleep 1", "before 2", "success 2"), events);
+    }
+
+    @Test
+    public void testDispatchesInOrderOffCallingThread() throws ExecutionException, RetryException {
+        final RecordingListener listener = new RecordingListener(new CountDownLatch(0));
+        final AsyncRetryListener async = new AsyncRetryListener(16, Overflow.DROP, listener);
+        final Retryer<Boolean> retryer = RetryerBuilder.<Boolean> newBuilder().retryIfResult(r -> !r)
+                .withRetryListener(async).build();
+        final int[] counter = new int[1];
+        retryer.call(() -> ++counter[0] == 3);
+        async.close();
+
+        assertEquals(List.of(1L, 2L, 3L), listener.attemptNumbers);
+        for (final Thread thread : listener.threads) {
+            assertNotSame(Thread.currentThread(), thread);
+        }
+    }
+
+    @Test
+    public void testDrop() {
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingListener listener = new RecordingListener(release);
+        final AsyncRetryListener async = new AsyncRetryListener(8, Overflow.DROP, listener);
+
+        // the dispatch thread holds at most one attempt while the listener is stuck
+        for (int n = 1; n <= 100; n++) {
+            async.onRetry(attempt(n));
+        }
+        release.countDown();
+        async.close();
+
+        final long dropped = async.getDroppedCount();
+        assertTrue(dropped >= 91 && dropped <= 92, "dropped: " + dropped);
+        assertEquals(100, dropped + listener.attemptNumbers.size());
+        assertEquals(List.of(1L, 2L, 3L), listener.attemptNumbers.subList(0, 3));
+    }
+
+    @Test
+    public void testSkipsCallbacksNotOverridden() {
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingListener listener = new RecordingListener(release);
+        final AsyncRetryListener async = new AsyncRetryListener(8, Overflow.DROP, listener);
+
+        // only onRetry is overridden, so the other callbacks never take room in the ring
+        for (int n = 1; n <= 100; n++) {
+            async.beforeAttempt(n, 0L);
+            async.onFailure(attempt(n));
+            async.beforeSleep(attempt(n), 0L);
+            async.onGiveUp(attempt(n));
+            async.onSuccess(attempt(n));
+        }
+        for (int n = 1; n <= 5; n++) {
+            async.onRetry(attempt(n));
+        }
+        release.countDown();
+        async.close();
+
+        assertEquals(0, async.getDroppedCount());
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), listener.attemptNumbers);
+    }
+
+    @Test
+    public void testSample() {
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingListener listener = new RecordingListener(release);
+        final AsyncRetryListener async = new AsyncRetryListener(64, Overflow.SAMPLE, listener);
+        for (int n = 1; n <= 200; n++) {
+            async.onRetry(attempt(n));
+        }
+        release.countDown();
+        async.close();
+
+        // the first half of the ring is filled, after which only a sample of attempts is published
+        final List<Long> attemptNumbers = listener.attemptNumbers;
+        assertEquals(200, async.getDroppedCount() + attemptNumbers.size());
+        assertTrue(attemptNumbers.size() < 64, "dispatched: " + attemptNumbers.size());
+        assertTrue(attemptNumbers.get(attemptNumbers.size() - 1) > 150);
+    }
+
+    private Attempt<Boolean> attempt(final long attemptNumber) {
+        return new Retryer.ResultAttempt<>(Boolean.TRUE, attemptNumber, 0L);
+    }
+}
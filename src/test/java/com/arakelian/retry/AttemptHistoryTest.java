@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class AttemptHistoryTest {
+
+    @Test
+    public void testDisabled() throws ExecutionException {
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .withStopStrategy(StopStrategies.stopAfterAttempt(2)).build();
+        try {
+            retryer.call(() -> {
+                throw new IOException();
+            });
+            fail("RetryException expected");
+        } catch (final RetryException e) {
+            assertNull(e.getAttemptHistory());
+        }
+    }
+
+    @Test
+    public void testDropsOldestEntries() {
+        final AttemptHistory history = new AttemptHistory(2);
+        history.record(new Retryer.ExceptionAttempt<>(new TimeoutException(), 1, 0L));
+        history.record(new Retryer.ExceptionAttempt<>(new TimeoutException(), 2, 0L));
+        history.record(new Retryer.ExceptionAttempt<>(new IOException("refused"), 3, 0L));
+        history.record(new Retryer.ResultAttempt<>(null, 4, 0L));
+
+        assertEquals(4L, history.getAttemptCount());
+        assertEquals(2L, history.getDroppedCount());
+        assertEquals(2, history.size());
+        assertEquals(3L, history.getFirstAttemptNumber(0));
+        assertEquals("refused", history.getCause(0).getMessage());
+        assertNull(history.getCause(1));
+        assertEquals(
+                "AttemptHistory [2 earlier attempts dropped, "
+                        + "attempt 3: java.io.IOException: refused in 0 ms, attempt 4: result in 0 ms]",
+                history.toString());
+    }
+
+    @Test
+    public void testFoldsDuplicateFailures() throws ExecutionException {
+        final List<Integer> sizesSeenByStopStrategy = new ArrayList<>();
+        final AtomicInteger counter = new AtomicInteger();
+        final TimeoutException timeout = new TimeoutException("timed out");
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .withAttemptHistory(4).withWaitStrategy(WaitStrategies.fixedWait(1, TimeUnit.MILLISECONDS))
+                .withStopStrategy(failedAttempt -> {
+                    sizesSeenByStopStrategy.add(failedAttempt.getAttemptHistory().size());
+                    return failedAttempt.getAttemptNumber() == 5;
+                }).build();
+        try {
+            retryer.call(() -> {
+                throw counter.getAndIncrement() < 2 ? timeout : new IOException("connection refused");
+            });
+            fail("RetryException expected");
+        } catch (final RetryException e) {
+            final AttemptHistory history = e.getAttemptHistory();
+            assertEquals(5L, history.getAttemptCount());
+            assertEquals(2, history.size());
+            assertSame(timeout, history.getCause(0));
+            assertEquals(2, history.getCount(0));
+            assertEquals(2L, history.getWait(0));
+            assertEquals(IOException.class, history.getCause(1).getClass());
+            assertEquals(3L, history.getFirstAttemptNumber(1));
+            assertEquals(3, history.getCount(1));
+            assertEquals(2L, history.getWait(1));
+        }
+        assertEquals(List.of(1, 1, 2, 2, 2), sizesSeenByStopStrategy);
+    }
+}
@@ -17,10 +17,16 @@
 package com.arakelian.retry;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -62,4 +68,28 @@ public class AttemptTimeLimiterTest {
             assertEquals(TimeoutException.class, e.getCause().getClass());
         }
     }
+
+    @Test
+    public void testManagedBlocking() throws RetryException, ExecutionException, InterruptedException {
+        final Retryer<Boolean> retryer = RetryerBuilder.<Boolean> newBuilder()
+                .withAttemptTimeLimiter(AttemptTimeLimiters.<Boolean> managedBlocking()).build();
+
+        // every task blocks until all of them are running, which needs more than one worker
+        final CountDownLatch running = new CountDownLatch(4);
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            final List<ForkJoinTask<Boolean>> tasks = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                tasks.add(pool.submit(() -> retryer.call(() -> {
+                    running.countDown();
+                    return running.await(10, TimeUnit.SECONDS);
+                })));
+            }
+            for (final ForkJoinTask<Boolean> task : tasks) {
+                assertTrue(task.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
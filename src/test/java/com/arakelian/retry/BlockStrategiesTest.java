@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class BlockStrategiesTest {
+
+    @Test
+    public void testManagedSleepStrategy() throws InterruptedException, ExecutionException {
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .withWaitStrategy(WaitStrategies.fixedWait(250, TimeUnit.MILLISECONDS))
+                .withBlockStrategy(BlockStrategies.managedSleepStrategy()).build();
+
+        // with a single worker sleeping between attempts, eight tasks would need two seconds
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            final long start = System.nanoTime();
+            final List<ForkJoinTask<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final int result = i;
+                final AtomicInteger attempts = new AtomicInteger();
+                tasks.add(pool.submit(() -> retryer.call(() -> {
+                    if (attempts.incrementAndGet() == 1) {
+                        throw new IOException();
+                    }
+                    return result;
+                })));
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                assertEquals(i, tasks.get(i).get().intValue());
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testManagedSleepStrategyOutsidePool() throws InterruptedException {
+        final long start = System.nanoTime();
+        BlockStrategies.managedSleepStrategy().block(50L);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Callables shared by the tests.
+ */
+final class Callables {
+    /**
+     * Returns a callable which throws an {@link IOException} the given number of times, and then
+     * returns the given result.
+     *
+     * @param failures
+     *            the number of calls which fail
+     * @param result
+     *            the result of the calls which succeed
+     * @return the callable
+     */
+    static Callable<Integer> failures(final int failures, final int result) {
+        final AtomicInteger counter = new AtomicInteger();
+        return () -> {
+            if (counter.getAndIncrement() < failures) {
+                throw new IOException();
+            }
+            return result;
+        };
+    }
+
+    private Callables() {
+    }
+}
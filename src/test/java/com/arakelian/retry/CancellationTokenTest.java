@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class CancellationTokenTest {
+
+    private static Retryer<Boolean> retryer(final BlockStrategy blockStrategy) {
+        return RetryerBuilder.<Boolean> newBuilder().retryIfException()
+                .withWaitStrategy(WaitStrategies.fixedWait(1, TimeUnit.MINUTES))
+                .withBlockStrategy(blockStrategy).build();
+    }
+
+    @Test
+    public void testAcceptedAttemptIsReturned() throws ExecutionException, RetryException {
+        final CancellationToken token = new CancellationToken();
+        assertTrue(retryer(BlockStrategies.threadSleepStrategy()).call(() -> {
+            token.cancel();
+            return true;
+        }, token));
+        assertTrue(token.isCancelled());
+    }
+
+    @Test
+    public void testCancelledBeforeCall() {
+        final CancellationToken token = new CancellationToken();
+        token.cancel();
+        final AtomicInteger counter = new AtomicInteger();
+        assertThrows(
+                CancellationException.class,
+                () -> retryer(BlockStrategies.threadSleepStrategy()).call(() -> counter.incrementAndGet() > 0,
+                        token));
+        assertEquals(0, counter.get());
+    }
+
+    @Test
+    public void testCancelInterruptsAttempt() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final CancellationToken token = new CancellationToken();
+            final CountDownLatch started = new CountDownLatch(1);
+            final Future<Boolean> call = executor.submit(() -> {
+                try {
+                    return retryer(BlockStrategies.threadSleepStrategy()).call(() -> {
+                        started.countDown();
+                        Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                        return true;
+                    }, token);
+                } catch (final CancellationException e) {
+                    // the interruption of the attempt is cleared
+                    assertFalse(Thread.currentThread().isInterrupted());
+                    throw e;
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            token.cancel(true);
+            try {
+                call.get(5, TimeUnit.SECONDS);
+                fail("CancellationException expected");
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof CancellationException);
+                assertTrue(e.getCause().getCause() instanceof InterruptedException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCancelKeepsUnrelatedInterrupt() {
+        final CancellationToken token = new CancellationToken();
+        try {
+            assertThrows(CancellationException.class, () -> retryer(BlockStrategies.threadSleepStrategy())
+                    .call(() -> {
+                        Thread.currentThread().interrupt();
+                        token.cancel(true);
+                        throw new IOException();
+                    }, token));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void testCancelledAttemptIsReportedAsFailure() {
+        final List<String> events = new ArrayList<>();
+        final CancellationToken token = new CancellationToken();
+        final Retryer<Boolean> retryer = RetryerBuilder.<Boolean> newBuilder().retryIfException()
+                .withRetryListener(new RetryListener() {
+                    @Override
+                    public <V> void onFailure(final Attempt<V> failedAttempt) {
+                        events.add("failure " + failedAttempt.getAttemptNumber());
+                    }
+
+                    @Override
+                    public <V> void onGiveUp(final Attempt<V> lastFailedAttempt) {
+                        events.add("give up " + lastFailedAttempt.getAttemptNumber());
+                    }
+                }).build();
+        assertThrows(CancellationException.class, () -> retryer.call(() -> {
+            token.cancel();
+            throw new IOException();
+        }, token));
+        assertEquals(List.of("failure 1", "give up 1"), events);
+    }
+
+    @Test
+    public void testCancelWakesBackoff() throws Exception {
+        assertCancelWakesBackoff(BlockStrategies.threadSleepStrategy());
+        assertCancelWakesBackoff(BlockStrategies.managedSleepStrategy());
+    }
+
+    private void assertCancelWakesBackoff(final BlockStrategy blockStrategy) throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final CancellationToken token = new CancellationToken();
+            final AtomicInteger counter = new AtomicInteger();
+            final CountDownLatch failed = new CountDownLatch(1);
+            final Future<Boolean> call = executor.submit(() -> retryer(blockStrategy).call(() -> {
+                counter.incrementAndGet();
+                failed.countDown();
+                throw new IOException();
+            }, token));
+            assertTrue(failed.await(5, TimeUnit.SECONDS));
+            token.cancel();
+            try {
+                call.get(5, TimeUnit.SECONDS);
+                fail("CancellationException expected");
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof CancellationException);
+                assertTrue(e.getCause().getCause() instanceof IOException);
+            }
+            assertEquals(1, counter.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class ConcurrencyLimitersTest {
+
+    @Test
+    public void testAimd() throws InterruptedException {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiters.aimd(10, 2, 20, 0.5d, 1, TimeUnit.SECONDS);
+        assertEquals(10, limiter.getLimit());
+
+        // shed load immediately once the limit is reached
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.acquire());
+        }
+        assertFalse(limiter.acquire());
+
+        // additive increase
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+        assertEquals(11, limiter.getLimit());
+
+        // multiplicative decrease on failure or slow attempts
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(10), true);
+        assertEquals(5, limiter.getLimit());
+        limiter.release(TimeUnit.SECONDS.toNanos(2), false);
+        assertEquals(2, limiter.getLimit());
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(10), true);
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void testNoLimit() throws InterruptedException {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiters.noLimit();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(limiter.acquire());
+        }
+    }
+
+    @Test
+    public void testRejectedResultIsReportedAsFailure() throws ExecutionException, RetryException {
+        final List<Boolean> failures = new ArrayList<>();
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter() {
+            @Override
+            public boolean acquire() {
+                return true;
+            }
+
+            @Override
+            public int getLimit() {
+                return Integer.MAX_VALUE;
+            }
+
+            @Override
+            public void release(final long latency, final boolean failed) {
+                failures.add(failed);
+            }
+        };
+        final AtomicInteger predicateCalls = new AtomicInteger();
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfResult(result -> {
+            predicateCalls.incrementAndGet();
+            return result < 0;
+        }).withConcurrencyLimiter(limiter).build();
+
+        final AtomicInteger counter = new AtomicInteger();
+        assertEquals(1, retryer.call(() -> counter.getAndIncrement() == 0 ? -1 : 1).intValue());
+        assertEquals(List.of(true, false), failures);
+
+        // the limiter and the retryer share a single evaluation of the predicate per attempt
+        assertEquals(2, predicateCalls.get());
+
+        failures.clear();
+        counter.set(0);
+        assertEquals(1, retryer.callInt(() -> counter.getAndIncrement() == 0 ? -1 : 1, result -> result < 0));
+        assertEquals(List.of(true, false), failures);
+    }
+
+    @Test
+    public void testRejectedAttemptIsNotRetriedByDefault() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        final Retryer<Boolean> retryer = RetryerBuilder.<Boolean> newBuilder().withMaxConcurrentAttempts(1)
+                .build();
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Boolean> blocked = executor.submit(retryer.wrap(() -> {
+                started.countDown();
+                finish.await();
+                return true;
+            }));
+            started.await();
+
+            try {
+                retryer.call(() -> true);
+                fail("ExecutionException expected");
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof ConcurrencyLimitException);
+            }
+
+            finish.countDown();
+            assertTrue(blocked.get());
+            assertTrue(retryer.call(() -> true));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRejectedAttemptIsRetried() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        final Retryer<Boolean> retryer = RetryerBuilder.<Boolean> newBuilder().withMaxConcurrentAttempts(1)
+                .retryIfExceptionOfType(ConcurrencyLimitException.class)
+                .withStopStrategy(StopStrategies.stopAfterAttempt(3)).build();
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(retryer.wrap(() -> {
+                started.countDown();
+                finish.await();
+                return true;
+            }));
+            started.await();
+
+            try {
+                retryer.call(() -> true);
+                fail("RetryException expected");
+            } catch (final RetryException e) {
+                assertEquals(3, e.getNumberOfFailedAttempts());
+                assertTrue(e.getCause() instanceof ConcurrencyLimitException);
+            }
+        } finally {
+            finish.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSemaphore() throws InterruptedException {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiters.semaphore(2);
+        assertTrue(limiter.acquire());
+        assertTrue(limiter.acquire());
+        assertFalse(limiter.acquire());
+        limiter.release(0L, false);
+        assertTrue(limiter.acquire());
+    }
+
+    @Test
+    public void testVegas() throws InterruptedException {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiters.vegas(10, 1, 100);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.acquire());
+        }
+
+        // latency at the lowest observed level means no queueing, so the limit grows
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+        assertEquals(11, limiter.getLimit());
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+        assertEquals(12, limiter.getLimit());
+
+        // doubling of latency means about half of the in-flight attempts are queued
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(20), false);
+        assertEquals(11, limiter.getLimit());
+
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(10), true);
+        assertEquals(9, limiter.getLimit());
+    }
+
+    @Test
+    public void testSemaphoreWithWaitingAttempts() throws Exception {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiters.semaphore(1, 1, 10, TimeUnit.SECONDS);
+        assertTrue(limiter.acquire());
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final Future<Boolean> waiting = executor.submit(() -> {
+                started.countDown();
+                return limiter.acquire();
+            });
+
+            // give the other thread a chance to occupy the only waiting slot
+            started.await();
+            Thread.sleep(100L);
+            assertFalse(limiter.acquire());
+
+            limiter.release(0L, false);
+            assertTrue(waiting.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSemaphoreWithTimeout() throws InterruptedException {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiters.semaphore(1, 1, 50, TimeUnit.MILLISECONDS);
+        assertTrue(limiter.acquire());
+        final long start = System.nanoTime();
+        assertFalse(limiter.acquire());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+}
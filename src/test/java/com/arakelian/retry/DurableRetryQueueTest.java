@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DurableRetryQueueTest {
+
+    private static final class AttemptNumbers implements RetryListener {
+        private final List<Long> attemptNumbers = new CopyOnWriteArrayList<>();
+
+        @Override
+        public <V> void onRetry(final Attempt<V> attempt) {
+            attemptNumbers.add(attempt.getAttemptNumber());
+        }
+    }
+
+    @TempDir
+    public Path tempDir;
+
+    @Test
+    public void testCallAppendsAfterSynchronousAttempts() throws IOException, ExecutionException,
+            InterruptedException {
+        final AttemptNumbers listener = new AttemptNumbers();
+        final Retryer<Void> retryer = RetryerBuilder.<Void> newBuilder().retryIfException()
+                .withRetryListener(listener).build();
+        final Retryer<Void> synchronousRetryer = RetryerBuilder.<Void> newBuilder().retryIfException()
+                .withStopStrategy(StopStrategies.stopAfterAttempt(2)).build();
+
+        final AtomicInteger calls = new AtomicInteger();
+        try (final DurableRetryQueue queue = new DurableRetryQueue(tempDir, retryer, payload -> {
+            if (calls.incrementAndGet() < 4) {
+                throw new IOException();
+            }
+        }, 1)) {
+            assertFalse(queue.call(bytes("hello"), synchronousRetryer));
+            awaitEmpty(queue);
+        }
+        assertEquals(4, calls.get());
+        assertEquals(List.of(3L, 4L), listener.attemptNumbers);
+    }
+
+    @Test
+    public void testCompaction() throws IOException, InterruptedException {
+        final Retryer<Void> retryer = RetryerBuilder.<Void> newBuilder().retryIfException().build();
+        try (final DurableRetryQueue queue = new DurableRetryQueue(tempDir, retryer, payload -> {
+        }, 2, 4096, false)) {
+            for (int i = 0; i < 1000; i++) {
+                queue.submit(bytes("item " + i));
+            }
+            awaitEmpty(queue);
+            queue.submit(bytes("last"));
+            awaitEmpty(queue);
+        }
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertTrue(files.count() <= 2);
+        }
+    }
+
+    @Test
+    public void testResumesAfterRestart() throws IOException, InterruptedException {
+        // the queue records a failed attempt while holding the lock which close() waits for
+        final CountDownLatch firstFailure = new CountDownLatch(1);
+        final Retryer<Void> retryer = RetryerBuilder.<Void> newBuilder().retryIfException()
+                .withWaitStrategy(WaitStrategies.fixedWait(500, TimeUnit.MILLISECONDS))
+                .withRetryListener(new RetryListener() {
+                    @Override
+                    public <V> void onFailure(final Attempt<V> failedAttempt) {
+                        firstFailure.countDown();
+                    }
+                }).build();
+        try (final DurableRetryQueue queue = new DurableRetryQueue(tempDir, retryer, payload -> {
+            throw new IOException();
+        }, 1)) {
+            queue.submit(bytes("hello"));
+            firstFailure.await();
+        }
+
+        final AttemptNumbers listener = new AttemptNumbers();
+        final List<String> payloads = new CopyOnWriteArrayList<>();
+        final Retryer<Void> restarted = RetryerBuilder.<Void> newBuilder().retryIfException()
+                .withRetryListener(listener).build();
+        try (final DurableRetryQueue queue = new DurableRetryQueue(tempDir, restarted, payload -> {
+            payloads.add(new String(payload, StandardCharsets.UTF_8));
+        }, 1)) {
+            awaitEmpty(queue);
+        }
+        assertEquals(List.of("hello"), payloads);
+        assertEquals(List.of(2L), listener.attemptNumbers);
+    }
+
+    @Test
+    public void testSubmit() throws IOException, InterruptedException {
+        final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+        final Retryer<Void> retryer = RetryerBuilder.<Void> newBuilder().retryIfException()
+                .withStopStrategy(StopStrategies.stopAfterAttempt(10)).build();
+        try (final DurableRetryQueue queue = new DurableRetryQueue(tempDir, retryer, payload -> {
+            final String key = new String(payload, StandardCharsets.UTF_8);
+            if (calls.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet() < 3) {
+                throw new IOException();
+            }
+        }, 4)) {
+            for (int i = 0; i < 100; i++) {
+                queue.submit(bytes("item " + i));
+            }
+            awaitEmpty(queue);
+        }
+        assertEquals(100, calls.size());
+        for (final AtomicInteger count : calls.values()) {
+            assertEquals(3, count.get());
+        }
+    }
+
+    private void awaitEmpty(final DurableRetryQueue queue) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (queue.size() != 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(0, queue.size());
+    }
+
+    private byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
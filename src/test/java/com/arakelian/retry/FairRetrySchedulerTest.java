@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class FairRetrySchedulerTest {
+
+    @Test
+    public void testPriorityClasses() {
+        final FairRetryScheduler<String> scheduler = new FairRetryScheduler<>();
+        scheduler.offer("a", 0, "low");
+        scheduler.offer("a", 10, "high");
+        scheduler.offer("b", 5, "medium");
+        assertEquals(List.of("high", "medium", "low"), drain(scheduler));
+    }
+
+    @Test
+    public void testQuota() {
+        final FairRetryScheduler<String> scheduler = new FairRetryScheduler<>(1, 2);
+        scheduler.setQuota("b", 3);
+        assertTrue(scheduler.offer("a", 0, "a1"));
+        assertTrue(scheduler.offer("a", 1, "a2"));
+        assertFalse(scheduler.offer("a", 0, "a3"));
+        assertTrue(scheduler.offer("b", 0, "b1"));
+        assertTrue(scheduler.offer("b", 0, "b2"));
+        assertTrue(scheduler.offer("b", 0, "b3"));
+        assertFalse(scheduler.offer("b", 0, "b4"));
+        assertEquals(2, scheduler.size("a"));
+        assertEquals(5, scheduler.size());
+
+        // quota is released when retries are taken
+        assertEquals("a2", scheduler.poll());
+        assertTrue(scheduler.offer("a", 0, "a3"));
+    }
+
+    @Test
+    public void testRoundRobin() {
+        final FairRetryScheduler<String> scheduler = new FairRetryScheduler<>();
+        for (int i = 1; i <= 4; i++) {
+            scheduler.offer("noisy", 0, "n" + i);
+        }
+        scheduler.offer("quiet", 0, "q1");
+        scheduler.offer("other", 0, "o1");
+        assertEquals(List.of("n1", "q1", "o1", "n2", "n3", "n4"), drain(scheduler));
+        assertTrue(scheduler.isEmpty());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void testWeights() {
+        final FairRetryScheduler<String> scheduler = new FairRetryScheduler<>();
+        scheduler.setWeight("heavy", 3);
+        for (int i = 1; i <= 4; i++) {
+            scheduler.offer("heavy", 0, "h" + i);
+            scheduler.offer("light", 0, "l" + i);
+        }
+        assertEquals(List.of("h1", "h2", "h3", "l1", "h4", "l2", "l3", "l4"), drain(scheduler));
+    }
+
+    private List<String> drain(final FairRetryScheduler<String> scheduler) {
+        final List<String> items = new ArrayList<>();
+        for (String item = scheduler.poll(); item != null; item = scheduler.poll()) {
+            items.add(item);
+        }
+        return items;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+public class LoggingRetryListenerTest {
+
+    /** Arguments of each call to {@link Logger#warn} **/
+    private final List<List<Object>> warnings = new ArrayList<>();
+
+    private final Logger logger = (Logger) Proxy.newProxyInstance(
+            Logger.class.getClassLoader(),
+            new Class<?>[] { Logger.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "isWarnEnabled":
+                    return true;
+                case "warn":
+                    warnings.add(flatten(args));
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+    @Test
+    public void testAggregatesFailuresPerKey() {
+        final LoggingRetryListener listener = new LoggingRetryListener(logger, 1, TimeUnit.HOURS, 2, 0.001d,
+                0);
+        for (int i = 1; i <= 10; i++) {
+            listener.onFailure(new Retryer.ExceptionAttempt<>(new IOException("io " + i), i, 0L));
+        }
+        listener.onFailure(new Retryer.ExceptionAttempt<>(new IllegalStateException(), 1, 0L));
+        listener.onFailure(new Retryer.ResultAttempt<>("bad", 3, 0L));
+
+        // two failures with IOException, and one of each other key, are logged individually
+        assertEquals(4, warnings.size());
+        assertEquals(List.of("Attempt {} failed with {}", 1L, "java.io.IOException: io 1"), warnings.get(0));
+        assertEquals(List.of("Attempt {} was rejected with result {}", 3L, "bad"), warnings.get(3));
+
+        warnings.clear();
+        listener.flush();
+        assertEquals(1, warnings.size());
+        assertEquals(List.of("{} failed attempts with {} ({} not logged), up to attempt {}; last: {}", 10L,
+                "java.io.IOException", 8L, 10L, "java.io.IOException: io 10"), warnings.get(0));
+
+        // nothing more to summarize
+        warnings.clear();
+        listener.flush();
+        assertEquals(0, warnings.size());
+    }
+
+    @Test
+    public void testSamplesStackTraces() {
+        final LoggingRetryListener listener = new LoggingRetryListener(logger, 1, TimeUnit.HOURS, 10, 0.001d,
+                5);
+        for (int i = 1; i <= 10; i++) {
+            listener.onFailure(new Retryer.ExceptionAttempt<>(new IOException(), i, 0L));
+        }
+        assertEquals(10, warnings.size());
+        for (int i = 0; i < 10; i++) {
+            final Object last = warnings.get(i).get(warnings.get(i).size() - 1);
+            assertEquals(i % 5 == 0, last instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testRefillsLinesFromTicker() {
+        final VirtualClock clock = new VirtualClock();
+        final LoggingRetryListener listener = new LoggingRetryListener(logger, 1, TimeUnit.HOURS, 1, 1.0d, 0,
+                clock);
+        listener.onFailure(new Retryer.ExceptionAttempt<>(new IOException(), 1, 0L));
+        listener.onFailure(new Retryer.ExceptionAttempt<>(new IOException(), 2, 0L));
+        assertEquals(1, warnings.size());
+
+        // one more line is available after a second of virtual time
+        clock.advance(1, TimeUnit.SECONDS);
+        listener.onFailure(new Retryer.ExceptionAttempt<>(new IOException(), 3, 0L));
+        listener.onFailure(new Retryer.ExceptionAttempt<>(new IOException(), 4, 0L));
+        assertEquals(2, warnings.size());
+        assertEquals(3L, warnings.get(1).get(1));
+    }
+
+    @Test
+    public void testSummaryOfLastWindowLoggedByFlush() {
+        final VirtualClock clock = new VirtualClock();
+        final LoggingRetryListener listener = new LoggingRetryListener(logger, 50, TimeUnit.MILLISECONDS, 1,
+                0.001d, 0, clock);
+        listener.onFailure(new Retryer.ExceptionAttempt<>(new IOException("first"), 1, 0L));
+        listener.onFailure(new Retryer.ExceptionAttempt<>(new IOException("last"), 2, 0L));
+        assertEquals(1, warnings.size());
+
+        // no failure follows the window, so only flush() logs its summary
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertEquals(1, warnings.size());
+        listener.flush();
+        assertEquals(List.of("{} failed attempts with {} ({} not logged), up to attempt {}; last: {}", 2L,
+                "java.io.IOException", 1L, 2L, "java.io.IOException: last"), warnings.get(1));
+    }
+
+    @Test
+    public void testSummaryLoggedAfterWindow() {
+        final VirtualClock clock = new VirtualClock();
+        final LoggingRetryListener listener = new LoggingRetryListener(logger, 50, TimeUnit.MILLISECONDS, 1,
+                0.001d, 0, clock);
+        listener.onFailure(new Retryer.ExceptionAttempt<>(new IOException(), 1, 0L));
+        listener.onFailure(new Retryer.ExceptionAttempt<>(new IOException(), 2, 0L));
+        assertEquals(1, warnings.size());
+
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        listener.onFailure(new Retryer.ExceptionAttempt<>(new IOException(), 3, 0L));
+        assertEquals(2, warnings.size());
+        assertTrue(warnings.get(1).get(0).toString().contains("not logged"));
+
+        // the summary counts the logged failure of the window as well as the suppressed one
+        assertEquals(2L, warnings.get(1).get(1));
+        assertEquals(1L, warnings.get(1).get(3));
+    }
+
+    private List<Object> flatten(final Object[] args) {
+        final List<Object> flattened = new ArrayList<>();
+        for (final Object arg : args) {
+            if (arg instanceof Object[]) {
+                flattened.addAll(Arrays.asList((Object[]) arg));
+            } else {
+                flattened.add(arg);
+            }
+        }
+        return flattened;
+    }
+}
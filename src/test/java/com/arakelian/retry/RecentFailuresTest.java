@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class RecentFailuresTest {
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        final RecentFailures recentFailures = new RecentFailures(100);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            executor.execute(() -> {
+                for (int i = 1; i <= 10_000; i++) {
+                    recentFailures.record(new Retryer.ExceptionAttempt<>(new RuntimeException(), i, 0L));
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(40_000L, recentFailures.getCount());
+        assertEquals(100, recentFailures.snapshot().size());
+    }
+
+    @Test
+    public void testOverwritesOldest() {
+        final RecentFailures recentFailures = new RecentFailures(3);
+        assertTrue(recentFailures.snapshot().isEmpty());
+
+        for (int i = 1; i <= 5; i++) {
+            recentFailures.record(new Retryer.ExceptionAttempt<>(new RuntimeException("failure " + i), i, 0L,
+                    0L, i * 1000L, -1L, 0L, null));
+        }
+        recentFailures.record(new Retryer.ResultAttempt<>("rejected", 6, 0L));
+
+        final List<RecentFailures.Failure> failures = recentFailures.snapshot();
+        assertEquals(6L, recentFailures.getCount());
+        assertEquals(3, failures.size());
+        assertEquals("failure 4", failures.get(0).getMessage());
+        assertEquals(4000L, failures.get(0).getDuration());
+        assertEquals("failure 5", failures.get(1).getMessage());
+        assertEquals(6L, failures.get(2).getAttemptNumber());
+        assertNull(failures.get(2).getExceptionClass());
+        assertNull(failures.get(2).getMessage());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RetryBudgetsTest {
+
+    @TempDir
+    public Path tempDir;
+
+    public Attempt<Boolean> failedAttempt() {
+        return new Retryer.ExceptionAttempt<>(new RuntimeException(), 1, 0L);
+    }
+
+    @Test
+    public void testRetryerStopsWhenBudgetIsExhausted() throws ExecutionException {
+        final Retryer<Boolean> retryer = RetryerBuilder.<Boolean> newBuilder().retryIfResult(r -> r == null)
+                .withRetryBudget(RetryBudgets.tokenBucket(3, 0.001d)).build();
+        try {
+            retryer.call(() -> null);
+            fail("RetryException expected");
+        } catch (final RetryException e) {
+            assertEquals(4, e.getNumberOfFailedAttempts());
+        }
+
+        // budget is shared by every call
+        try {
+            retryer.call(() -> null);
+            fail("RetryException expected");
+        } catch (final RetryException e) {
+            assertEquals(1, e.getNumberOfFailedAttempts());
+        }
+    }
+
+    @Test
+    public void testSharedTokenBucket() throws IOException {
+        final Path file = tempDir.resolve("budget");
+        final RetryBudget first = RetryBudgets.sharedTokenBucket(file, 4, 0.001d);
+        final RetryBudget second = RetryBudgets.sharedTokenBucket(file, 4, 0.001d);
+
+        assertTrue(first.tryAcquire(failedAttempt()));
+        assertTrue(second.tryAcquire(failedAttempt()));
+        assertTrue(first.tryAcquire(failedAttempt()));
+        assertTrue(second.tryAcquire(failedAttempt()));
+        assertFalse(first.tryAcquire(failedAttempt()));
+        assertFalse(second.tryAcquire(failedAttempt()));
+    }
+
+    @Test
+    public void testSharedTokenBucketRejectsOtherFiles() throws IOException {
+        final Path file = tempDir.resolve("other");
+        Files.write(file, "not a retry budget".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IllegalArgumentException.class, () -> RetryBudgets.sharedTokenBucket(file, 4, 1.0d));
+    }
+
+    @Test
+    public void testTokenBucket() throws InterruptedException {
+        final RetryBudget budget = RetryBudgets.tokenBucket(2, 100.0d);
+        assertTrue(budget.tryAcquire(failedAttempt()));
+        assertTrue(budget.tryAcquire(failedAttempt()));
+        assertFalse(budget.tryAcquire(failedAttempt()));
+
+        // refilled at 100 retries per second
+        Thread.sleep(50L);
+        assertTrue(budget.tryAcquire(failedAttempt()));
+        assertTrue(budget.tryAcquire(failedAttempt()));
+        assertFalse(budget.tryAcquire(failedAttempt()));
+    }
+
+    @Test
+    public void testUnlimited() {
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(RetryBudgets.unlimited().tryAcquire(failedAttempt()));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class RetryEventsTest {
+
+    @TempDir
+    public Path tempDir;
+
+    @Test
+    public void testDisabledByDefault() throws IOException, ExecutionException {
+        final List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.start();
+            callUntilGiveUp();
+            recording.stop();
+            events = retryEvents(recording);
+        }
+        assertEquals(0, events.size());
+    }
+
+    @Test
+    public void testEvents() throws IOException, ExecutionException {
+        final List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("com.arakelian.retry.Attempt");
+            recording.enable("com.arakelian.retry.Backoff");
+            recording.enable("com.arakelian.retry.GiveUp");
+            recording.start();
+            callUntilGiveUp();
+            recording.stop();
+            events = retryEvents(recording);
+        }
+
+        final List<String> names = events.stream().map(e -> e.getEventType().getName())
+                .map(name -> name.substring(name.lastIndexOf('.') + 1)).collect(Collectors.toList());
+        assertEquals(List.of("Attempt", "Backoff", "Attempt", "GiveUp"), names);
+
+        final RecordedEvent attempt = events.get(0);
+        assertEquals(1L, attempt.getLong("attemptNumber"));
+        assertEquals("exception", attempt.getString("outcome"));
+        assertEquals(IOException.class.getName(), attempt.getClass("exceptionClass").getName());
+
+        final RecordedEvent backoff = events.get(1);
+        assertEquals(20L, backoff.getDuration("computedWait").toMillis());
+        assertTrue(backoff.getDuration().compareTo(Duration.ofMillis(20)) >= 0);
+
+        assertEquals(2L, events.get(3).getLong("attemptNumber"));
+    }
+
+    private void callUntilGiveUp() throws ExecutionException {
+        final Retryer<Void> retryer = RetryerBuilder.<Void> newBuilder().retryIfException()
+                .withWaitStrategy(WaitStrategies.fixedWait(20, TimeUnit.MILLISECONDS))
+                .withStopStrategy(StopStrategies.stopAfterAttempt(2)).build();
+        try {
+            retryer.call(() -> {
+                throw new IOException();
+            });
+            fail("RetryException expected");
+        } catch (final RetryException e) {
+            // expected
+        }
+    }
+
+    private List<RecordedEvent> retryEvents(final Recording recording) throws IOException {
+        final Path file = tempDir.resolve("recording.jfr");
+        recording.dump(file);
+        return RecordingFile.readAllEvents(file).stream()
+                .filter(e -> e.getEventType().getName().startsWith("com.arakelian.retry."))
+                .sorted((a, b) -> a.getStartTime().compareTo(b.getStartTime()))
+                .collect(Collectors.toList());
+    }
+}
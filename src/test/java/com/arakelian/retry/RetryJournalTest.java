@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static com.arakelian.retry.Callables.failures;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RetryJournalTest {
+
+    @TempDir
+    public Path tempDir;
+
+    @Test
+    public void testAnalyzer() throws IOException, ExecutionException, RetryException {
+        try (final RetryJournal journal = new RetryJournal(tempDir)) {
+            final Retryer<Integer> orders = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                    .withWaitStrategy(WaitStrategies.fixedWait(5, TimeUnit.MILLISECONDS))
+                    .withStopStrategy(StopStrategies.stopAfterAttempt(3))
+                    .withRetryListener(journal.listener("orders")).build();
+            orders.call(failures(2, 1));
+            try {
+                orders.call(failures(5, 1));
+            } catch (final RetryException e) {
+                // expected
+            }
+
+            final Retryer<Integer> users = RetryerBuilder.<Integer> newBuilder()
+                    .withRetryListener(journal.listener("users")).build();
+            users.call(failures(0, 1));
+        }
+
+        final String report = analyze(true);
+        assertTrue(report.contains("retryer orders\n  calls 2, attempts 6, amplification 3.00\n"), report);
+        assertTrue(report.contains("  succeeded 1, gave up 1, incomplete 0, total sleep 20 ms\n"), report);
+        assertTrue(report.contains("    java.io.IOException: 5\n"), report);
+        assertTrue(report.contains("retryer users\n  calls 1, attempts 1, amplification 1.00\n"), report);
+        assertTrue(report.contains("ms sleep 5 ms\n"), report);
+        assertTrue(report.contains("ms gave up after 3 attempts\n"), report);
+    }
+
+    @Test
+    public void testRecordsDurationFromTicker() throws IOException, ExecutionException, RetryException {
+        final VirtualClock clock = new VirtualClock();
+        try (final RetryJournal journal = new RetryJournal(tempDir)) {
+            final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().withTicker(clock)
+                    .withRetryListener(journal.listener("retryer")).build();
+            retryer.call(() -> {
+                clock.advance(2, TimeUnit.SECONDS);
+                return 1;
+            });
+        }
+
+        final String report = analyze(true);
+        assertTrue(report.contains(String.format(" ms attempt 1 returned in %.3f ms\n", 2000.0d)), report);
+    }
+
+    @Test
+    public void testReopen() throws IOException, ExecutionException, RetryException {
+        for (int i = 0; i < 2; i++) {
+            try (final RetryJournal journal = new RetryJournal(tempDir)) {
+                final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                        .withRetryListener(journal.listener("retryer")).build();
+                retryer.call(failures(1, 1));
+            }
+        }
+
+        // the calls of each journal are not merged
+        final String report = analyze(false);
+        assertTrue(report.contains("retryer retryer\n  calls 2, attempts 4, amplification 2.00\n"), report);
+        assertTrue(report.contains("  succeeded 2, gave up 0, incomplete 0"), report);
+    }
+
+    @Test
+    public void testRotation() throws IOException, ExecutionException, RetryException {
+        try (final RetryJournal journal = new RetryJournal(tempDir, 4096, 2)) {
+            final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                    .withRetryListener(journal.listener("retryer")).build();
+            for (int i = 0; i < 1000; i++) {
+                retryer.call(failures(1, 1));
+            }
+        }
+        assertEquals(2, RetryJournal.journalSequences(tempDir).length);
+
+        // only the most recent calls remain
+        final String report = analyze(false);
+        assertTrue(report.contains("    2: "), report);
+        assertTrue(!report.contains("    1: ") && !report.contains("calls 1000"), report);
+    }
+
+    private String analyze(final boolean timelines) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RetryJournalAnalyzer.analyze(tempDir, new PrintStream(out, true, StandardCharsets.UTF_8), timelines);
+        return out.toString(StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n");
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class RetryLoadGeneratorTest {
+
+    @Test
+    public void testFlakyService() throws InterruptedException {
+        final FlakyService service = new FlakyService().withLatency(1, 5, TimeUnit.MILLISECONDS)
+                .withErrorRate(0.2d);
+        final Retryer<Object> retryer = RetryerBuilder.newBuilder().retryIfException()
+                .withStopStrategy(StopStrategies.stopAfterAttempt(3)).build();
+        final RetryLoadGenerator.Report report = new RetryLoadGenerator(retryer, service).withRate(200.0d)
+                .withDuration(1, TimeUnit.SECONDS).withThreads(20).run();
+
+        assertEquals(200L, report.getRequests());
+        assertEquals(200L, report.getSuccesses() + report.getFailures());
+        assertEquals(service.getCalls(), report.getAttempts());
+        assertEquals(service.getErrors(), report.getAttempts() - report.getSuccesses());
+        assertTrue(report.getAmplification() > 1.0d, report.toString());
+        assertTrue(report.getLatencyPercentile(50, TimeUnit.NANOSECONDS) >= TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(report.getWorkerThreads() >= 1 && report.getWorkerThreads() <= 20, report.toString());
+    }
+
+    @Test
+    public void testOutage() throws InterruptedException {
+        final FlakyService service = new FlakyService().withLatency(0, 0, TimeUnit.MILLISECONDS)
+                .withOutage(0, 1, TimeUnit.HOURS);
+        final Retryer<Object> retryer = RetryerBuilder.newBuilder().retryIfException()
+                .withStopStrategy(StopStrategies.stopAfterAttempt(2)).build();
+        final RetryLoadGenerator.Report report = new RetryLoadGenerator(retryer, service).withRate(100.0d)
+                .withDuration(500, TimeUnit.MILLISECONDS).run();
+
+        assertEquals(50L, report.getFailures());
+        assertEquals(100L, service.getOutageRejections());
+        assertEquals(2.0d, report.getAmplification());
+
+        // instant requests 10 ms apart hardly overlap, although the pool starts a thread for each
+        assertTrue(report.getWorkerThreads() < 50, report.toString());
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class RetryStormSimulatorTest {
+
+    @Test
+    public void testDeterministic() {
+        final RetryStormSimulator simulator = new RetryStormSimulator(StopStrategies.stopAfterAttempt(5),
+                WaitStrategies.fixedWait(100, TimeUnit.MILLISECONDS), Attempt::hasException)
+                        .withClients(10_000, 10, TimeUnit.SECONDS).withFailureRate(0.3d).withSeed(42L);
+        final RetryStormSimulator.Report first = simulator.run();
+        final RetryStormSimulator.Report second = simulator.run();
+        assertEquals(first.getAttempts(), second.getAttempts());
+        assertEquals(first.getGiveUps(), second.getGiveUps());
+        assertTrue(Arrays.equals(first.getOfferedLoad(), second.getOfferedLoad()));
+        assertEquals(10_000L, first.getSuccesses() + first.getGiveUps());
+        assertTrue(first.getAmplification() > 1.3d && first.getAmplification() < 1.5d, first.toString());
+    }
+
+    @Test
+    public void testHealthyServer() {
+        final RetryStormSimulator.Report report = new RetryStormSimulator(StopStrategies.stopAfterAttempt(3),
+                WaitStrategies.noWait(), Attempt::hasException).withClients(1000, 10, TimeUnit.SECONDS)
+                        .run();
+        assertEquals(1000, report.getClients());
+        assertEquals(1000L, report.getAttempts());
+        assertEquals(1000L, report.getSuccesses());
+        assertEquals(0L, report.getIncomplete());
+        assertEquals(1.0d, report.getAmplification());
+        assertTrue(report.getLatencyPercentile(50, TimeUnit.MILLISECONDS) <= 100L);
+        assertEquals(1000L, Arrays.stream(report.getCompletedCalls()).sum());
+    }
+
+    @Test
+    public void testMaxDuration() {
+        final RetryStormSimulator.Report report = new RetryStormSimulator(StopStrategies.neverStop(),
+                WaitStrategies.fixedWait(1, TimeUnit.SECONDS), Attempt::hasException)
+                        .withClients(100, 0, TimeUnit.SECONDS).withFailureRate(1.0d)
+                        .withMaxDuration(1, TimeUnit.MINUTES).run();
+        assertEquals(100L, report.getIncomplete());
+        assertTrue(report.getSimulatedTime(TimeUnit.SECONDS) <= 60L);
+    }
+
+    @Test
+    public void testTimedOutAttemptsLeaveQueue() {
+        final AtomicInteger overloaded = new AtomicInteger();
+        final RetryStormSimulator.Report report = new RetryStormSimulator(StopStrategies.stopAfterAttempt(2),
+                WaitStrategies.fixedWait(1, TimeUnit.SECONDS), attempt -> {
+                    if (attempt.getExceptionCause() instanceof RejectedExecutionException) {
+                        overloaded.incrementAndGet();
+                    }
+                    return true;
+                }).withClients(2, 0, TimeUnit.SECONDS).withServers(1, 1)
+                        .withServiceTime(1, TimeUnit.HOURS).withTimeout(1, TimeUnit.SECONDS).run();
+
+        // the first attempts time out, one in service and one in the queue; of the second attempts,
+        // one takes the place of the timed out attempt in the queue and only the other is rejected
+        assertEquals(4L, report.getAttempts());
+        assertEquals(2L, report.getGiveUps());
+        assertEquals(1, overloaded.get());
+    }
+
+    @Test
+    public void testSynchronizedRetriesAfterOutage() {
+        final RetryStormSimulator.Report fixed = outage(WaitStrategies.fixedWait(1, TimeUnit.SECONDS));
+        final RetryStormSimulator.Report jittered = outage(
+                WaitStrategies.randomWait(500, TimeUnit.MILLISECONDS, 1500, TimeUnit.MILLISECONDS));
+
+        // without jitter, clients which failed together retry together, overloading the server
+        assertTrue(peak(fixed) > 2 * peak(jittered), fixed + "\n" + jittered);
+        assertTrue(fixed.getAmplification() > jittered.getAmplification(), fixed + "\n" + jittered);
+    }
+
+    private RetryStormSimulator.Report outage(final WaitStrategy waitStrategy) {
+        return new RetryStormSimulator(StopStrategies.stopAfterAttempt(20), waitStrategy,
+                Attempt::hasException).withClients(10_000, 0, TimeUnit.SECONDS).withServers(100, 1000)
+                        .withOutage(0, 5, TimeUnit.SECONDS).withReportInterval(100, TimeUnit.MILLISECONDS)
+                        .run();
+    }
+
+    /**
+     * Returns the highest offered load after the first interval, in which all clients start.
+     */
+    private long peak(final RetryStormSimulator.Report report) {
+        return Arrays.stream(report.getOfferedLoad()).skip(1).max().getAsLong();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class RetryerRegistryTest {
+
+    @Test
+    public void testCallAnyIsDrained() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final RetryerRegistry registry = new RetryerRegistry(
+                    RetryerSpec.parse("retryIfException=true,fixedWait=50ms"));
+            final Retryer<Integer> retryer = registry.getRetryer("any");
+            final CountDownLatch failed = new CountDownLatch(1);
+            final List<Callable<Integer>> callables = Arrays.asList(() -> {
+                return failed.await(5, TimeUnit.SECONDS) ? 1 : 0;
+            }, () -> {
+                failed.countDown();
+                throw new IOException();
+            });
+            assertEquals(1, retryer.callAny(callables, executor, StopStrategies.neverStop()).intValue());
+
+            // the failing callable is given up once it is due again
+            assertTrue(registry.shutdown(5, TimeUnit.SECONDS));
+            final RetryerRegistry.Stats stats = registry.getStats().get("any");
+            assertEquals(2, stats.getCalls());
+            assertEquals(2, stats.getAttempts());
+            assertEquals(1, stats.getSuccesses());
+            assertEquals(1, stats.getGiveUps());
+            assertEquals(0, stats.getInFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRetryers() throws ExecutionException, RetryException {
+        final RetryerRegistry registry = new RetryerRegistry(
+                RetryerSpec.parse("retryIfException=true,stopAfterAttempt=3,attemptTimeout=5s"))
+                        .withSpec("once", RetryerSpec.parse("stopAfterAttempt=1"));
+        assertEquals(
+                "attemptTimeout=5s,retryIfException=true,stopAfterAttempt=1",
+                registry.getSpec("once").toString());
+        assertSame(registry.getRetryer("orders"), registry.getRetryer("orders"));
+        assertNotSame(registry.getRetryer("orders"), registry.getRetryer("once"));
+        assertThrows(
+                IllegalStateException.class,
+                () -> registry.withSpec("orders", RetryerSpec.parse("stopAfterAttempt=5")));
+        assertThrows(
+                IllegalStateException.class,
+                () -> registry.withRetryBudget(RetryBudgets.tokenBucket(10, 1.0d)));
+
+        final AtomicInteger counter = new AtomicInteger();
+        assertEquals(3, registry.<Integer> getRetryer("orders").call(() -> {
+            if (counter.incrementAndGet() < 3) {
+                throw new IOException();
+            }
+            return counter.get();
+        }).intValue());
+        try {
+            registry.getRetryer("once").call(() -> {
+                throw new IOException();
+            });
+            fail("RetryException expected");
+        } catch (final RetryException e) {
+            assertEquals(1, e.getNumberOfFailedAttempts());
+        }
+
+        final RetryerRegistry.Stats orders = registry.getStats().get("orders");
+        assertEquals(1, orders.getCalls());
+        assertEquals(3, orders.getAttempts());
+        assertEquals(3.0d, orders.getAmplification(), 0.0d);
+        final RetryerRegistry.Stats total = registry.getTotalStats();
+        assertEquals(2, total.getCalls());
+        assertEquals(4, total.getAttempts());
+        assertEquals(1, total.getSuccesses());
+        assertEquals(1, total.getGiveUps());
+        assertEquals(0, total.getInFlight());
+    }
+
+    @Test
+    public void testSharedBudget() throws ExecutionException, RetryException {
+        final RetryerRegistry registry = new RetryerRegistry(
+                RetryerSpec.parse("retryIfException=true,stopAfterAttempt=10"))
+                        .withRetryBudget(RetryBudgets.tokenBucket(3, 0.001d));
+        int attempts = 0;
+        for (final String name : new String[] { "a", "b" }) {
+            try {
+                registry.getRetryer(name).call(() -> {
+                    throw new IOException();
+                });
+                fail("RetryException expected");
+            } catch (final RetryException e) {
+                attempts += e.getNumberOfFailedAttempts();
+            }
+        }
+        // three retries in total, followed by a single attempt of the second retryer
+        assertEquals(5, attempts);
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final RetryerRegistry registry = new RetryerRegistry(RetryerSpec.parse("stopAfterAttempt=1"));
+            final Retryer<Boolean> retryer = registry.getRetryer("slow");
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final Future<Boolean> call = executor.submit(() -> retryer.call(() -> {
+                started.countDown();
+                return release.await(5, TimeUnit.SECONDS);
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            assertFalse(registry.shutdown(10, TimeUnit.MILLISECONDS));
+            assertTrue(registry.isShutdown());
+            assertEquals(1, registry.getTotalStats().getInFlight());
+            assertThrows(IllegalStateException.class, () -> registry.getRetryer("other"));
+            assertSame(retryer, registry.getRetryer("slow"));
+
+            release.countDown();
+            assertTrue(registry.shutdown(5, TimeUnit.SECONDS));
+            assertTrue(call.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
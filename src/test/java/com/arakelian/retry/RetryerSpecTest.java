@@ -0,0 +1,135 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static com.arakelian.retry.Callables.failures;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class RetryerSpecTest {
+
+    @Test
+    public void testInvalidSpecs() {
+        assertThrows(IllegalArgumentException.class, () -> RetryerSpec.parse("stopAfterAttempts=3"));
+        assertThrows(IllegalArgumentException.class, () -> RetryerSpec.parse("stopAfterAttempt"));
+        assertThrows(IllegalArgumentException.class, () -> RetryerSpec.parse("stopAfterAttempt=0"));
+        assertThrows(IllegalArgumentException.class, () -> RetryerSpec.parse("fixedWait=10"));
+        assertThrows(IllegalArgumentException.class, () -> RetryerSpec.parse("exponentialWait=10s"));
+        assertThrows(IllegalArgumentException.class, () -> RetryerSpec.parse("retryIfException=yes"));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> RetryerSpec.parse("retryIfExceptionOfType=String"));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> RetryerSpec.parse("retryIfExceptionOfType=java.lang.String"));
+        assertThrows(IllegalArgumentException.class, () -> RetryerSpec.parse("fixedWait=1s,fixedWait=2s"));
+    }
+
+    @Test
+    public void testParse() throws ExecutionException, RetryException {
+        final RetryerSpec spec = RetryerSpec
+                .parse("stopAfterAttempt=3, retryIfExceptionOfType=java.io.IOException|"
+                        + "java.util.concurrent.TimeoutException,fixedWait=1ms,randomWait=1ms:2ms");
+        assertEquals(
+                "fixedWait=1ms,randomWait=1ms:2ms,retryIfExceptionOfType=java.io.IOException|"
+                        + "java.util.concurrent.TimeoutException,stopAfterAttempt=3",
+                spec.toString());
+        assertEquals(spec, RetryerSpec.parse(spec.toString()));
+        assertEquals(spec.hashCode(), RetryerSpec.parse(spec.toString()).hashCode());
+
+        final Retryer<Integer> retryer = spec.<Integer> toBuilder().build();
+        final AtomicInteger counter = new AtomicInteger();
+        assertEquals(1, retryer.call(() -> {
+            if (counter.getAndIncrement() == 0) {
+                throw new TimeoutException();
+            }
+            return 1;
+        }).intValue());
+
+        try {
+            retryer.call(failures(3, 1));
+            fail("RetryException expected");
+        } catch (final RetryException e) {
+            assertEquals(3, e.getNumberOfFailedAttempts());
+        }
+
+        try {
+            retryer.call(() -> {
+                throw new IllegalStateException();
+            });
+            fail("ExecutionException expected");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testProperties() {
+        final Properties properties = new Properties();
+        properties.setProperty("retry.stopAfterDelay", "1m");
+        properties.setProperty("retry.exponentialWait", "100ms:30s");
+        properties.setProperty("other.fixedWait", "1s");
+        final RetryerSpec spec = RetryerSpec.fromProperties(properties, "retry.");
+        assertEquals(Map.of("stopAfterDelay", "1m", "exponentialWait", "100ms:30s"), spec.getEntries());
+        assertEquals(spec, RetryerSpec.fromMap(spec.getEntries()));
+    }
+
+    @Test
+    public void testReload() throws ExecutionException, RetryException {
+        final AtomicInteger successes = new AtomicInteger();
+        final ReloadableRetryer<Integer> reloadable = new ReloadableRetryer<>(
+                RetryerSpec.parse("retryIfException=true,stopAfterAttempt=2"),
+                builder -> builder.withRetryListener(new RetryListener() {
+                    @Override
+                    public <V> void onSuccess(final Attempt<V> attempt) {
+                        successes.incrementAndGet();
+                    }
+                }));
+        final Retryer<Integer> original = reloadable.getRetryer();
+        try {
+            reloadable.call(failures(2, 1));
+            fail("RetryException expected");
+        } catch (final RetryException e) {
+            assertEquals(2, e.getNumberOfFailedAttempts());
+        }
+
+        assertFalse(reloadable.reload(RetryerSpec.parse("stopAfterAttempt=2,retryIfException=true")));
+        assertSame(original, reloadable.getRetryer());
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> reloadable.reload(RetryerSpec.fromMap(Map.of("stopAfterAttempt", "-1"))));
+        assertSame(original, reloadable.getRetryer());
+
+        assertTrue(reloadable.reload(RetryerSpec.parse("retryIfException=true,stopAfterAttempt=3")));
+        assertEquals("retryIfException=true,stopAfterAttempt=3", reloadable.getSpec().toString());
+        assertEquals(1, reloadable.call(failures(2, 1)).intValue());
+        assertEquals(1, successes.get());
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static com.arakelian.retry.Callables.failures;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class RetryerTest {
+
+    private static final class LifecycleListener implements RetryListener {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void beforeAttempt(final long attemptNumber, final long delaySinceFirstAttempt) {
+            events.add("before " + attemptNumber);
+        }
+
+        @Override
+        public <V> void beforeSleep(final Attempt<V> failedAttempt, final long sleepTime) {
+            events.add("sleep " + sleepTime);
+        }
+
+        @Override
+        public <V> void onFailure(final Attempt<V> failedAttempt) {
+            events.add("failure " + failedAttempt.getAttemptNumber());
+        }
+
+        @Override
+        public <V> void onGiveUp(final Attempt<V> lastFailedAttempt) {
+            events.add("give up " + lastFailedAttempt.getAttemptNumber());
+        }
+
+        @Override
+        public <V> void onSuccess(final Attempt<V> attempt) {
+            events.add("success " + attempt.getAttemptNumber());
+        }
+    }
+
+    @Test
+    public void testAddAndRemoveRetryListener() throws ExecutionException, RetryException {
+        final LifecycleListener listener = new LifecycleListener();
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .withWaitStrategy(WaitStrategies.fixedWait(1, TimeUnit.MILLISECONDS))
+                .withStopStrategy(StopStrategies.stopAfterAttempt(2)).build();
+        assertTrue(retryer.getRetryListeners().isEmpty());
+
+        // added during the first attempt of a call
+        final AtomicInteger counter = new AtomicInteger();
+        assertEquals(1, retryer.callInt(() -> {
+            if (counter.getAndIncrement() == 0) {
+                retryer.addRetryListener(listener);
+                throw new IOException();
+            }
+            return 1;
+        }, result -> false));
+        assertEquals(List.of("failure 1", "sleep 1", "before 2", "success 2"), listener.events);
+        assertEquals(List.of(listener), retryer.getRetryListeners());
+
+        listener.events.clear();
+        assertTrue(retryer.removeRetryListener(listener));
+        assertFalse(retryer.removeRetryListener(listener));
+        assertEquals(1, retryer.call(failures(1, 1)).intValue());
+        assertTrue(listener.events.isEmpty());
+        assertTrue(retryer.getRetryListeners().isEmpty());
+    }
+
+    @Test
+    public void testAttemptTimes() throws ExecutionException, RetryException {
+        final List<Attempt<?>> attempts = new ArrayList<>();
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .withWaitStrategy(WaitStrategies.fixedWait(10, TimeUnit.MILLISECONDS))
+                .withStopStrategy(StopStrategies.stopAfterAttempt(3)).withAttemptCpuTime()
+                .withRetryListener(new RetryListener() {
+                    @Override
+                    public <V> void onRetry(final Attempt<V> attempt) {
+                        attempts.add(attempt);
+                    }
+                }).build();
+
+        assertEquals(1, retryer.call(failures(2, 1)).intValue());
+        assertEquals(3, attempts.size());
+        for (int i = 0; i < 3; i++) {
+            final Attempt<?> attempt = attempts.get(i);
+            assertEquals(i * 10L, attempt.getCumulativeSleepTime());
+            assertTrue(attempt.getDuration() > 0L);
+            assertTrue(attempt.getCpuTime() >= 0L);
+            if (i != 0) {
+                final Attempt<?> previous = attempts.get(i - 1);
+                assertTrue(attempt.getStartTime() - previous.getStartTime() >= previous.getDuration()
+                        + TimeUnit.MILLISECONDS.toNanos(10));
+            }
+        }
+
+        try {
+            RetryerBuilder.<Integer> newBuilder().retryIfException()
+                    .withWaitStrategy(WaitStrategies.fixedWait(10, TimeUnit.MILLISECONDS))
+                    .withStopStrategy(StopStrategies.stopAfterAttempt(2)).build().call(failures(2, 1));
+            fail("RetryException expected");
+        } catch (final RetryException e) {
+            assertEquals(10L, e.getLastFailedAttempt().getCumulativeSleepTime());
+            assertEquals(-1L, e.getLastFailedAttempt().getCpuTime());
+        }
+    }
+
+    @Test
+    public void testCallAll() throws InterruptedException, ExecutionException {
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder()
+                .retryIfExceptionOfType(IOException.class)
+                .withStopStrategy(StopStrategies.stopAfterAttempt(3)).build();
+        final List<Callable<Integer>> callables = new ArrayList<>();
+        callables.add(failures(2, 1));
+        callables.add(failures(5, 2));
+        callables.add(() -> {
+            throw new IllegalStateException();
+        });
+
+        final List<Future<Integer>> futures = retryer.callAll(callables);
+        assertEquals(3, futures.size());
+        assertEquals(1, futures.get(0).get().intValue());
+        assertCause(RetryException.class, futures.get(1));
+        assertCause(IllegalStateException.class, futures.get(2));
+    }
+
+    @Test
+    public void testCallAllDoesNotWaitForSlowestBackoff() throws InterruptedException, ExecutionException {
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .withWaitStrategy(WaitStrategies.fixedWait(100, TimeUnit.MILLISECONDS)).build();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final List<Callable<Integer>> callables = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                callables.add(failures(1, i));
+            }
+
+            // two threads sleeping between attempts would need at least five seconds
+            final long start = System.nanoTime();
+            final List<Future<Integer>> futures = retryer
+                    .callAll(callables, executor, StopStrategies.neverStop());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i, futures.get(i).get().intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCallAllWithGroupStopStrategy() throws InterruptedException {
+        final AtomicInteger attempts = new AtomicInteger();
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .withRetryListener(new RetryListener() {
+                    @Override
+                    public <V> void onRetry(final Attempt<V> attempt) {
+                        attempts.incrementAndGet();
+                    }
+                }).build();
+        final List<Callable<Integer>> callables = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            callables.add(failures(Integer.MAX_VALUE, i));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Integer>> futures = retryer
+                    .callAll(callables, executor, StopStrategies.stopAfterAttempt(50));
+            for (final Future<Integer> future : futures) {
+                assertCause(RetryException.class, future);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // every callable stops at its next failed attempt once the group has made 50 attempts
+        assertTrue(attempts.get() >= 50 && attempts.get() < 60, "attempts: " + attempts.get());
+    }
+
+    @Test
+    public void testCallAny() throws ExecutionException, RetryException, InterruptedException {
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .withStopStrategy(StopStrategies.stopAfterAttempt(3)).build();
+        final List<Callable<Integer>> callables = new ArrayList<>();
+        callables.add(failures(10, 1));
+        callables.add(failures(1, 2));
+        callables.add(failures(10, 3));
+        assertEquals(2, retryer.callAny(callables).intValue());
+    }
+
+    @Test
+    public void testCallAnyGivesUp() throws ExecutionException, InterruptedException {
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .withStopStrategy(StopStrategies.stopAfterAttempt(3)).build();
+        final List<Callable<Integer>> callables = new ArrayList<>();
+        callables.add(failures(10, 1));
+        callables.add(failures(10, 2));
+        try {
+            retryer.callAny(callables);
+            fail("RetryException expected");
+        } catch (final RetryException e) {
+            assertEquals(3, e.getNumberOfFailedAttempts());
+        }
+    }
+
+    @Test
+    public void testCallBoolean() throws ExecutionException, RetryException {
+        final AtomicInteger counter = new AtomicInteger();
+        final Retryer<Void> retryer = RetryerBuilder.<Void> newBuilder()
+                .withStopStrategy(StopStrategies.stopAfterAttempt(5)).build();
+        assertTrue(retryer.callBoolean(() -> counter.incrementAndGet() == 3, false));
+        assertEquals(3, counter.get());
+    }
+
+    @Test
+    public void testCallInt() throws ExecutionException, RetryException {
+        final List<Attempt<?>> attempts = new ArrayList<>();
+        final AtomicInteger counter = new AtomicInteger();
+        final Retryer<Void> retryer = RetryerBuilder.<Void> newBuilder().retryIfException()
+                .withRetryListener(new RetryListener() {
+                    @Override
+                    public <V> void onRetry(final Attempt<V> attempt) {
+                        attempts.add(attempt);
+                    }
+                }).build();
+
+        assertEquals(3, retryer.callInt(() -> {
+            final int count = counter.incrementAndGet();
+            if (count == 1) {
+                throw new IOException();
+            }
+            return count;
+        }, result -> result < 3));
+
+        assertEquals(3, attempts.size());
+        assertTrue(attempts.get(0).hasException());
+        assertEquals(2, ((PrimitiveAttempt<?>) attempts.get(1)).getIntResult());
+        assertEquals(Integer.valueOf(3), attempts.get(2).getResult());
+    }
+
+    @Test
+    public void testCallLong() throws ExecutionException {
+        final Retryer<Void> retryer = RetryerBuilder.<Void> newBuilder()
+                .withStopStrategy(StopStrategies.stopAfterAttempt(2)).build();
+        try {
+            retryer.callLong(() -> -1L, result -> result < 0L);
+            fail("RetryException expected");
+        } catch (final RetryException e) {
+            assertEquals(2, e.getNumberOfFailedAttempts());
+            assertEquals(-1L, ((PrimitiveAttempt<?>) e.getLastFailedAttempt()).getLongResult());
+        }
+    }
+
+    @Test
+    public void testCallUnwrapped() throws RetryException {
+        final IOException failure = new IOException();
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder()
+                .retryIfResult(result -> result < 0).build();
+        try {
+            retryer.<IOException> callUnwrapped(() -> {
+                throw failure;
+            });
+            fail("IOException expected");
+        } catch (final IOException e) {
+            assertSame(failure, e);
+        }
+
+        final AtomicInteger counter = new AtomicInteger();
+        // no checked exception to catch
+        assertEquals(1, retryer.callUnwrapped(() -> counter.getAndIncrement() < 2 ? -1 : 1).intValue());
+        assertEquals(3, counter.get());
+    }
+
+    @Test
+    public void testCallVoid() throws RetryException {
+        final AtomicInteger counter = new AtomicInteger();
+        final Retryer<Void> retryer = RetryerBuilder.<Void> newBuilder()
+                .retryIfExceptionOfType(IOException.class).build();
+        try {
+            retryer.callVoid(() -> {
+                if (counter.incrementAndGet() < 3) {
+                    throw new IOException();
+                }
+                throw new IllegalStateException();
+            });
+            fail("ExecutionException expected");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals(3, counter.get());
+        }
+    }
+
+    @Test
+    public void testListenerLifecycle() throws ExecutionException, RetryException {
+        final LifecycleListener listener = new LifecycleListener();
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .withWaitStrategy(WaitStrategies.fixedWait(1, TimeUnit.MILLISECONDS))
+                .withStopStrategy(StopStrategies.stopAfterAttempt(2)).withRetryListener(listener).build();
+
+        assertEquals(1, retryer.call(failures(1, 1)).intValue());
+        assertEquals(List.of("before 1", "failure 1", "sleep 1", "before 2", "success 2"), listener.events);
+
+        listener.events.clear();
+        try {
+            retryer.call(failures(2, 1));
+            fail("RetryException expected");
+        } catch (final RetryException e) {
+            assertEquals(List.of("before 1", "failure 1", "sleep 1", "before 2", "failure 2", "give up 2"),
+                    listener.events);
+        }
+    }
+
+    @Test
+    public void testRecentFailures() throws ExecutionException, RetryException {
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .retryIfResult(result -> result < 0).withRecentFailures(4).build();
+        assertTrue(retryer.getRecentFailures().isEmpty());
+
+        final AtomicInteger counter = new AtomicInteger();
+        retryer.call(() -> {
+            switch (counter.getAndIncrement()) {
+            case 0:
+                return -1;
+            case 1:
+                throw new IllegalStateException("boom");
+            default:
+                return 1;
+            }
+        });
+        retryer.call(failures(3, 1));
+
+        final List<RecentFailures.Failure> failures = retryer.getRecentFailures();
+        assertEquals(4, failures.size());
+        assertEquals(IllegalStateException.class.getName(), failures.get(0).getExceptionClass());
+        assertEquals("boom", failures.get(0).getMessage());
+        assertEquals(2, failures.get(0).getAttemptNumber());
+        for (int i = 1; i < 4; i++) {
+            assertEquals(IOException.class.getName(), failures.get(i).getExceptionClass());
+            assertEquals(i, failures.get(i).getAttemptNumber());
+            assertTrue(failures.get(i).getDuration() > 0L);
+            assertTrue(failures.get(i).getTimestamp() >= failures.get(i - 1).getTimestamp());
+        }
+
+        assertTrue(RetryerBuilder.<Integer> newBuilder().retryIfException().build().getRecentFailures()
+                .isEmpty());
+    }
+
+    @Test
+    public void testRetryExceptionWithoutStackTrace() throws ExecutionException {
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .withStopStrategy(StopStrategies.stopAfterAttempt(2)).withoutRetryExceptionStackTraces()
+                .build();
+        try {
+            retryer.call(failures(2, 1));
+            fail("RetryException expected");
+        } catch (final RetryException e) {
+            assertEquals(0, e.getStackTrace().length);
+            assertTrue(e.getCause() instanceof IOException);
+            assertTrue(e.getCause().getStackTrace().length != 0);
+        }
+    }
+
+    private void assertCause(final Class<? extends Throwable> expected, final Future<?> future)
+            throws InterruptedException {
+        try {
+            future.get();
+            fail("ExecutionException expected");
+        } catch (final ExecutionException e) {
+            assertTrue(expected.isInstance(e.getCause()), "cause: " + e.getCause());
+        }
+    }
+}
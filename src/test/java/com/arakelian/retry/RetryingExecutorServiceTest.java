@@ -0,0 +1,189 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static com.arakelian.retry.Callables.failures;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class RetryingExecutorServiceTest {
+
+    @Test
+    public void testFairScheduler() throws InterruptedException, ExecutionException {
+        final Retryer<String> retryer = RetryerBuilder.<String> newBuilder().build();
+        final FairRetryScheduler<Runnable> scheduler = new FairRetryScheduler<>(1, 2);
+        final RetryingExecutorService executor = new RetryingExecutorService(retryer, 1, scheduler);
+        try {
+            // occupy the only worker so that everything else queues in the scheduler
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            executor.submit("blocker", 0, () -> {
+                started.countDown();
+                release.await();
+                return "blocker";
+            });
+            started.await();
+
+            final List<String> order = new CopyOnWriteArrayList<>();
+            final List<Future<String>> futures = new ArrayList<>();
+            futures.add(executor.submit("noisy", 0, record(order, "noisy 1")));
+            futures.add(executor.submit("noisy", 0, record(order, "noisy 2")));
+            assertThrows(RejectedExecutionException.class,
+                    () -> executor.submit("noisy", 0, record(order, "noisy 3")));
+            futures.add(executor.submit("quiet", 0, record(order, "quiet 1")));
+            assertEquals(3, scheduler.size());
+
+            release.countDown();
+            for (final Future<String> future : futures) {
+                future.get();
+            }
+            assertEquals(List.of("noisy 1", "quiet 1", "noisy 2"), order);
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testGivesUp() throws InterruptedException {
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .withStopStrategy(StopStrategies.stopAfterAttempt(3)).build();
+        final RetryingExecutorService executor = new RetryingExecutorService(retryer, 2);
+        try {
+            final Future<Integer> future = executor.submit(failures(10, 1));
+            try {
+                future.get();
+                fail("ExecutionException expected");
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof RetryException);
+                assertEquals(3, ((RetryException) e.getCause()).getNumberOfFailedAttempts());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testManyTasksInBackoff() throws InterruptedException, ExecutionException {
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .withWaitStrategy(WaitStrategies.fixedWait(200, TimeUnit.MILLISECONDS)).build();
+        final RetryingExecutorService executor = new RetryingExecutorService(retryer, 4);
+        try {
+            final List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 10000; i++) {
+                futures.add(executor.submit(failures(2, i)));
+            }
+
+            // with only four workers, this takes seconds if workers sleep between attempts
+            final long start = System.nanoTime();
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i, futures.get(i).get().intValue());
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testNotRetried() throws InterruptedException {
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder()
+                .retryIfExceptionOfType(IllegalStateException.class).build();
+        final RetryingExecutorService executor = new RetryingExecutorService(retryer, 1);
+        try {
+            final Future<Integer> future = executor.submit(failures(1, 1));
+            try {
+                future.get();
+                fail("ExecutionException expected");
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testShutdownNowCancelsWaitingTasks() throws InterruptedException {
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .withWaitStrategy(WaitStrategies.fixedWait(1, TimeUnit.MINUTES)).build();
+        final FairRetryScheduler<Runnable> scheduler = new FairRetryScheduler<>();
+        final RetryingExecutorService executor = new RetryingExecutorService(retryer, 1, scheduler);
+
+        final Future<Integer> backoff = executor.submit(failures(1, 0));
+        while (executor.getDelayedTaskCount() == 0) {
+            Thread.sleep(1L);
+        }
+
+        // occupy the only worker so that the other tasks wait in the scheduler
+        final CountDownLatch started = new CountDownLatch(1);
+        final Future<Integer> running = executor.submit(() -> {
+            started.countDown();
+            Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            return 0;
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        final Future<Integer> first = executor.submit(failures(0, 1));
+        final Future<Integer> second = executor.submit(failures(0, 2));
+        assertEquals(2, scheduler.size());
+
+        assertEquals(3, executor.shutdownNow().size());
+        assertEquals(0, scheduler.size());
+        assertTrue(backoff.isCancelled() && first.isCancelled() && second.isCancelled());
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // the interrupted attempt of the running task is not retried either
+        assertEquals(0, executor.getDelayedTaskCount());
+        assertTrue(running.isDone());
+    }
+
+    @Test
+    public void testShutdownWaitsForTasksInBackoff() throws InterruptedException, ExecutionException {
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .withWaitStrategy(WaitStrategies.fixedWait(100, TimeUnit.MILLISECONDS)).build();
+        final RetryingExecutorService executor = new RetryingExecutorService(retryer, 1);
+        final Future<Integer> future = executor.submit(failures(3, 42));
+        executor.shutdown();
+        assertThrows(RejectedExecutionException.class, () -> executor.submit(failures(0, 0)));
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(42, future.get().intValue());
+    }
+
+    private Callable<String> record(final List<String> order, final String name) {
+        return () -> {
+            order.add(name);
+            return name;
+        };
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012-2015 Ray Holder
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.arakelian.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class VirtualClockTest {
+
+    @Test
+    public void testAttemptsTakeVirtualTime() throws ExecutionException, RetryException {
+        final VirtualClock clock = new VirtualClock();
+        final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                .withStopStrategy(StopStrategies.stopAfterDelay(10, TimeUnit.SECONDS))
+                .withWaitStrategy(WaitStrategies.fixedWait(1, TimeUnit.SECONDS)).withTicker(clock)
+                .withBlockStrategy(clock).build();
+
+        try {
+            retryer.call(() -> {
+                clock.advance(2, TimeUnit.SECONDS);
+                throw new IOException();
+            });
+            fail("RetryException expected");
+        } catch (final RetryException e) {
+            // attempts end at 2, 5 and 8 seconds, then 11 seconds exceeds the delay
+            assertEquals(4, e.getNumberOfFailedAttempts());
+            assertEquals(TimeUnit.SECONDS.toNanos(2), e.getLastFailedAttempt().getDuration());
+            assertEquals(3000L, e.getLastFailedAttempt().getCumulativeSleepTime());
+            assertEquals(TimeUnit.SECONDS.toNanos(11), clock.read());
+        }
+    }
+
+    @Test
+    public void testBlockIsInterruptible() {
+        final VirtualClock clock = new VirtualClock();
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, () -> clock.block(1000L));
+        assertEquals(0L, clock.read());
+    }
+
+    @Test
+    public void testLongSchedulesRunInVirtualTime() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 0; i < 1000; i++) {
+                final VirtualClock clock = new VirtualClock();
+                final Retryer<Integer> retryer = RetryerBuilder.<Integer> newBuilder().retryIfException()
+                        .withStopStrategy(StopStrategies.stopAfterDelay(5, TimeUnit.MINUTES))
+                        .withWaitStrategy(WaitStrategies.exponentialWait(1, TimeUnit.MINUTES))
+                        .withTicker(clock).withBlockStrategy(clock).build();
+                try {
+                    retryer.call(() -> {
+                        throw new IOException();
+                    });
+                    fail("RetryException expected");
+                } catch (final RetryException e) {
+                    // waits of 2, 4, ..., 32768 ms, then 60 seconds, until 5 minutes have elapsed
+                    assertEquals(20, e.getNumberOfFailedAttempts());
+                    assertEquals(305_534L, e.getLastFailedAttempt().getDelaySinceFirstAttempt());
+                    assertTrue(clock.read() >= TimeUnit.MINUTES.toNanos(5));
+                }
+            }
+        });
+    }
+}